@@ -0,0 +1,118 @@
+package de.fu_berlin.inf.ag_se.browser;
+
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import de.fu_berlin.inf.ag_se.browser.html.DomDiff;
+import de.fu_berlin.inf.ag_se.browser.utils.IConverter;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Updates the body of a page by applying the difference between the last rendered and the new HTML.
+ * <p/>
+ * The last rendered tree is kept on the Java side. Each render increments a version that is also stored in the page.
+ * A patch is only applied if the page still has the version the patch was computed against
+ * and the affected nodes still have the expected names. Otherwise the new HTML is rendered as a whole,
+ * e.g. after the page has been reloaded, the body has been set by {@link IBrowser#setBodyHtml(String)}
+ * or the browser parsed the HTML differently than jsoup.
+ */
+class BodyPatcher {
+
+    /**
+     * The name of the window property the version of the rendered body is stored in.
+     */
+    static final String VERSION = "__bodyVersion";
+
+    private static final String PATCH_SCRIPT = ""
+            + "if (window['" + VERSION + "'] !== base) { return false; }"
+            + "var nodes = [];"
+            + "for (var i = 0; i < operations.length; i++) {"
+            + "  var node = document.body;"
+            + "  for (var j = 0; node && j < operations[i].path.length; j++) { node = node.childNodes[operations[i].path[j]]; }"
+            + "  if (!node || node.nodeName.toLowerCase() !== operations[i].node) { return false; }"
+            + "  nodes.push(node);"
+            + "}"
+            + "function fragment(context, html) {"
+            + "  var range = document.createRange();"
+            + "  range.selectNodeContents(context);"
+            + "  return range.createContextualFragment(html);"
+            + "}"
+            + "try {"
+            + "  for (i = 0; i < operations.length; i++) {"
+            + "    var operation = operations[i], node = nodes[i];"
+            + "    if (operation.op === 'text') { node.nodeValue = operation.text; }"
+            + "    else if (operation.op === 'attrs') {"
+            + "      for (var name in operation.set) { node.setAttribute(name, operation.set[name]); }"
+            + "      for (j = 0; j < operation.remove.length; j++) { node.removeAttribute(operation.remove[j]); }"
+            + "    }"
+            + "    else if (operation.op === 'replace') { node.parentNode.replaceChild(fragment(node.parentNode, operation.html), node); }"
+            + "    else if (operation.op === 'insert') { node.parentNode.insertBefore(fragment(node.parentNode, operation.html), node); }"
+            + "    else if (operation.op === 'append') { node.appendChild(fragment(node, operation.html)); }"
+            + "    else if (operation.op === 'remove') { node.parentNode.removeChild(node); }"
+            + "  }"
+            + "} catch (e) { window['" + VERSION + "'] = null; return false; }"
+            + "window['" + VERSION + "'] = version;"
+            + "return true;";
+
+    // a fallback render may arrive after a newer version has already been rendered
+    private static final String RENDER_SCRIPT = ""
+            + "if (window['" + VERSION + "'] > version) { return true; }"
+            + "document.body.innerHTML = html;"
+            + "window['" + VERSION + "'] = version;"
+            + "return true;";
+
+    private final IBrowser browser;
+
+    private PreparedScript patchScript;
+    private PreparedScript renderScript;
+    private org.jsoup.nodes.Element renderedBody;
+    private int version = 0;
+
+    BodyPatcher(IBrowser browser) {
+        this.browser = browser;
+    }
+
+    synchronized ListenableFuture<Boolean> patch(String html) {
+        if (patchScript == null) {
+            patchScript = browser.prepareScript(PATCH_SCRIPT, "base", "version", "operations");
+            renderScript = browser.prepareScript(RENDER_SCRIPT, "version", "html");
+        }
+
+        Document document = Jsoup.parseBodyFragment(html);
+        document.outputSettings().prettyPrint(false);
+        final org.jsoup.nodes.Element body = document.body();
+
+        org.jsoup.nodes.Element previous = renderedBody;
+        int base = version;
+        final int next = ++version;
+        renderedBody = body;
+
+        if (previous == null) {
+            return render(body, next);
+        }
+        List<Map<String, Object>> operations = DomDiff.diff(previous, body);
+        // sending the whole body is cheaper than patching nearly every node
+        if (JavascriptString.toJavascriptLiteral(operations).length() >= html.length()) {
+            return render(body, next);
+        }
+        ListenableFuture<Boolean> patched = browser.run(patchScript, IConverter.CONVERTER_BOOLEAN, base, next, operations);
+        return Futures.transformAsync(patched, new AsyncFunction<Boolean, Boolean>() {
+            @Override
+            public ListenableFuture<Boolean> apply(Boolean applied) {
+                if (Boolean.TRUE.equals(applied)) {
+                    return Futures.immediateFuture(true);
+                }
+                return render(body, next);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private ListenableFuture<Boolean> render(org.jsoup.nodes.Element body, int version) {
+        return browser.run(renderScript, IConverter.CONVERTER_BOOLEAN, version, body.html());
+    }
+}
@@ -1,21 +1,33 @@
 package de.fu_berlin.inf.ag_se.browser;
 
-import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.sun.istack.internal.Nullable;
 import de.fu_berlin.inf.ag_se.browser.functions.CallbackFunction;
 import de.fu_berlin.inf.ag_se.browser.functions.Function;
 import de.fu_berlin.inf.ag_se.browser.functions.IBrowserFunction;
 import de.fu_berlin.inf.ag_se.browser.functions.JavascriptFunction;
+import de.fu_berlin.inf.ag_se.browser.listener.IPageLoadListener;
 import de.fu_berlin.inf.ag_se.browser.listener.JavaScriptExceptionListener;
+import de.fu_berlin.inf.ag_se.browser.metrics.BrowserMetrics;
+import de.fu_berlin.inf.ag_se.browser.metrics.PageLoadPhase;
+import de.fu_berlin.inf.ag_se.browser.threading.ListenerDispatcher;
+import de.fu_berlin.inf.ag_se.browser.utils.Assert;
+import de.fu_berlin.inf.ag_se.browser.utils.DelayedScriptRunner.OverflowPolicy;
 import de.fu_berlin.inf.ag_se.browser.utils.IConverter;
-import org.apache.commons.io.FileUtils;
+import de.fu_berlin.inf.ag_se.browser.utils.StringUtils;
 import org.apache.log4j.Logger;
 
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -31,11 +43,18 @@ import static com.google.common.base.Preconditions.checkNotNull;
 public class Browser implements IBrowser {
 
     private static Logger LOGGER = Logger.getLogger(Browser.class);
-    protected final InternalBrowserWrapper internalBrowser;
+
+    /**
+     * The length in bytes of the former paste script without the embedded HTML.
+     */
+    private static final long PASTE_SCRIPT_LENGTH = StringUtils.getUtf8Length(JavascriptString.createJavascriptForInsertingHTML());
+    protected final InternalBrowserWrapper<?> internalBrowser;
 
     private boolean textSelectionsDisabled = false;
+    private final BodyPatcher bodyPatcher = new BodyPatcher(this);
+    private PreparedScript pasteScript;
 
-    public Browser(InternalBrowserWrapper internalBrowser) {
+    public Browser(InternalBrowserWrapper<?> internalBrowser) {
         this.internalBrowser = internalBrowser;
         executeAfterCompletion(new Runnable() {
             @Override
@@ -52,19 +71,19 @@ public class Browser implements IBrowser {
     }
 
     @Override
-    public Future<Boolean> open(String uri, int timeout) {
+    public ListenableFuture<Boolean> open(String uri, int timeout) {
         checkNotNull(uri);
         return open(uri, timeout, null);
     }
 
     @Override
-    public Future<Boolean> open(String uri, int timeout, @Nullable String pageLoadCheckScript) {
+    public ListenableFuture<Boolean> open(String uri, int timeout, @Nullable String pageLoadCheckScript) {
         checkNotNull(uri);
         return internalBrowser.open(uri, timeout, pageLoadCheckScript);
     }
 
     @Override
-    public Future<Boolean> open(URI uri, int timeout) {
+    public ListenableFuture<Boolean> open(URI uri, int timeout) {
         checkNotNull(uri);
         return open(uri.toString(), timeout, null);
     }
@@ -77,14 +96,14 @@ public class Browser implements IBrowser {
     }
 
     @Override
-    public Future<Boolean> open(URI uri, int timeout, CallbackFunction<Boolean, Boolean> callback) {
+    public ListenableFuture<Boolean> open(URI uri, int timeout, CallbackFunction<Boolean, Boolean> callback) {
         checkNotNull(uri);
         checkNotNull(callback);
         return openWithCallback(uri, timeout, null, callback);
     }
 
     @Override
-    public Future<Boolean> open(URI uri, int timeout, @Nullable String pageLoadCheckExpression) {
+    public ListenableFuture<Boolean> open(URI uri, int timeout, @Nullable String pageLoadCheckExpression) {
         checkNotNull(uri);
         return open(uri.toString(), timeout, pageLoadCheckExpression);
     }
@@ -97,7 +116,7 @@ public class Browser implements IBrowser {
     }
 
     @Override
-    public Future<Boolean> openWithCallback(URI uri, int timeout, @Nullable String pageLoadCheckScript,
+    public ListenableFuture<Boolean> openWithCallback(URI uri, int timeout, @Nullable String pageLoadCheckScript,
                                             CallbackFunction<Boolean, Boolean> callback) {
         checkNotNull(uri);
         checkNotNull(callback);
@@ -105,8 +124,9 @@ public class Browser implements IBrowser {
     }
 
     @Override
-    public Future<Boolean> openBlank() {
-        return open(BrowserUtils.createBlankHTMLFile(), 6000);
+    public ListenableFuture<Boolean> openBlank() {
+        internalBrowser.getMetrics().diskWriteAvoided(StringUtils.getUtf8Length(BrowserUtils.BLANK_HTML));
+        return open(BrowserUtils.getBlankHTMLFile(), 6000);
     }
 
     @Override
@@ -127,13 +147,13 @@ public class Browser implements IBrowser {
     }
 
     @Override
-    public Future<Void> checkCondition(String javaScriptExpression) {
+    public ListenableFuture<Void> checkCondition(String javaScriptExpression) {
         checkNotNull(javaScriptExpression);
         return internalBrowser.checkCondition(javaScriptExpression);
     }
 
     @Override
-    public <DEST> Future<DEST> executeWhenConditionIsMet(String javaScriptExpression, CallbackFunction<Void, DEST> callback) {
+    public <DEST> ListenableFuture<DEST> executeWhenConditionIsMet(String javaScriptExpression, CallbackFunction<Void, DEST> callback) {
         checkNotNull(javaScriptExpression);
         checkNotNull(callback);
         return internalBrowser.executeWhenConditionIsMet(javaScriptExpression, callback);
@@ -145,14 +165,23 @@ public class Browser implements IBrowser {
         internalBrowser.executeAfterCompletion(runnable);
     }
 
+    /**
+     * Like {@link #executeAfterCompletion(Runnable)} but records the runnable's duration as the given phase.
+     */
+    protected void executeAfterCompletion(Runnable runnable, PageLoadPhase phase) {
+        checkNotNull(runnable);
+        checkNotNull(phase);
+        internalBrowser.executeAfterCompletion(runnable, phase);
+    }
+
     @Override
-    public Future<Boolean> injectJavascript(File javascriptFile) {
+    public ListenableFuture<Boolean> injectJavascript(File javascriptFile) {
         checkNotNull(javascriptFile);
         return internalBrowser.injectJavascript(javascriptFile);
     }
 
     @Override
-    public Future<Boolean> injectJavascript(URI scriptURI) {
+    public ListenableFuture<Boolean> injectJavascript(URI scriptURI) {
         checkNotNull(scriptURI);
         return internalBrowser.injectJavascript(scriptURI);
     }
@@ -167,7 +196,7 @@ public class Browser implements IBrowser {
     }
 
     @Override
-    public Future<Boolean> injectCssURI(URI cssURI) {
+    public ListenableFuture<Boolean> injectCssURI(URI cssURI) {
         checkNotNull(cssURI);
         return internalBrowser.injectCss(cssURI);
     }
@@ -182,7 +211,7 @@ public class Browser implements IBrowser {
     }
 
     @Override
-    public Future<Boolean> injectCss(String css) {
+    public ListenableFuture<Boolean> injectCss(String css) {
         checkNotNull(css);
         return internalBrowser.injectCss(css);
     }
@@ -197,32 +226,32 @@ public class Browser implements IBrowser {
     }
 
     @Override
-    public <DEST> Future<DEST> injectCss(String css, CallbackFunction<Boolean, DEST> callback) {
+    public <DEST> ListenableFuture<DEST> injectCss(String css, CallbackFunction<Boolean, DEST> callback) {
         checkNotNull(css);
         checkNotNull(callback);
         return internalBrowser.injectCss(css, callback);
     }
 
     @Override
-    public Future<Boolean> run(File scriptFile) {
+    public ListenableFuture<Boolean> run(File scriptFile) {
         checkNotNull(scriptFile);
         return internalBrowser.run(scriptFile);
     }
 
     @Override
-    public Future<Boolean> runContentAsScriptTag(File scriptFile) throws IOException {
+    public ListenableFuture<Boolean> runContentAsScriptTag(File scriptFile) throws IOException {
         checkNotNull(scriptFile);
         return internalBrowser.runContentAsScriptTag(scriptFile);
     }
 
     @Override
-    public Future<Boolean> run(URI scriptURI) {
+    public ListenableFuture<Boolean> run(URI scriptURI) {
         checkNotNull(scriptURI);
         return internalBrowser.run(scriptURI);
     }
 
     @Override
-    public Future<Object> run(String script) {
+    public ListenableFuture<Object> run(String script) {
         checkNotNull(script);
         return internalBrowser.run(script);
     }
@@ -237,19 +266,69 @@ public class Browser implements IBrowser {
     }
 
     @Override
-    public <DEST> Future<DEST> run(String script, CallbackFunction<Object, DEST> callback) {
+    public <DEST> ListenableFuture<DEST> run(String script, CallbackFunction<Object, DEST> callback) {
         checkNotNull(script);
         checkNotNull(callback);
         return internalBrowser.run(script, callback);
     }
 
     @Override
-    public <DEST> Future<DEST> run(String script, IConverter<Object, DEST> converter) {
+    public <DEST> ListenableFuture<DEST> run(String script, IConverter<Object, DEST> converter) {
         checkNotNull(script);
         checkNotNull(converter);
         return internalBrowser.run(script, converter);
     }
 
+    @Override
+    public <DEST> ListenableFuture<DEST> run(String script, IConverter<Object, DEST> converter, long timeout, TimeUnit unit) {
+        checkNotNull(script);
+        checkNotNull(converter);
+        checkNotNull(unit);
+        return internalBrowser.run(script, converter, timeout, unit);
+    }
+
+    @Override
+    public <DEST> ListenableFuture<DEST> run(String script, IConverter<Object, DEST> converter, Duration timeout) {
+        checkNotNull(timeout);
+        return run(script, converter, toTimeoutMillis(timeout), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Converts the given timeout to milliseconds like {@link InternalBrowserWrapper#toTimeoutMillis(long, TimeUnit)}.
+     *
+     * @throws IllegalArgumentException if timeout is negative
+     */
+    private static long toTimeoutMillis(Duration timeout) {
+        Assert.isLegal(!timeout.isNegative(), "timeout must not be negative");
+        return timeout.isZero() ? 0 : Math.max(1, timeout.toMillis());
+    }
+
+    @Override
+    public <DEST> ListenableFuture<DEST> run(String key, String script, IConverter<Object, DEST> converter) {
+        checkNotNull(key);
+        checkNotNull(script);
+        checkNotNull(converter);
+        return internalBrowser.run(key, script, converter);
+    }
+
+    @Override
+    public PreparedScript prepareScript(String functionBody, String... parameterNames) {
+        return internalBrowser.prepareScript(functionBody, parameterNames);
+    }
+
+    @Override
+    public <DEST> ListenableFuture<DEST> run(PreparedScript preparedScript, IConverter<Object, DEST> converter, Object... arguments) {
+        checkNotNull(preparedScript);
+        checkNotNull(converter);
+        return internalBrowser.run(preparedScript, converter, arguments);
+    }
+
+    @Override
+    public void releasePreparedScript(PreparedScript preparedScript) {
+        checkNotNull(preparedScript);
+        internalBrowser.releasePreparedScript(preparedScript);
+    }
+
     @Override
     public <DEST> DEST syncRun(String script, IConverter<Object, DEST> converter) {
         checkNotNull(script);
@@ -275,7 +354,7 @@ public class Browser implements IBrowser {
     }
 
     @Override
-    public <T, DEST> Future<T> run(String script, IConverter<Object, DEST> converter, CallbackFunction<DEST, T> callback) {
+    public <T, DEST> ListenableFuture<T> run(String script, IConverter<Object, DEST> converter, CallbackFunction<DEST, T> callback) {
         checkNotNull(script);
         checkNotNull(converter);
         checkNotNull(callback);
@@ -294,49 +373,90 @@ public class Browser implements IBrowser {
     }
 
     @Override
-    public Future<Boolean> containsElementWithID(String id) {
+    public ListenableFuture<Boolean> containsElementWithID(String id) {
         checkNotNull(id);
         return run("return document.getElementById('" + id + "') != null", IConverter.CONVERTER_BOOLEAN);
     }
 
     @Override
-    public Future<Boolean> containsElementsWithName(String name) {
+    public ListenableFuture<Boolean> containsElementsWithName(String name) {
         checkNotNull(name);
         return run("return document.getElementsByName('" + name + "').length > 0", IConverter.CONVERTER_BOOLEAN);
     }
 
     @Override
-    public Future<Boolean> setBodyHtml(String html) {
+    public ListenableFuture<Boolean> setBodyHtml(String html) {
         checkNotNull(html);
-        return run("document.body.innerHTML = ('" + JavascriptString.escape(html) + "');", IConverter.CONVERTER_BOOLEAN);
+        return run("__setBodyHtml", "document.body.innerHTML = ('" + JavascriptString.escape(html) + "');"
+                        + "window['" + BodyPatcher.VERSION + "'] = null;",
+                IConverter.CONVERTER_BOOLEAN);
     }
 
     @Override
-    public Future<String> getBodyHtml() {
+    public ListenableFuture<Boolean> patchBodyHtml(String html) {
+        checkNotNull(html);
+        return bodyPatcher.patch(html);
+    }
+
+    @Override
+    public ListenableFuture<String> getBodyHtml() {
         return run("return document.body.innerHTML", IConverter.CONVERTER_STRING);
     }
 
     @Override
-    public Future<String> getHtml() {
+    public ListenableFuture<String> getHtml() {
         return run("return document.documentElement.outerHTML", IConverter.CONVERTER_STRING);
     }
 
     @Override
-    public <T> Future<T> getHtml(CallbackFunction<String, T> callback) {
+    public <T> ListenableFuture<T> getHtml(CallbackFunction<String, T> callback) {
         checkNotNull(callback);
         return internalBrowser.runWithCallback(getHtml(), callback);
     }
 
     @Override
-    public Future<Boolean> pasteHtmlAtCaret(String html) {
+    public ListenableFuture<Long> getHtml(Writer writer) {
+        checkNotNull(writer);
+        return internalBrowser.stream("document.documentElement.outerHTML", writer);
+    }
+
+    @Override
+    public ListenableFuture<Long> getHtml(File file) {
+        checkNotNull(file);
+        return getHtml(file.toPath());
+    }
+
+    @Override
+    public ListenableFuture<Long> getHtml(Path path) {
+        checkNotNull(path);
+        return internalBrowser.stream("document.documentElement.outerHTML", path);
+    }
+
+    @Override
+    public ListenableFuture<Long> getBodyHtml(Writer writer) {
+        checkNotNull(writer);
+        return internalBrowser.stream("document.body.innerHTML", writer);
+    }
+
+    @Override
+    public Reader stream(String javaScriptExpression) {
+        checkNotNull(javaScriptExpression);
+        return internalBrowser.stream(javaScriptExpression);
+    }
+
+    @Override
+    public ListenableFuture<Boolean> pasteHtmlAtCaret(String html) {
         checkNotNull(html);
-        try {
-            File js = File.createTempFile("paste", ".js");
-            FileUtils.write(js, JavascriptString.createJavascriptForInsertingHTML(html));
-            return injectJavascript(js);
-        } catch (IOException e) {
-            return Futures.immediateFailedFuture(e);
+        PreparedScript pasteScript;
+        synchronized (this) {
+            if (this.pasteScript == null) {
+                this.pasteScript = prepareScript(JavascriptString.createJavascriptForInsertingHTML() + " return true;", "html");
+            }
+            pasteScript = this.pasteScript;
         }
+        // the script with the HTML embedded three times used to be written to a temporary file
+        internalBrowser.getMetrics().diskWriteAvoided(PASTE_SCRIPT_LENGTH + 3 * StringUtils.getUtf8Length(html));
+        return run(pasteScript, IConverter.CONVERTER_BOOLEAN, JavascriptString.prepareHtmlForInsertion(html));
     }
 
     @Override
@@ -344,6 +464,46 @@ public class Browser implements IBrowser {
         internalBrowser.setAllowLocationChange(allowed);
     }
 
+    @Override
+    public void setScriptBatchingEnabled(boolean enabled) {
+        internalBrowser.setScriptBatchingEnabled(enabled);
+    }
+
+    @Override
+    public void setDefaultScriptTimeout(long timeout, TimeUnit unit) {
+        checkNotNull(unit);
+        internalBrowser.setDefaultScriptTimeout(timeout, unit);
+    }
+
+    @Override
+    public void setDefaultScriptTimeout(Duration timeout) {
+        checkNotNull(timeout);
+        setDefaultScriptTimeout(toTimeoutMillis(timeout), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void setScriptQueueLimit(int capacity, OverflowPolicy overflowPolicy) {
+        checkNotNull(overflowPolicy);
+        internalBrowser.setScriptQueueLimit(capacity, overflowPolicy);
+    }
+
+    @Override
+    public void setListenerExecutor(Executor executor) {
+        internalBrowser.getListenerDispatcher().setExecutor(executor);
+    }
+
+    /**
+     * Returns the dispatcher that notifies the listeners of this browser.
+     */
+    protected ListenerDispatcher getListenerDispatcher() {
+        return internalBrowser.getListenerDispatcher();
+    }
+
+    @Override
+    public BrowserMetrics getMetrics() {
+        return internalBrowser.getMetrics();
+    }
+
     @Override
     public void deactivateTextSelections() {
         textSelectionsDisabled = true;
@@ -370,7 +530,42 @@ public class Browser implements IBrowser {
         internalBrowser.removeJavaScriptExceptionListener(exceptionListener);
     }
 
-    public <V, T> Future<T> runWithCallback(final Future<V> future, final CallbackFunction<V, T> callback) {
+    /**
+     * Removes all listeners that were added to this browser, e.g. before handing it over to a new owner.
+     * Listeners added to the underlying widget are not affected.
+     *
+     * May be called from whatever thread.
+     */
+    public void removeAllListeners() {
+        internalBrowser.removeAllListeners();
+    }
+
+    /**
+     * Restores the configuration this browser was created with, e.g. before handing it over to a new owner.
+     * This covers script batching, the default script timeout, the script queue limit, the listener executor,
+     * location changes, text selections and the before and after script functions.
+     * Settings that apply to the page take effect once the next page is loaded.
+     *
+     * May be called from whatever thread.
+     */
+    public void resetConfiguration() {
+        internalBrowser.resetConfiguration();
+        textSelectionsDisabled = false;
+    }
+
+    @Override
+    public void addPageLoadListener(IPageLoadListener pageLoadListener) {
+        checkNotNull(pageLoadListener);
+        internalBrowser.addPageLoadListener(pageLoadListener);
+    }
+
+    @Override
+    public void removePageLoadListener(IPageLoadListener pageLoadListener) {
+        checkNotNull(pageLoadListener);
+        internalBrowser.removePageLoadListener(pageLoadListener);
+    }
+
+    public <V, T> ListenableFuture<T> runWithCallback(final Future<V> future, final CallbackFunction<V, T> callback) {
         checkNotNull(future);
         checkNotNull(callback);
         return internalBrowser.runWithCallback(future, callback);
@@ -1,15 +1,16 @@
 package de.fu_berlin.inf.ag_se.browser;
 
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import de.fu_berlin.inf.ag_se.browser.exception.BrowserDisposedException;
 import de.fu_berlin.inf.ag_se.browser.exception.BrowserTimeoutException;
 import de.fu_berlin.inf.ag_se.browser.exception.ScriptExecutionException;
 import de.fu_berlin.inf.ag_se.browser.exception.UnexpectedBrowserStateException;
+import de.fu_berlin.inf.ag_se.browser.metrics.BrowserMetrics;
 import de.fu_berlin.inf.ag_se.browser.utils.DelayedScriptRunner;
 import org.apache.log4j.Logger;
 
 import java.util.Arrays;
-import java.util.concurrent.Future;
 
 class BrowserStatusManager {
 
@@ -49,9 +50,9 @@ class BrowserStatusManager {
 
     private final DelayedScriptRunner delayedScriptsWorker;
 
-    BrowserStatusManager() {
+    BrowserStatusManager(BrowserMetrics metrics) {
         this.browserStatus = BrowserStatus.INITIALIZING;
-        delayedScriptsWorker = new DelayedScriptRunner();
+        delayedScriptsWorker = new DelayedScriptRunner(metrics);
     }
 
     /**
@@ -113,6 +114,24 @@ class BrowserStatusManager {
         }
     }
 
+    /**
+     * Sets the executor used to run the scripts queued at the same time in a single round trip.
+     *
+     * @param batchExecutor the batch executor or null to run each script on its own
+     */
+    void setBatchExecutor(DelayedScriptRunner.BatchExecutor batchExecutor) {
+        delayedScriptsWorker.setBatchExecutor(batchExecutor);
+    }
+
+    /**
+     * Limits the number of queued scripts.
+     *
+     * @see DelayedScriptRunner#setCapacity(int, DelayedScriptRunner.OverflowPolicy)
+     */
+    void setScriptQueueCapacity(int capacity, DelayedScriptRunner.OverflowPolicy overflowPolicy) {
+        delayedScriptsWorker.setCapacity(capacity, overflowPolicy);
+    }
+
     private void callScriptWorker() {
         switch (this.browserStatus) {
             case LOADING:
@@ -134,15 +153,29 @@ class BrowserStatusManager {
         return browserStatus;
     }
 
-    synchronized <DEST> Future<DEST> createFuture(final ScriptExecutingCallable<DEST> scriptRunner) {
+    /**
+     * @param key           the key replacing a queued script with the same key, or null
+     * @param timeoutMillis the time the script may take including the time it is queued, or 0 for no deadline
+     * @param mayBlock      whether the calling thread may wait for room in a full queue
+     */
+    <DEST> ListenableFuture<DEST> createFuture(final ScriptExecutingCallable<DEST> scriptRunner, String key,
+                                               long timeoutMillis, boolean mayBlock) {
         final String script = scriptRunner.getScript();
+        /*
+         * The status must not be locked while submitting as the submitting thread may wait for a full queue.
+         * Instead the runner discards the script if it has been flushed for a new page since the status was read.
+         */
+        BrowserStatus browserStatus;
+        int flushCount;
+        synchronized (this) {
+            browserStatus = this.browserStatus;
+            flushCount = delayedScriptsWorker.getFlushCount();
+        }
         switch (browserStatus) {
             case INITIALIZING:
-                return delayedScriptsWorker.submit(scriptRunner);
             case LOADING:
-                return delayedScriptsWorker.submit(scriptRunner);
             case LOADED:
-                return delayedScriptsWorker.submit(scriptRunner);
+                return delayedScriptsWorker.submit(scriptRunner, key, timeoutMillis, mayBlock, flushCount);
             case TIMEDOUT:
                 return Futures.immediateFailedFuture(new ScriptExecutionException(script, new BrowserTimeoutException()));
             case DISPOSED:
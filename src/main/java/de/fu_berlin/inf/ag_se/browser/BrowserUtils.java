@@ -1,5 +1,9 @@
 package de.fu_berlin.inf.ag_se.browser;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import de.fu_berlin.inf.ag_se.browser.exception.JavaScriptException;
 import de.fu_berlin.inf.ag_se.browser.html.IElement;
 import de.fu_berlin.inf.ag_se.browser.utils.ImageUtils;
@@ -18,6 +22,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -190,15 +195,70 @@ public class BrowserUtils {
         }
     }
 
+    /**
+     * Adapts a future returned by an {@link IBrowser} to a {@link CompletableFuture}.
+     * Cancelling the returned future also cancels the given one.
+     *
+     * @param future the future to be adapted
+     * @return a future that completes like the given one
+     */
+    public static <V> CompletableFuture<V> toCompletableFuture(final ListenableFuture<V> future) {
+        final CompletableFuture<V> completableFuture = new CompletableFuture<V>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                future.cancel(mayInterruptIfRunning);
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        Futures.addCallback(future, new FutureCallback<V>() {
+            @Override
+            public void onSuccess(V result) {
+                completableFuture.complete(result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                completableFuture.completeExceptionally(t);
+            }
+        }, MoreExecutors.directExecutor());
+        return completableFuture;
+    }
+
+    static final String BLANK_HTML = "<!DOCTYPE html><html><head></head><body></body></html>";
+
+    private static File blankHTMLFile;
+
+    /**
+     * @deprecated creates a new file on each call that is never deleted; use {@link #getBlankHTMLFile()} instead
+     */
+    @Deprecated
     public static URI createBlankHTMLFile() {
         File empty = null;
         try {
             empty = File.createTempFile("blank", ".html");
-            FileUtils.writeStringToFile(empty,
-                    "<!DOCTYPE html><html><head></head><body></body></html>", "UTF-8");
+            FileUtils.writeStringToFile(empty, BLANK_HTML, "UTF-8");
         } catch (IOException e) {
             LOGGER.error("Error creating blank.html in temp folder.", e);
         }
         return empty.toURI();
     }
+
+    /**
+     * Returns a blank HTML file that is shared by all browsers.
+     * It is created on first use, or again if it was deleted in the meantime, and deleted on exit.
+     */
+    public static synchronized URI getBlankHTMLFile() {
+        if (blankHTMLFile == null || !blankHTMLFile.isFile()) {
+            try {
+                File file = File.createTempFile("blank", ".html");
+                file.deleteOnExit();
+                FileUtils.writeStringToFile(file, BLANK_HTML, "UTF-8");
+                blankHTMLFile = file;
+            } catch (IOException e) {
+                LOGGER.error("Error creating blank.html in temp folder.", e);
+                return URI.create("about:blank");
+            }
+        }
+        return blankHTMLFile.toURI();
+    }
 }
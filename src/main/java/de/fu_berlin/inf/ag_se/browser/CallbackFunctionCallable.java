@@ -1,5 +1,6 @@
 package de.fu_berlin.inf.ag_se.browser;
 
+import de.fu_berlin.inf.ag_se.browser.exception.ScriptTimeoutException;
 import de.fu_berlin.inf.ag_se.browser.functions.IBrowserFunction;
 import de.fu_berlin.inf.ag_se.browser.functions.JavascriptFunction;
 import de.fu_berlin.inf.ag_se.browser.threading.NoCheckedExceptionCallable;
@@ -7,6 +8,7 @@ import org.apache.log4j.Logger;
 
 import java.net.URI;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 public class CallbackFunctionCallable implements NoCheckedExceptionCallable<Boolean> {
 
@@ -40,14 +42,22 @@ public class CallbackFunctionCallable implements NoCheckedExceptionCallable<Bool
         // callback
         // ...
         browser.run(js);
+        long timeoutMillis = browser.getDefaultScriptTimeoutMillis();
         try {
-            // ... which destroys itself and releases this
-            // lock
-            mutex.acquire();
-            browserFunction.dispose();
+            // ... which releases this lock
+            if (timeoutMillis > 0) {
+                if (!mutex.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    browser.getMetrics().deadlineMissed();
+                    throw new ScriptTimeoutException(scriptURI.toString(), timeoutMillis);
+                }
+            } else {
+                mutex.acquire();
+            }
             return true;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+        } finally {
+            browserFunction.dispose();
         }
         return false;
     }
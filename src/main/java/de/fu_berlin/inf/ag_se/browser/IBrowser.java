@@ -1,18 +1,28 @@
 package de.fu_berlin.inf.ag_se.browser;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import com.sun.istack.internal.Nullable;
 import de.fu_berlin.inf.ag_se.browser.exception.ScriptExecutionException;
 import de.fu_berlin.inf.ag_se.browser.functions.CallbackFunction;
 import de.fu_berlin.inf.ag_se.browser.functions.Function;
 import de.fu_berlin.inf.ag_se.browser.functions.IBrowserFunction;
 import de.fu_berlin.inf.ag_se.browser.functions.JavascriptFunction;
+import de.fu_berlin.inf.ag_se.browser.listener.IPageLoadListener;
 import de.fu_berlin.inf.ag_se.browser.listener.JavaScriptExceptionListener;
+import de.fu_berlin.inf.ag_se.browser.metrics.BrowserMetrics;
+import de.fu_berlin.inf.ag_se.browser.utils.DelayedScriptRunner.OverflowPolicy;
 import de.fu_berlin.inf.ag_se.browser.utils.IConverter;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This interface encapsulates a broad range of functionality of a web browser.
@@ -22,6 +32,9 @@ import java.util.concurrent.Future;
  * the website.
  * Most of the execution and injection methods are delayed until the website is fully loaded
  * because otherwise their result would be undetermined.
+ * Their results are returned as {@link ListenableFuture}s so that follow-up work can be chained
+ * using {@link com.google.common.util.concurrent.Futures} without blocking a thread until the script completes.
+ * {@link BrowserUtils#toCompletableFuture(ListenableFuture)} adapts them to {@link java.util.concurrent.CompletableFuture}s.
  */
 @SuppressWarnings("UnusedDeclaration")
 public interface IBrowser {
@@ -44,7 +57,7 @@ public interface IBrowser {
      *
      * @throws NullPointerException if the passed uri is null
      */
-    Future<Boolean> open(String uri, int timeout);
+    ListenableFuture<Boolean> open(String uri, int timeout);
 
     /**
      * Opens the given URI.
@@ -67,7 +80,7 @@ public interface IBrowser {
      *
      * @throws NullPointerException if the passed uri is null
      */
-    Future<Boolean> open(String uri, int timeout, @Nullable String pageLoadCheckScript);
+    ListenableFuture<Boolean> open(String uri, int timeout, @Nullable String pageLoadCheckScript);
 
     /**
      * Opens the given URI.
@@ -87,7 +100,7 @@ public interface IBrowser {
      *
      * @throws NullPointerException if the passed uri is null
      */
-    Future<Boolean> open(URI uri, int timeout);
+    ListenableFuture<Boolean> open(URI uri, int timeout);
 
     /**
      * Opens the given URI and waits for the result.
@@ -122,7 +135,7 @@ public interface IBrowser {
      *
      * @throws NullPointerException if the passed uri or callback is null
      */
-    Future<Boolean> open(URI uri, int timeout, CallbackFunction<Boolean, Boolean> callback);
+    ListenableFuture<Boolean> open(URI uri, int timeout, CallbackFunction<Boolean, Boolean> callback);
 
     /**
      * Opens the given URI and checks completion with a specified Javascript expression.
@@ -145,7 +158,7 @@ public interface IBrowser {
      *
      * @throws NullPointerException if the passed uri is null
      */
-    Future<Boolean> open(URI uri, int timeout, @Nullable String pageLoadCheckScript);
+    ListenableFuture<Boolean> open(URI uri, int timeout, @Nullable String pageLoadCheckScript);
 
     /**
      * Opens the given URI and checks completion with a specified Javascript expression.
@@ -184,7 +197,7 @@ public interface IBrowser {
      *
      * @throws NullPointerException if the passed uri is null
      */
-    Future<Boolean> openWithCallback(URI uri, int timeout, @Nullable String pageLoadCheckScript,
+    ListenableFuture<Boolean> openWithCallback(URI uri, int timeout, @Nullable String pageLoadCheckScript,
                                      CallbackFunction<Boolean, Boolean> callback);
 
     /**
@@ -199,7 +212,7 @@ public interface IBrowser {
      *
      * @return a boolean future indicating whether the page could be loaded successfully
      */
-    Future<Boolean> openBlank();
+    ListenableFuture<Boolean> openBlank();
 
     /**
      * Checks if the current URI has been successfully loaded.
@@ -249,7 +262,7 @@ public interface IBrowser {
      * @throws NullPointerException  if javaScriptExpression is null
      * @throws IllegalStateException if called from the UI thread
      */
-    Future<Void> checkCondition(String javaScriptExpression);
+    ListenableFuture<Void> checkCondition(String javaScriptExpression);
 
     /**
      * Continuously checks the given Javascript expression until it evaluates to true.
@@ -268,7 +281,7 @@ public interface IBrowser {
      *
      * @throws NullPointerException if javaScriptExpression or callback is null
      */
-    <DEST> Future<DEST> executeWhenConditionIsMet(String javaScriptExpression, CallbackFunction<Void, DEST> callback);
+    <DEST> ListenableFuture<DEST> executeWhenConditionIsMet(String javaScriptExpression, CallbackFunction<Void, DEST> callback);
 
     /**
      * Set a runnable to be executed after the browser completed
@@ -309,7 +322,7 @@ public interface IBrowser {
      *
      * @throws NullPointerException if javascriptFile is null
      */
-    Future<Boolean> injectJavascript(File javascriptFile);
+    ListenableFuture<Boolean> injectJavascript(File javascriptFile);
 
     /**
      * Injects the Javascript addressed by the given URI and returns
@@ -334,7 +347,7 @@ public interface IBrowser {
      *
      * @throws NullPointerException if scriptURI is null
      */
-    Future<Boolean> injectJavascript(URI scriptURI);
+    ListenableFuture<Boolean> injectJavascript(URI scriptURI);
 
     /**
      * Injects the Javascript addressed by the given URI and returns
@@ -375,7 +388,7 @@ public interface IBrowser {
      *
      * @throws NullPointerException if cssURI is null
      */
-    Future<Boolean> injectCssURI(URI cssURI);
+    ListenableFuture<Boolean> injectCssURI(URI cssURI);
 
     /**
      * Includes the given URI as a cascading style sheet.
@@ -412,7 +425,7 @@ public interface IBrowser {
      *
      * @throws NullPointerException if css is null
      */
-    Future<Boolean> injectCss(String css);
+    ListenableFuture<Boolean> injectCss(String css);
 
     /**
      * Adds the given CSS code to current website.
@@ -450,7 +463,7 @@ public interface IBrowser {
      *
      * @throws NullPointerException if css or callback is null
      */
-    <DEST> Future<DEST> injectCss(String css, CallbackFunction<Boolean, DEST> callback);
+    <DEST> ListenableFuture<DEST> injectCss(String css, CallbackFunction<Boolean, DEST> callback);
 
     /**
      * Runs the Javascript contained in the given file in the browser as soon as
@@ -472,7 +485,7 @@ public interface IBrowser {
      *
      * @throws NullPointerException if scriptFile is null
      */
-    Future<Boolean> run(File scriptFile);
+    ListenableFuture<Boolean> run(File scriptFile);
 
     /**
      * Runs the script contained in the given {@link java.io.File} in the browser.
@@ -494,7 +507,7 @@ public interface IBrowser {
      * @throws NullPointerException if scriptFile is null
      * @throws IOException          if a exception is thrown while accessing the file
      */
-    Future<Boolean> runContentAsScriptTag(File scriptFile) throws IOException;
+    ListenableFuture<Boolean> runContentAsScriptTag(File scriptFile) throws IOException;
 
     /**
      * Runs the Javascript addressed by the given URI in the browser as soon as
@@ -521,7 +534,7 @@ public interface IBrowser {
      *
      * @throws NullPointerException if scriptURI is null
      */
-    Future<Boolean> run(URI scriptURI);
+    ListenableFuture<Boolean> run(URI scriptURI);
 
     /**
      * Runs the given Javascript in the browser as soon as loading is completed
@@ -541,7 +554,7 @@ public interface IBrowser {
      *
      * @throws NullPointerException if script is null
      */
-    Future<Object> run(String script);
+    ListenableFuture<Object> run(String script);
 
     /**
      * Runs the given Javascript in the browser as soon as loading is completed.
@@ -577,7 +590,7 @@ public interface IBrowser {
      *
      * @throws NullPointerException if script or callback is null
      */
-    <DEST> Future<DEST> run(String script, CallbackFunction<Object, DEST> callback);
+    <DEST> ListenableFuture<DEST> run(String script, CallbackFunction<Object, DEST> callback);
 
     /**
      * Runs the given script in the browser as soon as loading is completed
@@ -596,7 +609,108 @@ public interface IBrowser {
      *
      * @throws NullPointerException if script or converter is null
      */
-    <DEST> Future<DEST> run(String script, IConverter<Object, DEST> converter);
+    <DEST> ListenableFuture<DEST> run(String script, IConverter<Object, DEST> converter);
+
+    /**
+     * Runs the given script like {@link #run(String, IConverter)} but with the given deadline
+     * instead of the {@link #setDefaultScriptTimeout(long, TimeUnit) default one}.
+     * If the script has not completed before the deadline the returned future fails with a
+     * {@link de.fu_berlin.inf.ag_se.browser.exception.ScriptTimeoutException}
+     * and a script still waiting in the queue is dropped without being executed.
+     * Deadlines are measured in milliseconds, shorter ones are rounded up to a millisecond.
+     *
+     * May be called from whatever thread.
+     *
+     * @param script    the Javascript code to be executed as string
+     * @param converter a converter for the return value
+     * @param timeout   the time the script may take including the time it waits to be executed, 0 for no deadline
+     * @param unit      the unit of timeout
+     * @return a future of the converted return value
+     *
+     * @throws NullPointerException if script, converter or unit is null
+     * @throws IllegalArgumentException if timeout is negative
+     */
+    <DEST> ListenableFuture<DEST> run(String script, IConverter<Object, DEST> converter, long timeout, TimeUnit unit);
+
+    /**
+     * Runs the given script like {@link #run(String, IConverter, long, TimeUnit)} with the given deadline.
+     *
+     * May be called from whatever thread.
+     *
+     * @param script    the Javascript code to be executed as string
+     * @param converter a converter for the return value
+     * @param timeout   the time the script may take including the time it waits to be executed, zero for no deadline
+     * @return a future of the converted return value
+     *
+     * @throws NullPointerException if script, converter or timeout is null
+     * @throws IllegalArgumentException if timeout is negative
+     */
+    <DEST> ListenableFuture<DEST> run(String script, IConverter<Object, DEST> converter, Duration timeout);
+
+    /**
+     * Runs the given script like {@link #run(String, IConverter)} unless another script with the same key
+     * is submitted before this one gets executed. In that case the newer script takes this script's place
+     * in the queue. The future of the replaced script completes with the newer script's result if both use
+     * the same converter instance or fails with a
+     * {@link de.fu_berlin.inf.ag_se.browser.exception.ScriptSupersededException} otherwise.
+     *
+     * This is meant for scripts that push a state to the page where only the newest state matters.
+     *
+     * May be called from whatever thread.
+     *
+     * @param key       the key identifying scripts that replace each other
+     * @param script    the Javascript code to be executed as string
+     * @param converter a converter for the return value
+     * @return a future of the converted return value
+     *
+     * @throws NullPointerException if key, script or converter is null
+     */
+    <DEST> ListenableFuture<DEST> run(String key, String script, IConverter<Object, DEST> converter);
+
+    /**
+     * Registers the given function body as a function in the browser and returns a handle to call it.
+     * The function is compiled once per loaded page and automatically registered again after
+     * a new page has been loaded, so that calling it via
+     * {@link #run(PreparedScript, IConverter, Object...)} only transfers the arguments.
+     *
+     * May be called from whatever thread.
+     *
+     * @param functionBody   the body of the function, may use the parameters and return a value
+     * @param parameterNames the names of the function's parameters
+     * @return the handle of the prepared script
+     *
+     * @throws IllegalArgumentException if functionBody is null or a parameter name is no valid Javascript identifier
+     */
+    PreparedScript prepareScript(String functionBody, String... parameterNames);
+
+    /**
+     * Calls the given {@link PreparedScript} with the given arguments
+     * and returns the call's converted return value.
+     * Supported arguments are null, {@link Boolean}s, {@link Number}s, {@link String}s
+     * as well as arrays, {@link java.util.Collection}s and {@link java.util.Map}s thereof.
+     *
+     * May be called from whatever thread. Note, however, that {@link Future#get()} may not
+     * be called from the UI thread unless {@link Future#isDone()} returns true.
+     *
+     * @param preparedScript the script created by {@link #prepareScript(String, String...)}
+     * @param converter      a converter for the return value
+     * @param arguments      the arguments to be passed to the script
+     * @return a future of the converted return value
+     *
+     * @throws IllegalArgumentException if the script was not prepared by this browser or has been released
+     *                                  or if an argument is not supported
+     */
+    <DEST> ListenableFuture<DEST> run(PreparedScript preparedScript, IConverter<Object, DEST> converter, Object... arguments);
+
+    /**
+     * Removes the given {@link PreparedScript} from the browser.
+     * Afterwards it must no longer be run.
+     *
+     * May be called from whatever thread.
+     *
+     * @param preparedScript the script to be released
+     */
+    void releasePreparedScript(PreparedScript preparedScript);
 
     /**
      * Runs the given Javascript in the browser as soon as loading is completed
@@ -634,7 +748,7 @@ public interface IBrowser {
      *
      * @throws NullPointerException if script, converter, or callback is null
      */
-    <T, DEST> Future<T> run(String script, IConverter<Object, DEST> converter, CallbackFunction<DEST, T> callback);
+    <T, DEST> ListenableFuture<T> run(String script, IConverter<Object, DEST> converter, CallbackFunction<DEST, T> callback);
 
     /**
      * Sets a {@link Function} that is executed when a script is about to be executed by the browser.
@@ -672,7 +786,7 @@ public interface IBrowser {
      *
      * @throws NullPointerException if id is null
      */
-    Future<Boolean> containsElementWithID(String id);
+    ListenableFuture<Boolean> containsElementWithID(String id);
 
     /**
      * Returns a {@link java.util.concurrent.Future} indicating
@@ -691,7 +805,7 @@ public interface IBrowser {
      *
      * @throws NullPointerException if name is null
      */
-    Future<Boolean> containsElementsWithName(String name);
+    ListenableFuture<Boolean> containsElementsWithName(String name);
 
     /**
      * Sets the body's inner HTML to the given string after
@@ -712,7 +826,27 @@ public interface IBrowser {
      *
      * @throws NullPointerException if html is null
      */
-    Future<Boolean> setBodyHtml(String html);
+    ListenableFuture<Boolean> setBodyHtml(String html);
+
+    /**
+     * Updates the HTML body to the given content after the page has finished loading.
+     * <p/>
+     * In contrast to {@link #setBodyHtml(String)} only the nodes that changed since the last call of
+     * this method are updated, so the costs scale with the size of the change rather than
+     * with the size of the document. Element state that is not part of the HTML, e.g. the
+     * focus, the scroll position or registered event handlers, is kept for unchanged nodes.
+     * If the body was changed otherwise in the meantime, e.g. by {@link #setBodyHtml(String)} or
+     * a reload, the whole body is replaced.
+     * <p/>
+     * May be called from whatever thread. Note, however, that {@link Future#get()} may not
+     * be called from the UI thread unless {@link Future#isDone()} returns true.
+     *
+     * @param html a string representing the HTML body's new content
+     * @return a future to check whether the delayed execution has successful
+     *
+     * @throws NullPointerException if html is null
+     */
+    ListenableFuture<Boolean> patchBodyHtml(String html);
 
     /**
      * Returns the body's inner HTML after
@@ -728,7 +862,7 @@ public interface IBrowser {
      *
      * @return a string future containing the body's inner HTML
      */
-    Future<String> getBodyHtml();
+    ListenableFuture<String> getBodyHtml();
 
     /**
      * Returns the document's inner HTML after
@@ -744,7 +878,7 @@ public interface IBrowser {
      *
      * @return a string future containing the document's inner HTML
      */
-    Future<String> getHtml();
+    ListenableFuture<String> getHtml();
 
     /**
      * Executes the given callback function with the obtained HTML
@@ -762,7 +896,76 @@ public interface IBrowser {
      *
      * @throws NullPointerException if callback is null
      */
-    <T> Future<T> getHtml(CallbackFunction<String, T> callback);
+    <T> ListenableFuture<T> getHtml(CallbackFunction<String, T> callback);
+
+    /**
+     * Writes the document's HTML to the given writer without transferring it as one large string.
+     * The page sends the HTML in chunks and yields the UI thread between them.
+     * The writer is not closed.
+     *
+     * May be called from whatever thread. Note, however, that {@link Future#get()} may not
+     * be called from the UI thread unless {@link Future#isDone()} returns true.
+     *
+     * @param writer the writer to write the HTML to
+     * @return a future of the number of written characters
+     *
+     * @throws NullPointerException if writer is null
+     */
+    ListenableFuture<Long> getHtml(Writer writer);
+
+    /**
+     * Writes the document's HTML to the given file using UTF-8 like {@link #getHtml(Writer)} does.
+     *
+     * May be called from whatever thread. Note, however, that {@link Future#get()} may not
+     * be called from the UI thread unless {@link Future#isDone()} returns true.
+     *
+     * @param file the file to write the HTML to, an existing file is overwritten
+     * @return a future of the number of written characters
+     *
+     * @throws NullPointerException if file is null
+     */
+    ListenableFuture<Long> getHtml(File file);
+
+    /**
+     * Writes the document's HTML to the given file using UTF-8 like {@link #getHtml(Writer)} does.
+     *
+     * May be called from whatever thread. Note, however, that {@link Future#get()} may not
+     * be called from the UI thread unless {@link Future#isDone()} returns true.
+     *
+     * @param path the file to write the HTML to, an existing file is overwritten
+     * @return a future of the number of written characters
+     *
+     * @throws NullPointerException if path is null
+     */
+    ListenableFuture<Long> getHtml(Path path);
+
+    /**
+     * Writes the body's inner HTML to the given writer like {@link #getHtml(Writer)} does.
+     *
+     * May be called from whatever thread. Note, however, that {@link Future#get()} may not
+     * be called from the UI thread unless {@link Future#isDone()} returns true.
+     *
+     * @param writer the writer to write the HTML to
+     * @return a future of the number of written characters
+     *
+     * @throws NullPointerException if writer is null
+     */
+    ListenableFuture<Long> getBodyHtml(Writer writer);
+
+    /**
+     * Evaluates the given Javascript expression and returns a reader for its string value.
+     * The value is transferred in chunks that are requested as the reader is read,
+     * so that large values neither block the UI thread nor have to be held in memory as a whole.
+     * The reader should be closed if it is not read to the end.
+     *
+     * May be called from whatever thread. The returned reader must not be read from the UI thread.
+     *
+     * @param javaScriptExpression the expression whose value is to be read, e.g. <code>document.body.innerText</code>
+     * @return the reader, throwing an {@link IOException} if the expression could not be evaluated
+     *
+     * @throws NullPointerException if javaScriptExpression is null
+     */
+    Reader stream(String javaScriptExpression);
 
     /**
      * Inserts the given html at the current caret / cursor position
@@ -783,7 +986,7 @@ public interface IBrowser {
      *
      * @throws NullPointerException if html is null
      */
-    Future<Boolean> pasteHtmlAtCaret(String html);
+    ListenableFuture<Boolean> pasteHtmlAtCaret(String html);
 
     /**
      * Sets whether the browser may change its location.
@@ -796,6 +999,92 @@ public interface IBrowser {
      */
     void setAllowLocationChange(boolean allowed);
 
+    /**
+     * Sets whether scripts that are queued at the same time are combined
+     * so that they are executed in a single round trip to the browser.
+     * Each script's future is still completed on its own and scripts
+     * are executed in the order they have been submitted.
+     *
+     * Batching is enabled by default.
+     *
+     * May be called from whatever thread.
+     *
+     * @param enabled true to combine queued scripts, false to execute them one by one
+     */
+    void setScriptBatchingEnabled(boolean enabled);
+
+    /**
+     * Sets the deadline for scripts, conditions and script injections that are not given an explicit one.
+     * Conditions that are not met before the deadline stop being checked within the page.
+     *
+     * There is no deadline by default.
+     *
+     * May be called from whatever thread.
+     *
+     * @param timeout the deadline, 0 for no deadline
+     * @param unit    the unit of timeout
+     *
+     * @throws IllegalArgumentException if timeout is negative
+     */
+    void setDefaultScriptTimeout(long timeout, TimeUnit unit);
+
+    /**
+     * Sets the deadline like {@link #setDefaultScriptTimeout(long, TimeUnit)} does.
+     *
+     * May be called from whatever thread.
+     *
+     * @param timeout the deadline, zero for no deadline
+     *
+     * @throws NullPointerException if timeout is null
+     * @throws IllegalArgumentException if timeout is negative
+     */
+    void setDefaultScriptTimeout(Duration timeout);
+
+    /**
+     * Limits the number of scripts waiting to be executed, e.g. while the page is still loading.
+     * If the limit is reached the given policy decides whether the submitting thread waits,
+     * the new script is rejected, the oldest waiting script is dropped
+     * or an identical waiting script is reused.
+     * Rejected and dropped scripts fail with a {@link de.fu_berlin.inf.ag_se.browser.exception.ScriptRejectedException}.
+     *
+     * By default the number of waiting scripts is not limited.
+     *
+     * May be called from whatever thread.
+     *
+     * @param capacity       the maximum number of waiting scripts
+     * @param overflowPolicy what happens to scripts submitted while the limit is reached
+     *
+     * @throws IllegalArgumentException if capacity is not positive
+     * @throws NullPointerException     if overflowPolicy is null
+     */
+    void setScriptQueueLimit(int capacity, OverflowPolicy overflowPolicy);
+
+    /**
+     * Sets the executor used to notify the listeners of this browser,
+     * e.g. {@link JavaScriptExceptionListener}s.
+     * <p>
+     * By default listeners are notified synchronously in the UI thread, so that a slow listener
+     * blocks both the page and the user interface. If an executor is set, each event is delivered
+     * on a background lane that notifies the listeners one after another in the order the events occurred.
+     * Listeners implementing {@link de.fu_berlin.inf.ag_se.browser.listener.IUIThreadListener}
+     * are still notified synchronously in the UI thread.
+     * The latency of each listener is recorded in the {@link #getMetrics() metrics}.
+     *
+     * May be called from whatever thread.
+     *
+     * @param executor the executor running the lane or <code>null</code> to notify the listeners in the UI thread
+     */
+    void setListenerExecutor(Executor executor);
+
+    /**
+     * Returns the metrics of this browser, e.g. the number of missed deadlines.
+     *
+     * May be called from whatever thread.
+     *
+     * @return the browser's metrics
+     */
+    BrowserMetrics getMetrics();
+
     /**
      * Deactivates the selection of text inside the browser.
      *
@@ -839,6 +1128,28 @@ public interface IBrowser {
      */
     void removeJavaScriptExceptionListener(JavaScriptExceptionListener exceptionListener);
 
+    /**
+     * Adds a {@link IPageLoadListener} that is notified about the phase durations
+     * of each page opened by this browser.
+     *
+     * May be called from whatever thread.
+     *
+     * @param pageLoadListener the listener to be added
+     * @throws NullPointerException if pageLoadListener is null
+     */
+    void addPageLoadListener(IPageLoadListener pageLoadListener);
+
+    /**
+     * Removes the given {@link IPageLoadListener}
+     * from the browser.
+     *
+     * May be called from whatever thread.
+     *
+     * @param pageLoadListener the listener to be removed
+     * @throws NullPointerException if pageLoadListener is null
+     */
+    void removePageLoadListener(IPageLoadListener pageLoadListener);
+
     /**
      * Registers a runnable to be called when the browser is disposed.
      * This method may be called multiple times to register multiple runnables.
@@ -1,30 +1,55 @@
 package de.fu_berlin.inf.ag_se.browser;
 
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 import de.fu_berlin.inf.ag_se.browser.BrowserStatusManager.BrowserStatus;
 import de.fu_berlin.inf.ag_se.browser.exception.BrowserDisposedException;
 import de.fu_berlin.inf.ag_se.browser.exception.JavaScriptException;
 import de.fu_berlin.inf.ag_se.browser.exception.ScriptExecutionException;
+import de.fu_berlin.inf.ag_se.browser.exception.ScriptTimeoutException;
+import de.fu_berlin.inf.ag_se.browser.exception.UnexpectedBrowserStateException;
 import de.fu_berlin.inf.ag_se.browser.functions.CallbackFunction;
 import de.fu_berlin.inf.ag_se.browser.functions.Function;
 import de.fu_berlin.inf.ag_se.browser.functions.IBrowserFunction;
 import de.fu_berlin.inf.ag_se.browser.functions.InternalJavascriptFunction;
+import de.fu_berlin.inf.ag_se.browser.listener.IPageLoadListener;
 import de.fu_berlin.inf.ag_se.browser.listener.JavaScriptExceptionListener;
+import de.fu_berlin.inf.ag_se.browser.metrics.BrowserMetrics;
+import de.fu_berlin.inf.ag_se.browser.metrics.PageLoadPhase;
+import de.fu_berlin.inf.ag_se.browser.metrics.PageLoadTiming;
+import de.fu_berlin.inf.ag_se.browser.threading.HashedWheelTimer;
+import de.fu_berlin.inf.ag_se.browser.threading.ListenerDispatcher;
 import de.fu_berlin.inf.ag_se.browser.threading.NoCheckedExceptionCallable;
+import de.fu_berlin.inf.ag_se.browser.threading.TimeoutScheduler;
 import de.fu_berlin.inf.ag_se.browser.threading.UIThreadAwareExecutor;
 import de.fu_berlin.inf.ag_se.browser.threading.UIThreadExecutor;
+import de.fu_berlin.inf.ag_se.browser.threading.labeling.ThreadLabelingCallable;
 import de.fu_berlin.inf.ag_se.browser.utils.Assert;
+import de.fu_berlin.inf.ag_se.browser.utils.DelayedScriptRunner;
+import de.fu_berlin.inf.ag_se.browser.utils.DelayedScriptRunner.OverflowPolicy;
 import de.fu_berlin.inf.ag_se.browser.utils.IConverter;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This is an internal wrapper class around the {@link org.eclipse.swt.browser.Browser}.
@@ -35,6 +60,22 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
 
     private static Logger LOGGER = Logger.getLogger(InternalBrowserWrapper.class);
 
+    /**
+     * Copies streamed script results to their destinations. A copy blocks its thread until the page
+     * has sent the whole result, so the copies get threads of their own instead of occupying the browser's executor.
+     */
+    private static final ListeningExecutorService STREAM_COPIER = MoreExecutors.listeningDecorator(
+            Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger i = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "Stream copier #" + i.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                }
+            }));
+
     protected final T browser;
 
     private BrowserStatusManager browserStatusManager;
@@ -49,19 +90,59 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
 
     private List<Callable<Object>> afterLoading = new ArrayList<Callable<Object>>();
 
-    private List<Function<String>> beforeScripts = new ArrayList<Function<String>>();
+    private List<Function<String>> beforeScripts = new CopyOnWriteArrayList<Function<String>>();
 
-    private List<Function<Object>> afterScripts = new ArrayList<Function<Object>>();
+    private List<Function<Object>> afterScripts = new CopyOnWriteArrayList<Function<Object>>();
 
     private List<Runnable> runOnDisposalList = new ArrayList<Runnable>();
 
-    private final List<JavaScriptExceptionListener> javaScriptExceptionListeners = Collections
-            .synchronizedList(new ArrayList<JavaScriptExceptionListener>());
+    private final List<PreparedScript> preparedScripts = new CopyOnWriteArrayList<PreparedScript>();
+
+    private final BrowserMetrics metrics = new BrowserMetrics();
+
+    private volatile long defaultScriptTimeoutMillis = 0;
 
-    private Timer timer;
+    private final List<JavaScriptExceptionListener> javaScriptExceptionListeners
+            = new CopyOnWriteArrayList<JavaScriptExceptionListener>();
+
+    private final ListenerDispatcher listenerDispatcher = new ListenerDispatcher(metrics);
+
+    /**
+     * The readers of streamed script results that still wait for chunks from the current page.
+     */
+    private final Set<ScriptResultReader> streamingReaders
+            = Collections.newSetFromMap(new ConcurrentHashMap<ScriptResultReader, Boolean>());
+
+    private HashedWheelTimer.Timeout loadTimeout;
+
+    /**
+     * Measures the navigation started by {@link #open(String, Integer, String)} or null if none is in progress.
+     */
+    private volatile PageLoadRecorder pageLoad;
+
+    private final List<IPageLoadListener> pageLoadListeners = new CopyOnWriteArrayList<IPageLoadListener>();
+
+    private volatile String pageLoadCheckExpression;
+
+    private volatile boolean loadedListenerAdded = false;
 
     protected final UIThreadAwareExecutor executor;
 
+    /**
+     * Runs callbacks using {@link #executor} so that they never block the script runner.
+     * Once the executor has been shut down the callbacks are run directly.
+     */
+    private final Executor callbackExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            try {
+                executor.execute(command);
+            } catch (RejectedExecutionException e) {
+                command.run();
+            }
+        }
+    };
+
     protected final UIThreadExecutor uiThreadExecutor;
 
     protected boolean allowLocationChange = false;
@@ -74,7 +155,8 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
         browser.setVisible(false);
         uiThreadExecutor = browser.getUIThreadExecutor();
         executor = new UIThreadAwareExecutor(uiThreadExecutor);
-        browserStatusManager = new BrowserStatusManager();
+        browserStatusManager = new BrowserStatusManager(metrics);
+        browserStatusManager.setBatchExecutor(new ScriptBatchExecutor(this));
 
         // throws exception that arise from calls within the browser,
         // meaning code that has not been invoked by Java but by JavaScript
@@ -93,17 +175,26 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
     /**
      * @throws BrowserDisposedException if the browser is disposed
      */
-    Future<Boolean> open(final String uri, final Integer timeout,
+    ListenableFuture<Boolean> open(final String uri, final Integer timeout,
                          final String pageLoadCheckExpression) {
 
+        final PageLoadRecorder pageLoad = new PageLoadRecorder(uri);
+        this.pageLoad = pageLoad;
         browserStatusManager.setBrowserStatus(BrowserStatus.LOADING);
-
-        browser.addLoadedListener(new Runnable() {
-            @Override
-            public void run() {
-                waitAndComplete(pageLoadCheckExpression);
-            }
-        });
+        // the page that streams the results is left
+        failStreamingReaders(new UnexpectedBrowserStateException(BrowserStatus.LOADING.toString()));
+
+        // the listener is only added once as browsers may open several pages, e.g. when reused by a pool
+        this.pageLoadCheckExpression = pageLoadCheckExpression;
+        if (!loadedListenerAdded) {
+            loadedListenerAdded = true;
+            browser.addLoadedListener(new Runnable() {
+                @Override
+                public void run() {
+                    waitAndComplete(InternalBrowserWrapper.this.pageLoadCheckExpression);
+                }
+            });
+        }
 
         return executor.nonUIAsyncExec(Browser.class, "Opening " + uri,
                 new NoCheckedExceptionCallable<Boolean>() {
@@ -111,23 +202,30 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
                     public Boolean call() {
                         startTimeout(uri, timeout);
 
+                        pageLoad.begin(PageLoadPhase.BEFORE_LOADING);
                         try {
                             //TODO maybe sync exec
                             executor.invokeAll(beforeLoading);
                         } catch (InterruptedException e) {
                             Thread.currentThread().interrupt();
                         }
+                        pageLoad.end(PageLoadPhase.BEFORE_LOADING);
 
                         settingUri = true;
+                        pageLoad.begin(PageLoadPhase.SET_URL);
                         browser.setUrl(uri);
+                        pageLoad.end(PageLoadPhase.SET_URL);
+                        pageLoad.begin(PageLoadPhase.PROGRESS);
                         settingUri = false;
 
+                        pageLoad.begin(PageLoadPhase.AFTER_LOADING);
                         try {
                             //TODO maybe sync exec
                             executor.invokeAll(afterLoading);
                         } catch (InterruptedException e) {
                             Thread.currentThread().interrupt();
                         }
+                        pageLoad.end(PageLoadPhase.AFTER_LOADING);
 
                         synchronized (monitor) {
                             LOGGER.debug("Waiting for " + uri + " to be loaded (Thread: " + Thread.currentThread());
@@ -151,22 +249,21 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
 
     private void startTimeout(String uri, Integer timeout) {
         if (timeout == null || timeout <= 0) {
-            timer = null;
+            loadTimeout = null;
             LOGGER.warn("timeout must be greater or equal 0. Ignoring timeout.");
         } else {
-            timer = new Timer("Timer for " + uri);
-            timer.schedule(new TimerTask() {
+            loadTimeout = TimeoutScheduler.schedule(new Runnable() {
                 @Override
                 public void run() {
                     executeTimeoutCallback();
                 }
-            }, timeout);
+            }, timeout, TimeUnit.MILLISECONDS);
         }
     }
 
     private void cancelTimeout() {
-        if (timer != null) {
-            timer.cancel();
+        if (loadTimeout != null) {
+            loadTimeout.cancel();
         }
     }
 
@@ -175,6 +272,30 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
             browserStatusManager.setBrowserStatus(BrowserStatus.TIMEDOUT);
             monitor.notifyAll();
         }
+        finishPageLoad(false);
+    }
+
+    /**
+     * Records the timing of the current navigation and notifies the {@link IPageLoadListener}s.
+     */
+    private void finishPageLoad(boolean successful) {
+        PageLoadRecorder pageLoad = this.pageLoad;
+        if (pageLoad == null) {
+            return;
+        }
+        PageLoadTiming timing = pageLoad.finish(successful);
+        if (timing == null) {
+            return;
+        }
+        metrics.pageLoaded(timing);
+        LOGGER.debug("Page load timing: " + timing);
+        for (IPageLoadListener pageLoadListener : pageLoadListeners) {
+            try {
+                pageLoadListener.pageLoaded(timing);
+            } catch (RuntimeException e) {
+                LOGGER.error("Error notifying " + pageLoadListener, e);
+            }
+        }
     }
 
     /**
@@ -194,6 +315,12 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
             return;
         }
 
+        PageLoadRecorder pageLoad = this.pageLoad;
+        if (pageLoad != null) {
+            pageLoad.end(PageLoadPhase.PROGRESS);
+            pageLoad.begin(PageLoadPhase.READY_STATE);
+        }
+
         String condition = "document.readyState == 'complete'" + (
                 pageLoadCheckExpression != null ?
                 " && (" + pageLoadCheckExpression + ")" :
@@ -228,7 +355,13 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
 			completionCheck.dispose();
 		}
 
+        PageLoadRecorder pageLoad = this.pageLoad;
+        if (pageLoad != null) {
+            pageLoad.end(PageLoadPhase.READY_STATE);
+        }
+
         activateExceptionHandling();
+        registerPreparedScripts();
 
         for (Runnable runnable : afterCompletion) {
             runnable.run();
@@ -240,6 +373,8 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
             browserStatusManager.setBrowserStatus(BrowserStatus.LOADED);
             monitor.notifyAll();
         }
+
+        finishPageLoad(true);
     }
 
     /**
@@ -253,13 +388,65 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
         }
     }
 
-    Future<Boolean> openWithCallback(URI uri, int timeout, String pageLoadCheckScript, CallbackFunction<Boolean, Boolean> callback) {
+    /**
+     * Registers all prepared scripts in the newly loaded page.
+     */
+    private void registerPreparedScripts() {
+        for (PreparedScript preparedScript : preparedScripts) {
+            try {
+                runImmediately(JavascriptString.createPreparedScriptRegistration(preparedScript), IConverter.CONVERTER_VOID);
+            } catch (ScriptExecutionException e) {
+                LOGGER.error("Error registering " + preparedScript, e);
+            }
+        }
+    }
+
+    /**
+     * Creates a {@link PreparedScript} that stays registered across page loads until it is released.
+     *
+     * @throws IllegalArgumentException if the function body is null or a parameter name is invalid
+     */
+    PreparedScript prepareScript(String functionBody, String... parameterNames) {
+        PreparedScript preparedScript = new PreparedScript(functionBody, parameterNames);
+        preparedScripts.add(preparedScript);
+        // if the page is not yet loaded the script gets registered by complete()
+        if (browserStatusManager.isLoadingCompleted()) {
+            run(JavascriptString.createPreparedScriptRegistration(preparedScript), IConverter.CONVERTER_VOID);
+        }
+        return preparedScript;
+    }
+
+    /**
+     * Calls the given {@link PreparedScript} with the given arguments.
+     *
+     * @throws IllegalArgumentException if the script was not prepared by this browser or was already released
+     *                                  or if an argument cannot be converted to a Javascript literal
+     */
+    <DEST> ListenableFuture<DEST> run(PreparedScript preparedScript, IConverter<Object, DEST> converter, Object... arguments) {
+        Assert.isLegal(preparedScripts.contains(preparedScript), preparedScript + " is not prepared");
+        Assert.isLegal(arguments.length <= preparedScript.getParameterNames().size(),
+                preparedScript + " does not take " + arguments.length + " arguments");
+        String invocation = JavascriptString.createPreparedScriptInvocation(preparedScript, arguments);
+        return browserStatusManager.createFuture(new ScriptExecutingCallable<DEST>(this, converter, invocation, invocation),
+                null, defaultScriptTimeoutMillis, !uiThreadExecutor.isUIThread());
+    }
+
+    /**
+     * Removes the given {@link PreparedScript} from the browser.
+     */
+    void releasePreparedScript(PreparedScript preparedScript) {
+        if (preparedScripts.remove(preparedScript)) {
+            run(JavascriptString.createPreparedScriptRemoval(preparedScript), IConverter.CONVERTER_VOID);
+        }
+    }
+
+    ListenableFuture<Boolean> openWithCallback(URI uri, int timeout, String pageLoadCheckScript, CallbackFunction<Boolean, Boolean> callback) {
         return runWithCallback(open(uri.toString(), timeout, pageLoadCheckScript), callback);
     }
 
     boolean syncOpen(URI uri, int timeout, String pageLoadCheckScript) {
         checkNotUIThread();
-        Future<Boolean> opened = open(uri.toString(), timeout, pageLoadCheckScript);
+        ListenableFuture<Boolean> opened = open(uri.toString(), timeout, pageLoadCheckScript);
         try {
             return opened.get();
         } catch (InterruptedException e) {
@@ -283,47 +470,62 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
         }
     }
 
-    Future<Void> checkCondition(final String javaScriptExpression) {
-        //TODO check should stop after a certain amount of time
-        return executor.submit(new NoCheckedExceptionCallable<Void>() {
+    ListenableFuture<Void> checkCondition(final String javaScriptExpression) {
+        final long timeoutMillis = defaultScriptTimeoutMillis;
+        if (browser.isDisposed()) {
+            return Futures.immediateFailedFuture(new BrowserDisposedException());
+        }
+
+        final SettableFuture<Void> result = SettableFuture.create();
+        String randomFunctionName = BrowserUtils.createRandomFunctionName();
+        final IBrowserFunction browserFunction = createBrowserFunction(new InternalJavascriptFunction(randomFunctionName) {
+            public Object function(Object[] arguments) {
+                result.set(null);
+                return null;
+            }
+        });
+        final HashedWheelTimer.Timeout timeout = timeoutMillis > 0 ? TimeoutScheduler.schedule(new Runnable() {
             @Override
-            public Void call() {
-                if (browser.isDisposed()) {
-                    throw new BrowserDisposedException();
+            public void run() {
+                if (result.setException(new ScriptTimeoutException(javaScriptExpression, timeoutMillis))) {
+                    metrics.deadlineMissed();
                 }
-
-                //TODO Maybe we don't need the callback
-                final CountDownLatch countDownLatch = new CountDownLatch(1);
-                String randomFunctionName = BrowserUtils.createRandomFunctionName();
-                IBrowserFunction browserFunction = createBrowserFunction(new InternalJavascriptFunction(randomFunctionName) {
-                    public Object function(Object[] arguments) {
-                        countDownLatch.countDown();
-                        return null;
-                    }
-                });
-                String checkScript = JavascriptString.createWaitForConditionJavascript(javaScriptExpression, randomFunctionName);
-
-                InternalBrowserWrapper.this.run(checkScript, IConverter.CONVERTER_VOID);
-                try {
-                    countDownLatch.await();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS) : null;
+        result.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (timeout != null) {
+                    timeout.cancel();
                 }
+                // disposing the function also stops the polling within the page
                 browserFunction.dispose();
-                return null;
             }
-        });
+        }, callbackExecutor);
+
+        String checkScript = JavascriptString.createWaitForConditionJavascript(javaScriptExpression, randomFunctionName);
+        Futures.addCallback(run(checkScript, IConverter.CONVERTER_VOID), new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(Void ignored) {
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                result.setException(t);
+            }
+        }, MoreExecutors.directExecutor());
+        return result;
     }
 
-    <DEST> Future<DEST> executeWhenConditionIsMet(String javaScriptExpression, CallbackFunction<Void, DEST> callback) {
+    <DEST> ListenableFuture<DEST> executeWhenConditionIsMet(String javaScriptExpression, CallbackFunction<Void, DEST> callback) {
         return runWithCallback(checkCondition(javaScriptExpression), callback);
     }
 
-    Future<Boolean> injectJavascript(URI scriptURI) {
+    ListenableFuture<Boolean> injectJavascript(URI scriptURI) {
         return run(scriptURI, false);
     }
 
-    Future<Boolean> injectJavascript(File file) {
+    ListenableFuture<Boolean> injectJavascript(File file) {
         return run(JavascriptString.createJsFileInjectionScript(file),
                 IConverter.CONVERTER_BOOLEAN);
     }
@@ -340,7 +542,7 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
     }
 
 
-    Future<Boolean> injectCss(URI uri) {
+    ListenableFuture<Boolean> injectCss(URI uri) {
         return run(JavascriptString.createCssFileInjectionScript(uri),
                 IConverter.CONVERTER_BOOLEAN);
     }
@@ -356,11 +558,11 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
         }
     }
 
-    Future<Boolean> injectCss(String css) {
+    ListenableFuture<Boolean> injectCss(String css) {
         return run(JavascriptString.createCssInjectionScript(css), IConverter.CONVERTER_BOOLEAN);
     }
 
-    <DEST> Future<DEST> injectCss(String css, CallbackFunction<Boolean, DEST> callback) {
+    <DEST> ListenableFuture<DEST> injectCss(String css, CallbackFunction<Boolean, DEST> callback) {
         return runWithCallback(injectCss(css), callback);
     }
 
@@ -375,16 +577,16 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
         }
     }
 
-    Future<Boolean> run(File scriptFile) {
+    ListenableFuture<Boolean> run(File scriptFile) {
         Assert.isLegal(scriptFile.canRead());
         return run(scriptFile.toURI(), false);
     }
 
-    Future<Boolean> run(final URI scriptURI) {
+    ListenableFuture<Boolean> run(final URI scriptURI) {
         return run(scriptURI, true);
     }
 
-    private Future<Boolean> run(final URI scriptURI, final boolean removeAfterExecution) {
+    private ListenableFuture<Boolean> run(final URI scriptURI, final boolean removeAfterExecution) {
         Assert.isLegal(scriptURI != null);
         if ("file".equalsIgnoreCase(scriptURI.getScheme())) {
             File file = new File(scriptURI);
@@ -405,11 +607,11 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
         }
     }
 
-    Future<Object> run(final String script) {
+    ListenableFuture<Object> run(final String script) {
         return run(script, IConverter.CONVERTER_IDENT);
     }
 
-    <T> Future<T> run(final String script, final CallbackFunction<Object, T> callback) {
+    <T> ListenableFuture<T> run(final String script, final CallbackFunction<Object, T> callback) {
         return runWithCallback(InternalBrowserWrapper.this.run(script), callback);
     }
 
@@ -424,9 +626,171 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
         return syncRun(script, IConverter.CONVERTER_IDENT);
     }
 
-    <DEST> Future<DEST> run(final String script,
+    <DEST> ListenableFuture<DEST> run(final String script,
                             final IConverter<Object, DEST> converter) {
-        return browserStatusManager.createFuture(new ScriptExecutingCallable<DEST>(this, converter, script));
+        return run(script, converter, defaultScriptTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param timeout the time the script may take including the time it is queued, or 0 for no deadline
+     */
+    <DEST> ListenableFuture<DEST> run(final String script, final IConverter<Object, DEST> converter,
+                                      long timeout, TimeUnit unit) {
+        return browserStatusManager.createFuture(new ScriptExecutingCallable<DEST>(this, converter, script),
+                null, toTimeoutMillis(timeout, unit), !uiThreadExecutor.isUIThread());
+    }
+
+    /**
+     * Converts the given timeout to milliseconds. Timeouts shorter than a millisecond are rounded up,
+     * so that they do not turn into 0, which stands for no deadline.
+     *
+     * @throws IllegalArgumentException if timeout is negative
+     */
+    static long toTimeoutMillis(long timeout, TimeUnit unit) {
+        Assert.isLegal(timeout >= 0, "timeout must not be negative");
+        long timeoutMillis = unit.toMillis(timeout);
+        return timeoutMillis == 0 && timeout > 0 ? 1 : timeoutMillis;
+    }
+
+    /**
+     * Runs the given script unless it is replaced by another script with the same key before being executed.
+     */
+    <DEST> ListenableFuture<DEST> run(final String key, final String script,
+                                      final IConverter<Object, DEST> converter) {
+        return browserStatusManager.createFuture(new ScriptExecutingCallable<DEST>(this, converter, script),
+                key, defaultScriptTimeoutMillis, !uiThreadExecutor.isUIThread());
+    }
+
+    /**
+     * Evaluates the given expression and returns a reader that receives the expression's string value in chunks.
+     * Errors are reported by the reader's read methods.
+     */
+    Reader stream(final String javaScriptExpression) {
+        final ScriptResultReader reader = new ScriptResultReader(uiThreadExecutor, callbackExecutor, defaultScriptTimeoutMillis);
+        streamingReaders.add(reader);
+        reader.setFinishListener(new Runnable() {
+            @Override
+            public void run() {
+                streamingReaders.remove(reader);
+            }
+        });
+        String functionName = BrowserUtils.createRandomFunctionName();
+        reader.setBrowserFunction(createBrowserFunction(reader.createFunction(functionName)));
+        final ListenableFuture<Void> started = run(
+                JavascriptString.createStreamingScript(javaScriptExpression, functionName, ScriptResultReader.CHUNK_SIZE),
+                IConverter.CONVERTER_VOID);
+        started.addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Uninterruptibles.getUninterruptibly(started);
+                } catch (ExecutionException e) {
+                    reader.fail(e.getCause());
+                } catch (CancellationException e) {
+                    reader.fail(e);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+        return reader;
+    }
+
+    private void failStreamingReaders(Throwable cause) {
+        for (ScriptResultReader reader : streamingReaders) {
+            reader.fail(cause);
+        }
+    }
+
+    /**
+     * Streams the string value of the given expression to the given writer.
+     * The writer is not closed.
+     *
+     * @return a future of the number of written characters
+     */
+    ListenableFuture<Long> stream(final String javaScriptExpression, final Writer writer) {
+        final Reader reader = stream(javaScriptExpression);
+        return STREAM_COPIER.submit(new ThreadLabelingCallable<Long>(Browser.class, "Streaming " + javaScriptExpression,
+                new NoCheckedExceptionCallable<Long>() {
+                    @Override
+                    public Long call() {
+                        try {
+                            return IOUtils.copyLarge(reader, writer);
+                        } catch (IOException e) {
+                            throw new ScriptExecutionException(javaScriptExpression, e);
+                        } finally {
+                            IOUtils.closeQuietly(reader);
+                        }
+                    }
+                }));
+    }
+
+    /**
+     * Streams the string value of the given expression to the given file using UTF-8.
+     *
+     * @return a future of the number of written characters
+     */
+    ListenableFuture<Long> stream(final String javaScriptExpression, final Path file) {
+        final Reader reader = stream(javaScriptExpression);
+        return STREAM_COPIER.submit(new ThreadLabelingCallable<Long>(Browser.class,
+                "Streaming " + javaScriptExpression + " to " + file, new NoCheckedExceptionCallable<Long>() {
+                    @Override
+                    public Long call() {
+                        Writer writer = null;
+                        try {
+                            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+                            return IOUtils.copyLarge(reader, writer);
+                        } catch (IOException e) {
+                            throw new ScriptExecutionException(javaScriptExpression, e);
+                        } finally {
+                            IOUtils.closeQuietly(reader);
+                            IOUtils.closeQuietly(writer);
+                        }
+                    }
+                }));
+    }
+
+    /**
+     * Limits the number of scripts waiting to be executed.
+     */
+    void setScriptQueueLimit(int capacity, OverflowPolicy overflowPolicy) {
+        browserStatusManager.setScriptQueueCapacity(capacity, overflowPolicy);
+    }
+
+    /**
+     * Sets the deadline applied to scripts, conditions and script injections that are not given an explicit one.
+     *
+     * @param timeout the deadline, or 0 for no deadline
+     */
+    void setDefaultScriptTimeout(long timeout, TimeUnit unit) {
+        defaultScriptTimeoutMillis = toTimeoutMillis(timeout, unit);
+    }
+
+    /**
+     * Restores the settings this wrapper was created with: script batching, the default deadline,
+     * the script queue limit, the listener executor, location changes and the before and after script functions.
+     */
+    void resetConfiguration() {
+        setScriptBatchingEnabled(true);
+        defaultScriptTimeoutMillis = 0;
+        setScriptQueueLimit(DelayedScriptRunner.DEFAULT_CAPACITY, OverflowPolicy.FAIL);
+        listenerDispatcher.setExecutor(null);
+        allowLocationChange = false;
+        beforeScripts.clear();
+        afterScripts.clear();
+    }
+
+    /**
+     * Returns the default deadline in milliseconds, or 0 if there is none.
+     */
+    long getDefaultScriptTimeoutMillis() {
+        return defaultScriptTimeoutMillis;
+    }
+
+    BrowserMetrics getMetrics() {
+        return metrics;
+    }
+
+    ListenerDispatcher getListenerDispatcher() {
+        return listenerDispatcher;
     }
 
     <DEST> DEST syncRun(String script, IConverter<Object, DEST> converter) {
@@ -452,7 +816,7 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
      * @throws ScriptExecutionException if an exception occurs while executing the script
      * @throws IOException              if an exception occurs while reading the passed file
      */
-    Future<Boolean> runContent(File scriptFile) throws IOException {
+    ListenableFuture<Boolean> runContent(File scriptFile) throws IOException {
         return run(FileUtils.readFileToString(scriptFile), IConverter.CONVERTER_BOOLEAN);
     }
 
@@ -460,7 +824,7 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
      * @throws ScriptExecutionException if an exception occurs while executing the script
      * @throws IOException              if an exception occurs while reading the passed file
      */
-    Future<Boolean> runContentAsScriptTag(File scriptFile) throws IOException {
+    ListenableFuture<Boolean> runContentAsScriptTag(File scriptFile) throws IOException {
         return run(JavascriptString.embedContentsIntoScriptTag(scriptFile), IConverter.CONVERTER_BOOLEAN);
     }
 
@@ -476,9 +840,23 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
      * @throws ScriptExecutionException           if an exception occurs while executing the script
      */
     Object evaluate(String javaScript) {
+        return evaluate(javaScript, JavascriptString.createFunctionInvocation(javaScript));
+    }
+
+    /**
+     * Evaluates the given invocation, e.g. the call of a {@link PreparedScript}.
+     * The script is only passed to the before script functions and used for error reporting.
+     *
+     * @param javaScript the Javascript string the invocation stands for
+     * @param invocation the Javascript expression to be evaluated
+     * @return the return value, if any, of the invocation
+     *
+     * @throws ScriptExecutionException if an exception occurs while executing the script
+     */
+    Object evaluate(String javaScript, String invocation) {
         executeBeforeScriptExecutionScripts(javaScript);
 
-        String script = JavascriptString.getExceptionReturningScript(javaScript);
+        String script = JavascriptString.getExceptionReturningInvocation(invocation);
         Object returnValue = browser.evaluate(script);
         BrowserUtils.rethrowJavascriptException(script, returnValue);
 
@@ -487,6 +865,81 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
         return returnValue;
     }
 
+    /**
+     * Evaluates the given invocations in a single call of {@link IWrappedBrowser#evaluate(String)}.
+     * The invocations are executed in the given order. An exception thrown by one invocation
+     * does not prevent the subsequent ones from being executed.
+     *
+     * The returned values must be passed to {@link #processBatchedReturnValue(String, Object)}
+     * one by one to check them for exceptions.
+     * <p/>
+     * The before and after script functions are not notified, as they could not be paired per script.
+     * Batches must therefore only be run while {@link #hasScriptHooks()} is false.
+     *
+     * @param batchId     an id unique to this batch, see {@link #isBatchEvaluated(String)}
+     * @param javaScripts the Javascript strings to be executed
+     * @param invocations the Javascript expressions to be evaluated for the scripts,
+     *                    see {@link JavascriptString#createFunctionInvocation(String)}
+     * @return the return values of the scripts in the same order as the scripts
+     *
+     * @throws ScriptExecutionException if the batch as a whole could not be executed
+     */
+    Object[] evaluateBatch(String batchId, List<String> javaScripts, List<String> invocations) {
+        String script = JavascriptString.getExceptionReturningBatchScript(batchId, invocations);
+        Object returnValue = browser.evaluate(script);
+        if (!(returnValue instanceof Object[]) || ((Object[]) returnValue).length != javaScripts.size()) {
+            throw new ScriptExecutionException(script, "the batch returned " + returnValue);
+        }
+        return (Object[]) returnValue;
+    }
+
+    /**
+     * Tells whether the batch with the given id has been evaluated by the current document
+     * although {@link #evaluateBatch(String, List, List)} failed, e.g. because the return values could not be converted.
+     */
+    boolean isBatchEvaluated(String batchId) {
+        return Boolean.TRUE.equals(browser.evaluate(JavascriptString.getBatchEvaluatedCheck(batchId)));
+    }
+
+    /**
+     * Returns the value a single script of an evaluated batch returned.
+     *
+     * @param batchId the id of the batch
+     * @param index   the index of the script within the batch
+     */
+    Object getBatchedReturnValue(String batchId, int index) {
+        return browser.evaluate(JavascriptString.getBatchedReturnValue(batchId, index));
+    }
+
+    /**
+     * Releases the return values kept for {@link #getBatchedReturnValue(String, int)}.
+     */
+    void discardBatchedReturnValues() {
+        browser.evaluate(JavascriptString.getBatchResultRemoval());
+    }
+
+    /**
+     * Checks the return value of a script executed by {@link #evaluateBatch(String, List, List)}
+     * for exceptions like {@link #evaluate(String)} does for single scripts.
+     *
+     * @throws de.fu_berlin.inf.ag_se.browser.exception.JavaScriptException if the script threw an exception
+     */
+    void processBatchedReturnValue(String javaScript, Object returnValue) {
+        BrowserUtils.rethrowJavascriptException(javaScript, returnValue);
+    }
+
+    /**
+     * Tells whether before or after script functions are registered,
+     * see {@link #executeBeforeScript(Function)} and {@link #executeAfterScript(Function)}.
+     */
+    boolean hasScriptHooks() {
+        return !beforeScripts.isEmpty() || !afterScripts.isEmpty();
+    }
+
+    void setScriptBatchingEnabled(boolean enabled) {
+        browserStatusManager.setBatchExecutor(enabled ? new ScriptBatchExecutor(this) : null);
+    }
+
     /**
      * May be called from whatever thread.
      */
@@ -542,6 +995,7 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
             browserStatusManager.setBrowserStatus(BrowserStatus.DISPOSED);
             monitor.notifyAll();
         }
+        failStreamingReaders(new BrowserDisposedException());
         executor.shutdownNow();
     }
 
@@ -557,10 +1011,13 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
         return cachedContentBounds;
     }
 
-    synchronized void fireJavaScriptExceptionThrown(JavaScriptException javaScriptException) {
-        for (JavaScriptExceptionListener listener : javaScriptExceptionListeners) {
-            listener.thrown(javaScriptException);
-        }
+    void fireJavaScriptExceptionThrown(final JavaScriptException javaScriptException) {
+        listenerDispatcher.dispatch(javaScriptExceptionListeners, new ListenerDispatcher.Notification<JavaScriptExceptionListener>() {
+            @Override
+            public void call(JavaScriptExceptionListener listener) {
+                listener.thrown(javaScriptException);
+            }
+        });
     }
 
     void addJavaScriptExceptionListener(JavaScriptExceptionListener javaScriptExceptionListener) {
@@ -571,6 +1028,22 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
         javaScriptExceptionListeners.remove(javaScriptExceptionListener);
     }
 
+    /**
+     * Removes all {@link JavaScriptExceptionListener}s and {@link IPageLoadListener}s.
+     */
+    void removeAllListeners() {
+        javaScriptExceptionListeners.clear();
+        pageLoadListeners.clear();
+    }
+
+    void addPageLoadListener(IPageLoadListener pageLoadListener) {
+        pageLoadListeners.add(pageLoadListener);
+    }
+
+    void removePageLoadListener(IPageLoadListener pageLoadListener) {
+        pageLoadListeners.remove(pageLoadListener);
+    }
+
     /**
      * Set a runnable to the executed just before the
      * URI is set internally. This methods may be called
@@ -598,7 +1071,29 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
     }
 
     void executeAfterCompletion(Runnable runnable) {
-        afterCompletion.add(runnable);
+        executeAfterCompletion(runnable, PageLoadPhase.AFTER_COMPLETION);
+    }
+
+    /**
+     * Registers a runnable to be executed after completion whose duration is recorded as the given phase.
+     */
+    void executeAfterCompletion(final Runnable runnable, final PageLoadPhase phase) {
+        afterCompletion.add(new Runnable() {
+            @Override
+            public void run() {
+                PageLoadRecorder pageLoad = InternalBrowserWrapper.this.pageLoad;
+                if (pageLoad != null) {
+                    pageLoad.begin(phase);
+                }
+                try {
+                    runnable.run();
+                } finally {
+                    if (pageLoad != null) {
+                        pageLoad.end(phase);
+                    }
+                }
+            }
+        });
     }
 
     /**
@@ -626,20 +1121,57 @@ public class InternalBrowserWrapper<T extends IWrappedBrowser> {
         }
     }
 
-    <V, T> Future<T> runWithCallback(final Future<V> future, final CallbackFunction<V, T> callback) {
-        return executor.submit(new Callable<T>() {
+    /**
+     * Calls the callback as soon as the given future completes.
+     * If the future is a {@link ListenableFuture} no thread is blocked while waiting for the completion.
+     */
+    <V, T> ListenableFuture<T> runWithCallback(final Future<V> future, final CallbackFunction<V, T> callback) {
+        if (!(future instanceof ListenableFuture)) {
+            return executor.submit(new Callable<T>() {
+                @Override
+                public T call() throws InterruptedException {
+                    V returnValue = null;
+                    RuntimeException exception = null;
+                    try {
+                        returnValue = future.get();
+                    } catch (ExecutionException e) {
+                        exception = toRuntimeException(e.getCause());
+                    }
+                    return callback.apply(returnValue, exception);
+                }
+            });
+        }
+
+        final SettableFuture<T> result = SettableFuture.create();
+        ((ListenableFuture<V>) future).addListener(new Runnable() {
             @Override
-            public T call() throws InterruptedException {
-                V returnValue = null;
-                RuntimeException exception = null;
+            public void run() {
+                // the returned future must complete whatever happens, otherwise its callers wait forever
                 try {
-                    returnValue = future.get();
-                } catch (ExecutionException e) {
-                    exception = (RuntimeException) e.getCause();
+                    V returnValue = null;
+                    RuntimeException exception = null;
+                    try {
+                        returnValue = Uninterruptibles.getUninterruptibly(future);
+                    } catch (ExecutionException e) {
+                        exception = toRuntimeException(e.getCause());
+                    } catch (CancellationException e) {
+                        exception = e;
+                    }
+                    result.set(callback.apply(returnValue, exception));
+                } catch (Throwable t) {
+                    result.setException(t);
                 }
-                return callback.apply(returnValue, exception);
             }
-        });
+        }, callbackExecutor);
+        return result;
+    }
+
+    /**
+     * Returns the given cause of a failed future as a {@link RuntimeException},
+     * wrapping it if it is a checked exception or an error, e.g. the {@link IOException} of {@link #run(URI)}.
+     */
+    private static RuntimeException toRuntimeException(Throwable cause) {
+        return cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
     }
 
     void runOnDisposal(Runnable runnable) {
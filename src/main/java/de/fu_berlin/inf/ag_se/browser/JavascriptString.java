@@ -1,15 +1,26 @@
 package de.fu_berlin.inf.ag_se.browser;
 
 import de.fu_berlin.inf.ag_se.browser.exception.JavaScriptException;
+import de.fu_berlin.inf.ag_se.browser.utils.StringUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringEscapeUtils;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 public class JavascriptString {
 
+    private static final String PREPARED_SCRIPTS = "__preparedScripts";
+
+    private static final String BATCH_RESULT = "__batchResult";
+
+    static final int MIN_CONDITION_POLL_DELAY = 50;
+
+    static final int MAX_CONDITION_POLL_DELAY = 1000;
 
     public static String embedContentsIntoScriptTag(File scriptFile) throws IOException {
         String scriptContent = FileUtils.readFileToString(scriptFile);
@@ -30,12 +41,47 @@ public class JavascriptString {
         return js;
     }
 
+    /**
+     * Returns a script that calls the given callback function once the given condition is true.
+     * <p/>
+     * The condition is checked whenever the document's ready state changes, the window is loaded
+     * or the DOM is modified. In case the condition depends on something else it is additionally
+     * polled with a delay starting at {@value #MIN_CONDITION_POLL_DELAY}ms that doubles up to
+     * {@value #MAX_CONDITION_POLL_DELAY}ms. Checking stops as soon as the callback function is disposed,
+     * e.g. due to a timeout.
+     */
     static String createWaitForConditionJavascript(String condition,
                                                    String callbackFunctionName) {
-        return "(function() { function test() { if(" + condition + ") { "
-                + callbackFunctionName
-                + "(); } else { window.setTimeout(test, 50); } } "
-                + "test(); })()";
+        String callback = "window['" + callbackFunctionName + "']";
+        return "(function() { var done = false, pending = false, timer = null, observer = null, delay = " + MIN_CONDITION_POLL_DELAY + "; "
+                + "function stop() { done = true; window.clearTimeout(timer); if (observer) { observer.disconnect(); } "
+                + "if (document.removeEventListener) { document.removeEventListener('readystatechange', check, false); window.removeEventListener('load', check, false); } } "
+                + "function check() { if (done) { return; } if (typeof " + callback + " !== 'function') { stop(); return; } "
+                + "if (" + condition + ") { stop(); " + callback + "(); } } "
+                + "function mutated() { if (!pending) { pending = true; window.setTimeout(function() { pending = false; check(); }, 0); } } "
+                + "function poll() { check(); if (!done) { delay = Math.min(delay * 2, " + MAX_CONDITION_POLL_DELAY + "); timer = window.setTimeout(poll, delay); } } "
+                + "if (document.addEventListener) { document.addEventListener('readystatechange', check, false); window.addEventListener('load', check, false); } "
+                + "if (window.MutationObserver && document.documentElement) { observer = new MutationObserver(mutated); "
+                + "observer.observe(document.documentElement, { childList: true, subtree: true, attributes: true, characterData: true }); } "
+                + "check(); if (!done) { timer = window.setTimeout(poll, delay); } })()";
+    }
+
+    /**
+     * Returns a script that evaluates the given expression and pushes its string value in chunks
+     * to the given browser function. The UI thread is yielded between two chunks.
+     * A chunk is sent again after a short delay if the function returns false,
+     * and sending stops as soon as the function is disposed.
+     *
+     * @see ScriptResultReader
+     */
+    static String createStreamingScript(String expression, String callbackFunctionName, int chunkSize) {
+        String callback = "window['" + callbackFunctionName + "']";
+        return "var v = (" + expression + "); v = v == null ? '' : String(v); var i = 0; "
+                + "function next() { if (typeof " + callback + " !== 'function') { return; } "
+                + "var end = Math.min(i + " + chunkSize + ", v.length); "
+                + "if (" + callback + "(v.substring(i, end), end >= v.length)) { i = end; if (i < v.length) { window.setTimeout(next, 0); } } "
+                + "else { window.setTimeout(next, 10); } } "
+                + "window.setTimeout(next, 0); return true;";
     }
 
     static String createJsFileInjectionScript(File file) {
@@ -57,7 +103,7 @@ public class JavascriptString {
         return createCssInjectionScript(escape(FileUtils.readFileToString(cssFile)));
     }
 
-    static String createCssInjectionScript(String css) {
+    public static String createCssInjectionScript(String css) {
         return
                 "(function(){var style=document.createElement(\"style\");style.appendChild(document.createTextNode(\""
                         + css
@@ -68,15 +114,23 @@ public class JavascriptString {
         return "* { -webkit-touch-callout: none; -webkit-user-select: none; -khtml-user-select: none; -moz-user-select: none; -ms-user-select: none; user-select: none; }";
     }
 
-    protected static String createJavascriptForInsertingHTML(String html) {
-        String escapedHtml = escape(html);
-        return "if(['input','textarea'].indexOf(document.activeElement.tagName.toLowerCase()) != -1) { document.activeElement.value = '"
-        + escapedHtml
-        + "';} else { var t,n;if(window.getSelection){t=window.getSelection();if(t.getRangeAt&&t.rangeCount){n=t.getRangeAt(0);n.deleteContents();var r=document.createElement(\"div\");r.innerHTML='"
-        + escapedHtml
-        + "';var i=document.createDocumentFragment(),s,o;while(s=r.firstChild){o=i.appendChild(s)}n.insertNode(i);if(o){n=n.cloneRange();n.setStartAfter(o);n.collapse(true);t.removeAllRanges();t.addRange(n)}}}else if(document.selection&&document.selection.type!=\"Control\"){document.selection.createRange().pasteHTML('"
-        + escapedHtml
-                + "')}}";
+    /**
+     * Returns a script that inserts the HTML contained in the variable <code>html</code> at the caret position.
+     * The HTML should be prepared by {@link #prepareHtmlForInsertion(String)}.
+     */
+    static String createJavascriptForInsertingHTML() {
+        return "if(['input','textarea'].indexOf(document.activeElement.tagName.toLowerCase()) != -1) { document.activeElement.value = html;"
+        + "} else { var t,n;if(window.getSelection){t=window.getSelection();if(t.getRangeAt&&t.rangeCount){n=t.getRangeAt(0);n.deleteContents();var r=document.createElement(\"div\");r.innerHTML=html;"
+        + "var i=document.createDocumentFragment(),s,o;while(s=r.firstChild){o=i.appendChild(s)}n.insertNode(i);if(o){n=n.cloneRange();n.setStartAfter(o);n.collapse(true);t.removeAllRanges();t.addRange(n)}}}else if(document.selection&&document.selection.type!=\"Control\"){document.selection.createRange().pasteHTML(html"
+                + ")}}";
+    }
+
+    /**
+     * Applies the same line break handling as {@link #escape(String)} without escaping quotes,
+     * as needed for HTML that is passed as an argument rather than embedded into a script.
+     */
+    static String prepareHtmlForInsertion(String html) {
+        return html.replace("\n", "<br>").replace("&#xD;", "").replace("\r", "");
     }
 
     public static String escape(String html) {
@@ -108,10 +162,203 @@ public class JavascriptString {
      * @return
      */
     public static String getExceptionReturningScript(String script) {
-        return "try { return new Function('"
-                + StringEscapeUtils.escapeJavaScript(script)
-                + "')(); } catch(e) { return [ '"
-                + BrowserUtils.ERROR_RETURN_MARKER
-                + "', e.sourceURL, e.line, e.column-6/* reduce column by the exception catching code */, e.name + \": \" + e.message ]; }";
+        return getExceptionReturningInvocation(createFunctionInvocation(script));
+    }
+
+    /**
+     * Returns a script that evaluates the given Javascript expression and returns its value.
+     * Like in {@link #getExceptionReturningScript(String)} an eventually thrown error will be caught and returned.
+     *
+     * @param invocation a Javascript expression, e.g. a function call
+     * @return
+     */
+    public static String getExceptionReturningInvocation(String invocation) {
+        return "try { return " + invocation + "; } catch(e) { return " + createErrorReturn() + "; }";
+    }
+
+    /**
+     * Returns a Javascript expression that describes the caught error <code>e</code>
+     * the way {@link BrowserUtils#rethrowJavascriptException(String, Object)} expects it.
+     */
+    private static String createErrorReturn() {
+        return "[ '" + BrowserUtils.ERROR_RETURN_MARKER
+                + "', e.sourceURL, e.line, e.column-6/* reduce column by the exception catching code */, e.name + \": \" + e.message ]";
+    }
+
+    /**
+     * Returns a Javascript expression that compiles the given script to a new function and calls it.
+     *
+     * @param script the script to become the function's body
+     * @return
+     */
+    public static String createFunctionInvocation(String script) {
+        return "new Function('" + StringEscapeUtils.escapeJavaScript(script) + "')()";
+    }
+
+    /**
+     * Combines the given invocations into one script that evaluates them one after another
+     * and returns an array containing the value of each invocation.
+     * Like in {@link #getExceptionReturningScript(String)} an eventually thrown error is caught
+     * and returned in place of the invocation's value, so that the remaining invocations are evaluated nevertheless.
+     * <p/>
+     * The batch id is kept in the document, see {@link #getBatchEvaluatedCheck(String)}. If the array contains values
+     * the browser cannot return, e.g. DOM nodes, the array is kept as well, so that the values can still be fetched
+     * one by one using {@link #getBatchedReturnValue(String, int)}. Otherwise it is released right away.
+     *
+     * @param batchId     the id the returned values are kept under
+     * @param invocations the Javascript expressions to be combined, see {@link #createFunctionInvocation(String)}
+     * @return the combined script
+     */
+    public static String getExceptionReturningBatchScript(String batchId, List<String> invocations) {
+        StringBuilder batch = new StringBuilder("var r = []; window['")
+                .append(BATCH_RESULT)
+                .append("'] = { id: '")
+                .append(StringEscapeUtils.escapeJavaScript(batchId))
+                .append("', values: r };");
+        for (String invocation : invocations) {
+            batch.append(" try { r.push(")
+                 .append(invocation)
+                 .append("); } catch(e) { r.push(")
+                 .append(createErrorReturn())
+                 .append("); }");
+        }
+        return batch.append(" if (")
+                    .append(createReturnableCheck())
+                    .append("(r)) window['")
+                    .append(BATCH_RESULT)
+                    .append("'].values = null; return r;")
+                    .toString();
+    }
+
+    /**
+     * Returns a Javascript function that tells whether the given value only consists of types
+     * {@link org.eclipse.swt.browser.Browser#evaluate(String)} can return.
+     */
+    private static String createReturnableCheck() {
+        return "(function returnable(v) { var t = typeof v;"
+                + " if (v === null || t == 'undefined' || t == 'string' || t == 'number' || t == 'boolean') return true;"
+                + " if (Object.prototype.toString.call(v) != '[object Array]') return false;"
+                + " for (var i = 0; i < v.length; i++) if (!returnable(v[i])) return false;"
+                + " return true; })";
+    }
+
+    /**
+     * Returns a script that tells whether the batch script with the given id has been evaluated
+     * in the current document, see {@link #getExceptionReturningBatchScript(String, List)}.
+     *
+     * @param batchId the id of the batch
+     * @return
+     */
+    public static String getBatchEvaluatedCheck(String batchId) {
+        return "return !!window['" + BATCH_RESULT + "'] && window['" + BATCH_RESULT + "'].id == '"
+                + StringEscapeUtils.escapeJavaScript(batchId) + "';";
+    }
+
+    /**
+     * Returns a script that returns the value of the invocation with the given index
+     * of the batch script with the given id, see {@link #getExceptionReturningBatchScript(String, List)}.
+     *
+     * @param batchId the id of the batch
+     * @param index   the index of the invocation within the batch
+     * @return
+     */
+    public static String getBatchedReturnValue(String batchId, int index) {
+        return "var b = window['" + BATCH_RESULT + "']; return b && b.id == '"
+                + StringEscapeUtils.escapeJavaScript(batchId) + "' && b.values ? b.values[" + index + "] : null;";
+    }
+
+    /**
+     * Returns a script that discards the id and the values kept by the last batch script,
+     * see {@link #getExceptionReturningBatchScript(String, List)}.
+     *
+     * @return
+     */
+    public static String getBatchResultRemoval() {
+        return "window['" + BATCH_RESULT + "'] = null; return true;";
+    }
+
+    /**
+     * Returns a script that registers the given {@link PreparedScript} in the current document.
+     *
+     * @param preparedScript the script to be registered
+     * @return
+     */
+    static String createPreparedScriptRegistration(PreparedScript preparedScript) {
+        return "window['" + PREPARED_SCRIPTS + "'] = window['" + PREPARED_SCRIPTS + "'] || {}; window['"
+                + PREPARED_SCRIPTS + "']['" + preparedScript.getId() + "'] = function("
+                + StringUtils.join(preparedScript.getParameterNames(), ", ") + ") {\n"
+                + preparedScript.getFunctionBody() + "\n}; return true;";
+    }
+
+    /**
+     * Returns a script that removes the given {@link PreparedScript} from the current document.
+     *
+     * @param preparedScript the script to be removed
+     * @return
+     */
+    static String createPreparedScriptRemoval(PreparedScript preparedScript) {
+        return "if (window['" + PREPARED_SCRIPTS + "']) { delete window['" + PREPARED_SCRIPTS + "']['"
+                + preparedScript.getId() + "']; }";
+    }
+
+    /**
+     * Returns a Javascript expression that calls the given registered {@link PreparedScript}.
+     *
+     * @param preparedScript the script to be called
+     * @param arguments      the arguments to be passed, see {@link #toJavascriptLiteral(Object)}
+     * @return
+     */
+    static String createPreparedScriptInvocation(PreparedScript preparedScript, Object[] arguments) {
+        StringBuilder invocation = new StringBuilder("window['" + PREPARED_SCRIPTS + "']['" + preparedScript.getId() + "'](");
+        for (int i = 0; i < arguments.length; i++) {
+            if (i > 0) {
+                invocation.append(", ");
+            }
+            invocation.append(toJavascriptLiteral(arguments[i]));
+        }
+        return invocation.append(")").toString();
+    }
+
+    /**
+     * Converts the given Java object to a Javascript literal.
+     * Supported are null, {@link Boolean}s, {@link Number}s, {@link CharSequence}s, {@link Character}s
+     * as well as arrays, {@link Iterable}s and {@link Map}s thereof.
+     *
+     * @param object the object to be converted
+     * @return the Javascript literal
+     *
+     * @throws IllegalArgumentException if the object or one of its elements cannot be converted
+     */
+    public static String toJavascriptLiteral(Object object) {
+        if (object == null) {
+            return "null";
+        } else if (object instanceof Boolean || object instanceof Number) {
+            return object.toString();
+        } else if (object instanceof CharSequence || object instanceof Character) {
+            return "'" + StringEscapeUtils.escapeJavaScript(object.toString()) + "'";
+        } else if (object instanceof Object[]) {
+            return toJavascriptLiteral(Arrays.asList((Object[]) object));
+        } else if (object instanceof Iterable) {
+            StringBuilder array = new StringBuilder("[");
+            for (Object element : (Iterable<?>) object) {
+                if (array.length() > 1) {
+                    array.append(",");
+                }
+                array.append(toJavascriptLiteral(element));
+            }
+            return array.append("]").toString();
+        } else if (object instanceof Map) {
+            StringBuilder map = new StringBuilder("{");
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet()) {
+                if (map.length() > 1) {
+                    map.append(",");
+                }
+                map.append(toJavascriptLiteral(String.valueOf(entry.getKey())))
+                   .append(":")
+                   .append(toJavascriptLiteral(entry.getValue()));
+            }
+            return map.append("}").toString();
+        }
+        throw new IllegalArgumentException("Cannot convert " + object.getClass() + " to a Javascript literal");
     }
 }
@@ -0,0 +1,62 @@
+package de.fu_berlin.inf.ag_se.browser;
+
+import de.fu_berlin.inf.ag_se.browser.metrics.PageLoadPhase;
+import de.fu_berlin.inf.ag_se.browser.metrics.PageLoadTiming;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link PageLoadPhase}s of a single navigation.
+ * Phases that are passed more than once are summed up.
+ * <p/>
+ * May be used from whatever thread.
+ */
+class PageLoadRecorder {
+
+    private final String uri;
+    private final long startNanos = System.nanoTime();
+    private final Map<PageLoadPhase, Long> phaseStartNanos = new EnumMap<PageLoadPhase, Long>(PageLoadPhase.class);
+    private final Map<PageLoadPhase, Long> phaseNanos = new EnumMap<PageLoadPhase, Long>(PageLoadPhase.class);
+    private boolean finished = false;
+
+    PageLoadRecorder(String uri) {
+        this.uri = uri;
+    }
+
+    synchronized void begin(PageLoadPhase phase) {
+        phaseStartNanos.put(phase, System.nanoTime());
+    }
+
+    /**
+     * Ends the given phase. Does nothing if the phase has not begun.
+     */
+    synchronized void end(PageLoadPhase phase) {
+        Long start = phaseStartNanos.remove(phase);
+        if (start != null) {
+            Long previous = phaseNanos.get(phase);
+            phaseNanos.put(phase, (previous != null ? previous : 0) + System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Ends all phases and returns the timing of the navigation.
+     *
+     * @return the timing or null if it has already been returned
+     */
+    synchronized PageLoadTiming finish(boolean successful) {
+        if (finished) {
+            return null;
+        }
+        finished = true;
+        for (PageLoadPhase phase : phaseStartNanos.keySet().toArray(new PageLoadPhase[0])) {
+            end(phase);
+        }
+        Map<PageLoadPhase, Long> phaseMillis = new EnumMap<PageLoadPhase, Long>(PageLoadPhase.class);
+        for (Map.Entry<PageLoadPhase, Long> phase : phaseNanos.entrySet()) {
+            phaseMillis.put(phase.getKey(), TimeUnit.NANOSECONDS.toMillis(phase.getValue()));
+        }
+        return new PageLoadTiming(uri, successful, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), phaseMillis);
+    }
+}
@@ -0,0 +1,62 @@
+package de.fu_berlin.inf.ag_se.browser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A script that is registered as a function in the browser once and afterwards only called by its name.
+ * <p/>
+ * Running a plain script requires the browser to parse and compile the whole script on each call.
+ * A prepared script is compiled once per loaded page and each call only transfers the arguments.
+ * <p/>
+ * Instances are created by {@link IBrowser#prepareScript(String, String...)}
+ * and executed by {@link IBrowser#run(PreparedScript, de.fu_berlin.inf.ag_se.browser.utils.IConverter, Object...)}.
+ */
+public final class PreparedScript {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[a-zA-Z_$][a-zA-Z0-9_$]*");
+
+    private final String id;
+    private final String functionBody;
+    private final List<String> parameterNames;
+
+    /**
+     * @throws IllegalArgumentException if the function body is null or a parameter name is no valid Javascript identifier
+     */
+    PreparedScript(String functionBody, String... parameterNames) {
+        if (functionBody == null) {
+            throw new IllegalArgumentException("The function body must not be null");
+        }
+        for (String parameterName : parameterNames) {
+            if (parameterName == null || !IDENTIFIER.matcher(parameterName).matches()) {
+                throw new IllegalArgumentException(parameterName + " is no valid parameter name");
+            }
+        }
+        this.id = BrowserUtils.createRandomFunctionName();
+        this.functionBody = functionBody;
+        this.parameterNames = Collections.unmodifiableList(new ArrayList<String>(Arrays.asList(parameterNames)));
+    }
+
+    /**
+     * Returns the name under which this script is registered in the browser.
+     */
+    public String getId() {
+        return id;
+    }
+
+    public String getFunctionBody() {
+        return functionBody;
+    }
+
+    public List<String> getParameterNames() {
+        return parameterNames;
+    }
+
+    @Override
+    public String toString() {
+        return "function " + id + "(" + parameterNames + ")";
+    }
+}
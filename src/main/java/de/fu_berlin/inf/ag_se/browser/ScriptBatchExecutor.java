@@ -0,0 +1,109 @@
+package de.fu_berlin.inf.ag_se.browser;
+
+import de.fu_berlin.inf.ag_se.browser.utils.DelayedScriptRunner;
+import de.fu_berlin.inf.ag_se.browser.utils.DelayedScriptRunner.DelayedTask;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+/**
+ * Executes queued {@link ScriptExecutingCallable}s in a single browser round trip
+ * and completes each job's future on its own.
+ * <p/>
+ * If the batch as a whole fails, each job is completed on its own instead. Jobs whose scripts
+ * have already been evaluated get their stored return values, so that no script is run twice.
+ * Otherwise the jobs' scripts are evaluated one by one, so that a script that cannot be compiled
+ * only fails its own job.
+ * <p/>
+ * Scripts are only batched while no before or after script functions are registered,
+ * so that these are still called once before and once after each script.
+ */
+class ScriptBatchExecutor implements DelayedScriptRunner.BatchExecutor {
+
+    private static final Logger LOGGER = Logger.getLogger(ScriptBatchExecutor.class);
+
+    private final InternalBrowserWrapper<?> browser;
+
+    ScriptBatchExecutor(InternalBrowserWrapper<?> browser) {
+        this.browser = browser;
+    }
+
+    @Override
+    public boolean isBatchable(Callable<?> callable) {
+        return callable instanceof ScriptExecutingCallable && !browser.hasScriptHooks();
+    }
+
+    @Override
+    public void executeBatch(List<DelayedTask<?>> tasks) {
+        List<String> scripts = new ArrayList<String>(tasks.size());
+        List<String> invocations = new ArrayList<String>(tasks.size());
+        for (DelayedTask<?> task : tasks) {
+            ScriptExecutingCallable<?> callable = (ScriptExecutingCallable<?>) task.getCallable();
+            scripts.add(callable.getScript());
+            invocations.add(callable.getInvocation());
+        }
+
+        LOGGER.debug("Running " + scripts.size() + " scripts in a single batch");
+        String batchId = UUID.randomUUID().toString();
+        Object[] returnValues;
+        try {
+            returnValues = browser.evaluateBatch(batchId, scripts, invocations);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Error executing a batch of " + tasks.size() + " scripts, completing them one by one", e);
+            completeOneByOne(batchId, tasks, scripts);
+            return;
+        }
+
+        for (int i = 0; i < tasks.size(); i++) {
+            complete(tasks.get(i), scripts.get(i), returnValues[i]);
+        }
+    }
+
+    private void completeOneByOne(String batchId, List<DelayedTask<?>> tasks, List<String> scripts) {
+        boolean evaluated;
+        try {
+            evaluated = browser.isBatchEvaluated(batchId);
+        } catch (RuntimeException e) {
+            for (DelayedTask<?> task : tasks) {
+                task.setException(e);
+            }
+            return;
+        }
+
+        if (!evaluated) {
+            for (DelayedTask<?> task : tasks) {
+                task.run();
+            }
+            return;
+        }
+
+        for (int i = 0; i < tasks.size(); i++) {
+            Object returnValue;
+            try {
+                returnValue = browser.getBatchedReturnValue(batchId, i);
+            } catch (RuntimeException e) {
+                tasks.get(i).setException(e);
+                continue;
+            }
+            complete(tasks.get(i), scripts.get(i), returnValue);
+        }
+        try {
+            browser.discardBatchedReturnValues();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not discard the return values of batch " + batchId, e);
+        }
+    }
+
+    private <V> void complete(DelayedTask<V> task, String script, Object returnValue) {
+        ScriptExecutingCallable<V> callable = (ScriptExecutingCallable<V>) task.getCallable();
+        try {
+            browser.processBatchedReturnValue(script, returnValue);
+            task.set(callable.convert(returnValue));
+        } catch (RuntimeException e) {
+            task.setException(e);
+        }
+    }
+}
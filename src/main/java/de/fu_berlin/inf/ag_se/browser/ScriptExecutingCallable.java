@@ -4,17 +4,33 @@ import de.fu_berlin.inf.ag_se.browser.exception.BrowserDisposedException;
 import de.fu_berlin.inf.ag_se.browser.exception.ScriptExecutionException;
 import de.fu_berlin.inf.ag_se.browser.threading.NoCheckedExceptionCallable;
 import de.fu_berlin.inf.ag_se.browser.threading.labeling.ThreadLabelingCallable;
+import de.fu_berlin.inf.ag_se.browser.utils.DelayedScriptRunner;
 import de.fu_berlin.inf.ag_se.browser.utils.IConverter;
 import de.fu_berlin.inf.ag_se.browser.utils.StringUtils;
 import org.apache.log4j.Logger;
 
-class ScriptExecutingCallable<DEST> extends ThreadLabelingCallable<DEST> {
+import java.util.concurrent.Callable;
+
+class ScriptExecutingCallable<DEST> extends ThreadLabelingCallable<DEST> implements DelayedScriptRunner.ResultSharing {
 
     private static final Logger LOGGER = Logger.getLogger(ScriptExecutingCallable.class);
     private final String script;
+    private final String invocation;
+    private final IConverter<Object, DEST> converter;
 
-    ScriptExecutingCallable(final InternalBrowserWrapper browser, final IConverter<Object, DEST> converter,
+    ScriptExecutingCallable(final InternalBrowserWrapper<?> browser, final IConverter<Object, DEST> converter,
                                    final String script) {
+        this(browser, converter, script, JavascriptString.createFunctionInvocation(script));
+    }
+
+    /**
+     * Creates a callable that evaluates the given invocation instead of compiling the script to a new function.
+     *
+     * @param script     the script used for logging and the before and after script hooks
+     * @param invocation the Javascript expression that is actually evaluated
+     */
+    ScriptExecutingCallable(final InternalBrowserWrapper<?> browser, final IConverter<Object, DEST> converter,
+                                   final String script, final String invocation) {
         super(Browser.class, "Running " + StringUtils.shorten(script), new NoCheckedExceptionCallable<DEST>() {
             /**
              * @throws BrowserDisposedException
@@ -26,17 +42,73 @@ class ScriptExecutingCallable<DEST> extends ThreadLabelingCallable<DEST> {
                    LOGGER.debug("Did not execute " + script + " as the browser is disposed.");
                 }
 
-                Object returnValue = browser.evaluate(script);
+                Object returnValue = browser.evaluate(script, invocation);
 
-                DEST rs = converter.convert(returnValue);
-                LOGGER.debug(StringUtils.shorten(script) + " returned " + rs);
-                return rs;
+                return convert(script, converter, returnValue);
             }
         });
         this.script = script;
+        this.invocation = invocation;
+        this.converter = converter;
     }
 
     String getScript() {
         return script;
     }
+
+    /**
+     * The result of a replacing script can stand for the replaced script's result
+     * if both convert the return value with the same converter.
+     */
+    @Override
+    public boolean canShareResultWith(Callable<?> replaced) {
+        return replaced instanceof ScriptExecutingCallable
+                && ((ScriptExecutingCallable<?>) replaced).converter == converter;
+    }
+
+    /**
+     * Two callables are equal if they evaluate the same invocation and use the same converter,
+     * so that the result of one can stand for the result of the other.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ScriptExecutingCallable)) {
+            return false;
+        }
+        ScriptExecutingCallable<?> other = (ScriptExecutingCallable<?>) obj;
+        return invocation.equals(other.invocation) && converter == other.converter;
+    }
+
+    @Override
+    public int hashCode() {
+        return invocation.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return script;
+    }
+
+    String getInvocation() {
+        return invocation;
+    }
+
+    /**
+     * Converts the return value of this callable's script if it has been executed as part of a batch.
+     *
+     * @param returnValue the value returned by the browser for this script
+     * @return the converted return value
+     */
+    DEST convert(Object returnValue) {
+        return convert(script, converter, returnValue);
+    }
+
+    private static <DEST> DEST convert(String script, IConverter<Object, DEST> converter, Object returnValue) {
+        DEST rs = converter.convert(returnValue);
+        LOGGER.debug(StringUtils.shorten(script) + " returned " + rs);
+        return rs;
+    }
 }
@@ -0,0 +1,179 @@
+package de.fu_berlin.inf.ag_se.browser;
+
+import de.fu_berlin.inf.ag_se.browser.functions.IBrowserFunction;
+import de.fu_berlin.inf.ag_se.browser.functions.InternalJavascriptFunction;
+import de.fu_berlin.inf.ag_se.browser.threading.UIThreadExecutor;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a large script result that the page pushes in chunks through a browser function.
+ * The page yields the UI thread between two chunks and pauses if the reader falls behind,
+ * so that neither the UI thread is blocked for long nor the whole result has to be held in memory at once.
+ * <p/>
+ * The reader fails if no chunk arrives within the timeout or if it is {@link #fail(Throwable) failed} explicitly,
+ * e.g. because the page is left or the browser is disposed, so that reading threads never wait forever.
+ *
+ * @see JavascriptString#createStreamingScript(String, String, int)
+ */
+class ScriptResultReader extends Reader {
+
+    /**
+     * The number of characters transferred per chunk.
+     */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The number of chunks that may be buffered before the page has to wait for the reader.
+     */
+    private static final int MAX_BUFFERED_CHUNKS = 16;
+
+    private static final Object END = new Object();
+
+    private final LinkedBlockingQueue<Object> chunks = new LinkedBlockingQueue<Object>();
+    private final UIThreadExecutor uiThreadExecutor;
+    private final Executor disposalExecutor;
+    private final long timeoutMillis;
+    private volatile Runnable finishListener;
+    private volatile IBrowserFunction browserFunction;
+    private volatile boolean closed = false;
+    private String chunk = "";
+    private int position = 0;
+    private boolean ended = false;
+
+    /**
+     * @param disposalExecutor the executor used to dispose the browser function
+     *                         as this must not happen while the page calls it
+     * @param timeoutMillis    the time to wait for the next chunk or 0 to wait until the reader is failed
+     */
+    ScriptResultReader(UIThreadExecutor uiThreadExecutor, Executor disposalExecutor, long timeoutMillis) {
+        this.uiThreadExecutor = uiThreadExecutor;
+        this.disposalExecutor = disposalExecutor;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Sets the runnable that is run once the page has sent the last chunk or the reader has failed or been closed.
+     */
+    void setFinishListener(Runnable finishListener) {
+        this.finishListener = finishListener;
+    }
+
+    /**
+     * Returns the browser function the page pushes the chunks to.
+     * It takes the chunk and whether it is the last one and returns false if the chunk has to be sent again later.
+     */
+    InternalJavascriptFunction createFunction(String name) {
+        return new InternalJavascriptFunction(name) {
+            @Override
+            public Object function(Object[] arguments) {
+                if (closed) {
+                    return true;
+                }
+                if (chunks.size() >= MAX_BUFFERED_CHUNKS) {
+                    return false;
+                }
+                chunks.add(arguments[0] != null ? arguments[0].toString() : "");
+                if (Boolean.TRUE.equals(arguments[1])) {
+                    chunks.add(END);
+                    disposeBrowserFunctionLater();
+                }
+                return true;
+            }
+        };
+    }
+
+    void setBrowserFunction(IBrowserFunction browserFunction) {
+        this.browserFunction = browserFunction;
+    }
+
+    /**
+     * Disposes the browser function which also stops the page from sending further chunks.
+     */
+    private void disposeBrowserFunctionLater() {
+        Runnable finishListener = this.finishListener;
+        this.finishListener = null;
+        if (finishListener != null) {
+            finishListener.run();
+        }
+        final IBrowserFunction browserFunction = this.browserFunction;
+        this.browserFunction = null;
+        if (browserFunction != null) {
+            disposalExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    browserFunction.dispose();
+                }
+            });
+        }
+    }
+
+    /**
+     * Makes the reader fail with the given cause once the already received chunks have been read.
+     */
+    void fail(Throwable cause) {
+        chunks.add(cause);
+        disposeBrowserFunctionLater();
+    }
+
+    /**
+     * @throws IllegalStateException if called from the UI thread as the chunks are delivered by the UI thread
+     */
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Reader is closed");
+        }
+        if (uiThreadExecutor.isUIThread()) {
+            throw new IllegalStateException("Reading streamed script results is not allowed from the UI thread");
+        }
+        if (length == 0) {
+            return 0;
+        }
+        while (position >= chunk.length()) {
+            if (ended) {
+                return -1;
+            }
+            Object next;
+            try {
+                next = timeoutMillis > 0 ? chunks.poll(timeoutMillis, TimeUnit.MILLISECONDS) : chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the next chunk");
+            }
+            if (next == null) {
+                ended = true;
+                disposeBrowserFunctionLater();
+                throw new IOException("No chunk of the script result was received within " + timeoutMillis + "ms");
+            }
+            if (next == END) {
+                ended = true;
+            } else if (next instanceof Throwable) {
+                ended = true;
+                IOException exception = new IOException("Streaming the script result failed");
+                exception.initCause((Throwable) next);
+                throw exception;
+            } else {
+                chunk = (String) next;
+                position = 0;
+            }
+        }
+        int count = Math.min(length, chunk.length() - position);
+        chunk.getChars(position, position + count, buffer, offset);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            chunks.clear();
+            disposeBrowserFunctionLater();
+        }
+    }
+}
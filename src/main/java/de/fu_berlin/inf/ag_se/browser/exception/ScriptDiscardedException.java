@@ -0,0 +1,14 @@
+package de.fu_berlin.inf.ag_se.browser.exception;
+
+/**
+ * Thrown if a queued script is not executed because the browser left the page it was queued for.
+ */
+public class ScriptDiscardedException extends ScriptExecutionException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ScriptDiscardedException(String script) {
+		super(script, "the browser left the page it was queued for");
+	}
+
+}
@@ -0,0 +1,14 @@
+package de.fu_berlin.inf.ag_se.browser.exception;
+
+/**
+ * Thrown if a script is not executed because the browser's script queue is full.
+ */
+public class ScriptRejectedException extends ScriptExecutionException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ScriptRejectedException(String script, String reason) {
+		super(script, reason);
+	}
+
+}
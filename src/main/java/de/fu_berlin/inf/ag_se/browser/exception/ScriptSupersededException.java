@@ -0,0 +1,15 @@
+package de.fu_berlin.inf.ag_se.browser.exception;
+
+/**
+ * Thrown if a queued script was replaced by a newer script with the same key before it was executed
+ * and the newer script's result cannot stand for its own.
+ */
+public class ScriptSupersededException extends ScriptExecutionException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ScriptSupersededException(String script) {
+		super(script, "it was superseded by a newer script with the same key");
+	}
+
+}
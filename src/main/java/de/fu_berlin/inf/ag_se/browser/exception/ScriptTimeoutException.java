@@ -0,0 +1,14 @@
+package de.fu_berlin.inf.ag_se.browser.exception;
+
+/**
+ * Thrown if a script or a condition did not complete before its deadline.
+ */
+public class ScriptTimeoutException extends ScriptExecutionException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ScriptTimeoutException(String script, long timeoutMillis) {
+		super(script, "it did not complete within " + timeoutMillis + "ms");
+	}
+
+}
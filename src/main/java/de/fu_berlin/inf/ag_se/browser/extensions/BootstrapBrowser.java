@@ -14,11 +14,11 @@ public class BootstrapBrowser extends JQueryBrowser implements IBootstrapBrowser
 
 
     public BootstrapBrowser(InternalBrowserWrapper internalBrowserWrapper) {
-        this(internalBrowserWrapper, Collections.<BrowserExtension>emptyList());
+        this(internalBrowserWrapper, Collections.<IBrowserExtension>emptyList());
     }
 
-    public BootstrapBrowser(InternalBrowserWrapper internalBrowserWrapper, Iterable<BrowserExtension> extensions) {
-        super(internalBrowserWrapper, Iterables.concat(extensions, Arrays.asList(BrowserExtension.BOOTSTRAP_EXTENSION)));
+    public BootstrapBrowser(InternalBrowserWrapper internalBrowserWrapper, Iterable<? extends IBrowserExtension> extensions) {
+        super(internalBrowserWrapper, Iterables.<IBrowserExtension>concat(extensions, Arrays.asList(BrowserExtension.BOOTSTRAP_EXTENSION)));
     }
 
     /**
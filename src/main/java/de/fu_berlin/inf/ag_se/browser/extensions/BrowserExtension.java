@@ -3,6 +3,7 @@ package de.fu_berlin.inf.ag_se.browser.extensions;
 import de.fu_berlin.inf.ag_se.browser.utils.ClasspathFileUtils;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -13,28 +14,66 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * TODO Currently the loading of external resources does not work reliably.
  * This can lead to waiting threads which are never notified.
  */
-public enum BrowserExtension {
+public enum BrowserExtension implements IBrowserExtension {
 
-    JQUERY_EXTENSION("jQuery 1.9.0", "return typeof jQuery !== 'undefined';",
-            Arrays.asList(ClasspathFileUtils.getFile("/jquery/jquery-1.9.0.js")),
-            Collections.<File>emptyList(),
+    /**
+     * A jQuery instance that is only reachable through <code>window.__jQuery</code>.
+     * All extensions share it instead of bringing their own copy.
+     */
+    JQUERY_CORE_EXTENSION("jQuery 1.9.0 (private)", "1.9.0", "return typeof window.__jQuery !== 'undefined';",
+            Arrays.asList("/jquery/jquery-1.9.0.js", "/jquery/jquery-private.js"),
+            Collections.<String>emptyList(),
             Collections.<BrowserExtension>emptyList()),
 
-    BOOTSTRAP_EXTENSION("Bootstrap 3.0.0",
+    JQUERY_EXTENSION("jQuery 1.9.0", "1.9.0", "return typeof jQuery !== 'undefined';",
+            Arrays.asList("/jquery/jquery-global.js"),
+            Collections.<String>emptyList(),
+            Arrays.asList(JQUERY_CORE_EXTENSION)),
+
+    BOOTSTRAP_EXTENSION("Bootstrap 3.0.0", "3.0.0",
             "return (typeof window.jQuery !== 'undefined') && (typeof $().modal == 'function');",
-            Arrays.asList(ClasspathFileUtils.getFile("/bootstrap/js/bootstrap.min.js")),
-            Arrays.asList(ClasspathFileUtils.getFile("/bootstrap/css/bootstrap.min.css")),
+            Arrays.asList("/bootstrap/js/bootstrap.min.js"),
+            Arrays.asList("/bootstrap/css/bootstrap.min.css"),
             Arrays.asList(JQUERY_EXTENSION)),
 
-    EVENT_CATCH_EXTENSION("Event Catch Functionality", "return window[\"__eventsCatchInjected\"];",
-            Arrays.asList(ClasspathFileUtils.getFile("/events.js"), ClasspathFileUtils.getFile("/dnd.js"), ClasspathFileUtils.getFile("/resizing.js")),
-            Arrays.asList(ClasspathFileUtils.getFile("/dnd.css")),
-            Collections.<BrowserExtension>emptyList()
-            );
+    /**
+     * Console forwarding and the focus border. Does not depend on jQuery.
+     */
+    EVENT_CATCH_BASE_EXTENSION("Event Catch Base Functionality", "1.0", "return window[\"__eventsBaseInjected\"];",
+            Arrays.asList("/events-base.js"),
+            Collections.<String>emptyList(),
+            Collections.<BrowserExtension>emptyList()),
+
+    /**
+     * Forwards focus, anchor and mouse events.
+     */
+    EVENT_CATCH_EXTENSION("Event Catch Functionality", "1.0", "return window[\"__eventsCatchInjected\"];",
+            Arrays.asList("/events.js"),
+            Collections.<String>emptyList(),
+            Arrays.asList(JQUERY_CORE_EXTENSION, EVENT_CATCH_BASE_EXTENSION)),
+
+    /**
+     * Forwards drag and drop events.
+     */
+    DND_EXTENSION("Drag and Drop Functionality", "1.0", "return window[\"__dndCatchInjected\"];",
+            Arrays.asList("/dnd.js"),
+            Arrays.asList("/dnd.css"),
+            Arrays.asList(JQUERY_CORE_EXTENSION, EVENT_CATCH_BASE_EXTENSION)),
+
+    /**
+     * Reports the bounds of the page's content whenever they change.
+     */
+    RESIZE_EXTENSION("Content Size Tracking", "1.0", "return window[\"__resizeCatchInjected\"];",
+            Arrays.asList("/resizing.js"),
+            Collections.<String>emptyList(),
+            Arrays.asList(JQUERY_CORE_EXTENSION));
 
     private final String name;
+    private final String version;
     private final String verificationScript;
+    private final List<String> jsResources;
     private final List<File> jsExtensions;
+    private final List<String> cssResources;
     private final List<File> cssExtensions;
     private final List<BrowserExtension> dependencies;
 
@@ -42,43 +81,86 @@ public enum BrowserExtension {
      * This constructor allows adding a multiple JS and CSS files.
      *
      * @param name
+     * @param version
      * @param verificationScript
-     * @param jsExtensions
-     * @param cssExtensions
+     * @param jsResources   the classpath paths of the scripts
+     * @param cssResources  the classpath paths of the stylesheets
      * @param dependencies
      */
-    private BrowserExtension(String name, String verificationScript,
-                             List<File> jsExtensions, List<File> cssExtensions,
+    private BrowserExtension(String name, String version, String verificationScript,
+                             List<String> jsResources, List<String> cssResources,
                              List<BrowserExtension> dependencies) {
         checkNotNull(name);
+        checkNotNull(version);
         checkNotNull(verificationScript);
-        checkNotNull(jsExtensions);
-        checkNotNull(cssExtensions);
+        checkNotNull(jsResources);
+        checkNotNull(cssResources);
         checkNotNull(dependencies);
         this.name = name;
+        this.version = version;
         this.verificationScript = verificationScript;
-        this.jsExtensions = Collections.unmodifiableList(jsExtensions);
-        this.cssExtensions = Collections.unmodifiableList(cssExtensions);
+        this.jsResources = Collections.unmodifiableList(jsResources);
+        this.jsExtensions = getFiles(jsResources);
+        this.cssResources = Collections.unmodifiableList(cssResources);
+        this.cssExtensions = getFiles(cssResources);
         this.dependencies = Collections.unmodifiableList(dependencies);
     }
 
+    @Override
     public String getName() {
         return this.name;
     }
 
+    @Override
+    public String getVersion() {
+        return this.version;
+    }
+
+    @Override
     public String getVerificationScript() {
         return this.verificationScript;
     }
 
+    @Override
     public List<File> getJsExtensions() {
         return this.jsExtensions;
     }
 
+    /**
+     * Returns the classpath paths of the {@link #getJsExtensions() scripts},
+     * which the {@link de.fu_berlin.inf.ag_se.browser.server.ResourceServer} can serve.
+     *
+     * @return
+     */
+    List<String> getJsResources() {
+        return this.jsResources;
+    }
+
+    @Override
     public List<File> getCssExtensions() {
         return this.cssExtensions;
     }
 
+    /**
+     * Returns the classpath paths of the {@link #getCssExtensions() stylesheets},
+     * which the {@link de.fu_berlin.inf.ag_se.browser.server.ResourceServer} can serve.
+     *
+     * @return
+     */
+    List<String> getCssResources() {
+        return this.cssResources;
+    }
+
+    @Override
     public List<BrowserExtension> getDependencies() {
         return this.dependencies;
     }
+
+    private static List<File> getFiles(List<String> resources) {
+        List<File> files = new ArrayList<File>(resources.size());
+        for (String resource : resources) {
+            files.add(ClasspathFileUtils.getFile(resource));
+        }
+        return Collections.unmodifiableList(files);
+    }
 }
@@ -1,16 +1,23 @@
 package de.fu_berlin.inf.ag_se.browser.extensions;
 
 import com.google.common.collect.Iterables;
-import de.fu_berlin.inf.ag_se.browser.BrowserUtils;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import de.fu_berlin.inf.ag_se.browser.InternalBrowserWrapper;
 import de.fu_berlin.inf.ag_se.browser.functions.JavascriptFunction;
-import de.fu_berlin.inf.ag_se.browser.html.Anchor;
+import de.fu_berlin.inf.ag_se.browser.html.DescribedAnchor;
+import de.fu_berlin.inf.ag_se.browser.html.DescribedElement;
 import de.fu_berlin.inf.ag_se.browser.html.IAnchor;
 import de.fu_berlin.inf.ag_se.browser.html.IElement;
+import de.fu_berlin.inf.ag_se.browser.html.LazyAnchor;
+import de.fu_berlin.inf.ag_se.browser.html.LazyElement;
 import de.fu_berlin.inf.ag_se.browser.listener.IAnchorListener;
 import de.fu_berlin.inf.ag_se.browser.listener.IDNDListener;
 import de.fu_berlin.inf.ag_se.browser.listener.IFocusListener;
 import de.fu_berlin.inf.ag_se.browser.listener.IMouseListener;
+import de.fu_berlin.inf.ag_se.browser.threading.ListenerDispatcher;
+import de.fu_berlin.inf.ag_se.browser.utils.IConverter;
+import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 
@@ -18,28 +25,46 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+/**
+ * An {@link ExtendedBrowser} that forwards events from the loaded page to registered listeners.
+ * <p/>
+ * The scripts catching the events are only injected once a listener of the corresponding kind is added.
+ */
 public class EventCatchBrowser extends ExtendedBrowser implements IEventCatchBrowser {
 
     private static Logger LOGGER = Logger.getLogger(EventCatchBrowser.class);
 
-    private final List<IAnchorListener> anchorListeners = new ArrayList<IAnchorListener>();
+    // event types of the page's event channel
+    private static final int MOUSEMOVE = 0;
+    private static final int MOUSEDOWN = 1;
+    private static final int MOUSEUP = 2;
+    private static final int CLICK = 3;
 
-    private final List<IMouseListener> mouseListeners = new ArrayList<IMouseListener>();
+    private final List<IAnchorListener> anchorListeners = new CopyOnWriteArrayList<IAnchorListener>();
 
-    private final List<IFocusListener> focusListeners = new ArrayList<IFocusListener>();
+    private final List<IMouseListener> mouseListeners = new CopyOnWriteArrayList<IMouseListener>();
 
-    private final List<IDNDListener> dndListeners = new ArrayList<IDNDListener>();
+    private final List<IFocusListener> focusListeners = new CopyOnWriteArrayList<IFocusListener>();
+
+    private final List<IDNDListener> dndListeners = new CopyOnWriteArrayList<IDNDListener>();
+
+    private volatile int eventChannelRate = EVENT_CHANNEL_PER_FRAME;
+
+    private volatile boolean elementDescriptors = false;
+
+    private final Object eventSubscriptionsLock = new Object();
 
     public EventCatchBrowser(InternalBrowserWrapper internalBrowserWrapper) {
-            this(internalBrowserWrapper, Collections.<BrowserExtension>emptyList());
+            this(internalBrowserWrapper, Collections.<IBrowserExtension>emptyList());
         }
 
     public EventCatchBrowser(InternalBrowserWrapper internalBrowserWrapper,
-                             Iterable<BrowserExtension> extensions) {
-        super(internalBrowserWrapper, Iterables.concat(extensions, Arrays.asList(BrowserExtension.EVENT_CATCH_EXTENSION)));
+                             Iterable<? extends IBrowserExtension> extensions) {
+        super(internalBrowserWrapper, Iterables.<IBrowserExtension>concat(extensions, Arrays.asList(BrowserExtension.EVENT_CATCH_BASE_EXTENSION)));
 
         executeAfterCompletion(new Runnable() {
             @Override
@@ -47,50 +72,165 @@ public class EventCatchBrowser extends ExtendedBrowser implements IEventCatchBro
                 for (JavascriptFunction browserFunction : getEventCatchBrowserFunctions()) {
                     createBrowserFunction(browserFunction);
                 }
+                if (eventChannelRate != EVENT_CHANNEL_PER_FRAME) {
+                    runImmediately(getEventChannelRateStmt(), IConverter.CONVERTER_VOID);
+                }
+                if (elementDescriptors) {
+                    runImmediately(getElementDescriptorsStmt(), IConverter.CONVERTER_VOID);
+                }
+                runImmediately(getEventSubscriptionsStmt(), IConverter.CONVERTER_VOID);
             }
         });
     }
 
+    private String getEventChannelRateStmt() {
+        return "window.__eventChannelRate = " + eventChannelRate + ";";
+    }
+
+    @Override
+    public void setEventChannelRate(int batchesPerSecond) {
+        eventChannelRate = batchesPerSecond;
+        // pages loaded later get the rate set on completion
+        if (isLoadingCompleted()) {
+            run(getEventChannelRateStmt(), IConverter.CONVERTER_VOID);
+        }
+    }
+
+    /**
+     * Returns a statement that tells the page for which event categories listeners are registered,
+     * so that it only binds the handlers of these categories.
+     */
+    private String getEventSubscriptionsStmt() {
+        List<String> categories = new ArrayList<String>();
+        if (!anchorListeners.isEmpty()) {
+            categories.add("\"anchor\"");
+        }
+        if (!focusListeners.isEmpty()) {
+            categories.add("\"focus\"");
+        }
+        if (!mouseListeners.isEmpty()) {
+            categories.add("\"mouse\"");
+        }
+        return "window.__eventSubscriptions = [" + StringUtils.join(categories, ",") + "];"
+                + " if (window.__updateEventSubscriptions) window.__updateEventSubscriptions();";
+    }
+
+    /**
+     * Tells the loaded page about changed event subscriptions.
+     * Pages loaded later are told on completion.
+     */
+    private void updateEventSubscriptions() {
+        // the statement is created and queued atomically so that the page ends up with the latest subscriptions
+        synchronized (eventSubscriptionsLock) {
+            if (isLoadingCompleted()) {
+                run(getEventSubscriptionsStmt(), IConverter.CONVERTER_VOID);
+            }
+        }
+    }
+
+    private String getElementDescriptorsStmt() {
+        return "window.__elementDescriptors = " + elementDescriptors + ";";
+    }
+
+    @Override
+    public void setElementDescriptors(boolean enabled) {
+        elementDescriptors = enabled;
+        // pages loaded later get the setting on completion
+        if (isLoadingCompleted()) {
+            run(getElementDescriptorsStmt(), IConverter.CONVERTER_VOID);
+        }
+    }
+
+    @Override
+    public ListenableFuture<String> fetchHtml(IElement element) {
+        checkNotNull(element);
+        if (element instanceof DescribedElement) {
+            DescribedElement described = (DescribedElement) element;
+            return run("return window.__elementHtml ? window.__elementHtml('"
+                    + StringEscapeUtils.escapeJavaScript(described.getPageId()) + "', "
+                    + described.getHandle() + ") : null;", IConverter.CONVERTER_STRING);
+        }
+        return Futures.immediateFuture(element.toHtml());
+    }
+
+    /**
+     * Also restores the default event channel rate and disables element descriptors.
+     */
+    @Override
+    public void resetConfiguration() {
+        super.resetConfiguration();
+        eventChannelRate = EVENT_CHANNEL_PER_FRAME;
+        elementDescriptors = false;
+    }
+
+    @Override
+    public void removeAllListeners() {
+        super.removeAllListeners();
+        anchorListeners.clear();
+        mouseListeners.clear();
+        focusListeners.clear();
+        dndListeners.clear();
+        updateEventSubscriptions();
+    }
+
+    /**
+     * Makes the loaded pages report the bounds of their content to the browser function <code>__resize</code>
+     * whenever they change.
+     */
+    public void trackContentBounds() {
+        requireExtension(BrowserExtension.RESIZE_EXTENSION);
+    }
+
     @Override
     public void addAnchorListener(IAnchorListener anchorListener) {
         checkNotNull(anchorListener);
         anchorListeners.add(anchorListener);
+        requireExtension(BrowserExtension.EVENT_CATCH_EXTENSION);
+        updateEventSubscriptions();
     }
 
     @Override
     public void removeAnchorListener(IAnchorListener anchorListener) {
         checkNotNull(anchorListener);
-        anchorListeners.add(anchorListener);
+        anchorListeners.remove(anchorListener);
+        updateEventSubscriptions();
     }
 
     @Override
     public void addMouseListener(IMouseListener mouseListener) {
         checkNotNull(mouseListener);
         mouseListeners.add(mouseListener);
+        requireExtension(BrowserExtension.EVENT_CATCH_EXTENSION);
+        updateEventSubscriptions();
     }
 
     @Override
     public void removeMouseListener(IMouseListener mouseListener) {
         checkNotNull(mouseListener);
         mouseListeners.remove(mouseListener);
+        updateEventSubscriptions();
     }
 
     @Override
     public void addFocusListener(IFocusListener focusListener) {
         checkNotNull(focusListener);
         focusListeners.add(focusListener);
+        requireExtension(BrowserExtension.EVENT_CATCH_EXTENSION);
+        updateEventSubscriptions();
     }
 
     @Override
     public void removeFocusListener(IFocusListener focusListener) {
         checkNotNull(focusListener);
         focusListeners.remove(focusListener);
+        updateEventSubscriptions();
     }
 
     @Override
     public void addDNDListener(IDNDListener dndListener) {
         checkNotNull(dndListener);
         dndListeners.add(dndListener);
+        requireExtension(BrowserExtension.DND_EXTENSION);
     }
 
     @Override
@@ -99,72 +239,196 @@ public class EventCatchBrowser extends ExtendedBrowser implements IEventCatchBro
         dndListeners.remove(dndListener);
     }
 
-    protected void fireAnchorHover(String html, boolean mouseEnter) {
-        IElement element = BrowserUtils.extractElement(html);
-        IAnchor anchor = new Anchor(element.getAttributes(), element.getContent());
-        for (IAnchorListener anchorListener : anchorListeners) {
-            anchorListener.anchorHovered(anchor, mouseEnter);
+    /**
+     * Returns whether the given object is an element payload sent by the page,
+     * that is either the element's markup or its descriptor.
+     */
+    private static boolean isElementPayload(Object payload) {
+        return payload instanceof String || payload instanceof Object[];
+    }
+
+    /**
+     * Returns the element represented by the given payload. Markup is parsed
+     * only if a listener accesses the element.
+     */
+    private static IElement createElement(Object payload) {
+        if (payload instanceof String) {
+            return new LazyElement((String) payload);
+        }
+        if (payload instanceof Object[]) {
+            try {
+                return new DescribedElement((Object[]) payload);
+            } catch (IllegalArgumentException e) {
+                LOGGER.error("Invalid element descriptor", e);
+            }
         }
+        return null;
     }
 
-    protected void fireMouseMove(double x, double y) {
-        for (IMouseListener mouseListener : mouseListeners) {
-            mouseListener.mouseMove(x, y);
+    private static IAnchor createAnchor(Object payload) {
+        if (payload instanceof String) {
+            return new LazyAnchor((String) payload);
         }
+        if (payload instanceof Object[]) {
+            try {
+                return new DescribedAnchor((Object[]) payload);
+            } catch (IllegalArgumentException e) {
+                LOGGER.error("Invalid anchor descriptor", e);
+            }
+        }
+        return null;
     }
 
-    private void fireMouseDown(double x, double y, String html) {
-        IElement element = BrowserUtils.extractElement(html);
-        for (IMouseListener mouseListener : mouseListeners) {
-            mouseListener.mouseDown(x, y, element);
+    protected void fireAnchorHover(Object payload, final boolean mouseEnter) {
+        if (anchorListeners.isEmpty()) {
+            return;
+        }
+        final IAnchor anchor = createAnchor(payload);
+        if (anchor == null) {
+            return;
         }
+        getListenerDispatcher().dispatch(anchorListeners, new ListenerDispatcher.Notification<IAnchorListener>() {
+            @Override
+            public void call(IAnchorListener listener) {
+                listener.anchorHovered(anchor, mouseEnter);
+            }
+        });
+    }
+
+    protected void fireMouseMove(final double x, final double y) {
+        getListenerDispatcher().dispatch(mouseListeners, new ListenerDispatcher.Notification<IMouseListener>() {
+            @Override
+            public void call(IMouseListener listener) {
+                listener.mouseMove(x, y);
+            }
+        });
     }
 
-    private void fireMouseUp(double x, double y, String html) {
-        IElement element = BrowserUtils.extractElement(html);
-        for (IMouseListener mouseListener : mouseListeners) {
-            mouseListener.mouseUp(x, y, element);
+    private void fireMouseDown(final double x, final double y, Object payload) {
+        if (mouseListeners.isEmpty()) {
+            return;
         }
+        final IElement element = createElement(payload);
+        getListenerDispatcher().dispatch(mouseListeners, new ListenerDispatcher.Notification<IMouseListener>() {
+            @Override
+            public void call(IMouseListener listener) {
+                listener.mouseDown(x, y, element);
+            }
+        });
     }
 
-    private void fireClicked(Double x, Double y, String html) {
-        IElement element = BrowserUtils.extractElement(html);
-        for (IMouseListener mouseListener : mouseListeners) {
-            mouseListener.clicked(x, y, element);
+    private void fireMouseUp(final double x, final double y, Object payload) {
+        if (mouseListeners.isEmpty()) {
+            return;
         }
+        final IElement element = createElement(payload);
+        getListenerDispatcher().dispatch(mouseListeners, new ListenerDispatcher.Notification<IMouseListener>() {
+            @Override
+            public void call(IMouseListener listener) {
+                listener.mouseUp(x, y, element);
+            }
+        });
     }
 
-    private void fireDragStart(long offsetX, long offsetY,
-                               IElement element, String mimeType, String data) {
-        for (IDNDListener dndListener : dndListeners) {
-            dndListener.dragStart(offsetX, offsetY, element, mimeType, data);
+    private void fireClicked(final Double x, final Double y, Object payload) {
+        if (mouseListeners.isEmpty()) {
+            return;
         }
+        final IElement element = createElement(payload);
+        getListenerDispatcher().dispatch(mouseListeners, new ListenerDispatcher.Notification<IMouseListener>() {
+            @Override
+            public void call(IMouseListener listener) {
+                listener.clicked(x, y, element);
+            }
+        });
     }
 
-    private void fireDrop(long offsetX, long offsetY,
-                          IElement element, String mimeType, String data) {
-        for (IDNDListener dndListener : dndListeners) {
-            dndListener.drop(offsetX, offsetY, element, mimeType, data);
+    /**
+     * Dispatches a batch of events sent by the page's event channel.
+     *
+     * @param events   four numbers per event: the type, x, y and the index of the element's markup or -1
+     * @param elements the markup of the events' elements
+     */
+    private void fireEvents(Object[] events, Object[] elements) {
+        for (int i = 0; i + 3 < events.length; i += 4) {
+            if (!(events[i] instanceof Double) || !(events[i + 1] instanceof Double)
+                    || !(events[i + 2] instanceof Double) || !(events[i + 3] instanceof Double)) {
+                continue;
+            }
+            double x = (Double) events[i + 1];
+            double y = (Double) events[i + 2];
+            int elementIndex = ((Double) events[i + 3]).intValue();
+            Object payload = elementIndex >= 0 && elementIndex < elements.length ? elements[elementIndex] : null;
+            switch (((Double) events[i]).intValue()) {
+                case MOUSEMOVE:
+                    fireMouseMove(x, y);
+                    break;
+                case MOUSEDOWN:
+                    fireMouseDown(x, y, payload);
+                    break;
+                case MOUSEUP:
+                    fireMouseUp(x, y, payload);
+                    break;
+                case CLICK:
+                    fireClicked(x, y, payload);
+                    break;
+                default:
+                    LOGGER.warn("Unknown event type " + events[i]);
+            }
         }
     }
 
-    private void fireFocusGained(IElement element) {
-        for (IFocusListener focusListener : focusListeners) {
-            focusListener.focusGained(element);
+    private void fireDragStart(final long offsetX, final long offsetY,
+                               Object payload, final String mimeType, final String data) {
+        if (dndListeners.isEmpty()) {
+            return;
         }
+        final IElement element = createElement(payload);
+        getListenerDispatcher().dispatch(dndListeners, new ListenerDispatcher.Notification<IDNDListener>() {
+            @Override
+            public void call(IDNDListener listener) {
+                listener.dragStart(offsetX, offsetY, element, mimeType, data);
+            }
+        });
     }
 
-    private void fireFocusLost(IElement element) {
-        for (IFocusListener focusListener : focusListeners) {
-            focusListener.focusLost(element);
+    private void fireDrop(final long offsetX, final long offsetY,
+                          Object payload, final String mimeType, final String data) {
+        if (dndListeners.isEmpty()) {
+            return;
         }
+        final IElement element = createElement(payload);
+        getListenerDispatcher().dispatch(dndListeners, new ListenerDispatcher.Notification<IDNDListener>() {
+            @Override
+            public void call(IDNDListener listener) {
+                listener.drop(offsetX, offsetY, element, mimeType, data);
+            }
+        });
+    }
+
+    private void fireFocusGained(final IElement element) {
+        getListenerDispatcher().dispatch(focusListeners, new ListenerDispatcher.Notification<IFocusListener>() {
+            @Override
+            public void call(IFocusListener listener) {
+                listener.focusGained(element);
+            }
+        });
+    }
+
+    private void fireFocusLost(final IElement element) {
+        getListenerDispatcher().dispatch(focusListeners, new ListenerDispatcher.Notification<IFocusListener>() {
+            @Override
+            public void call(IFocusListener listener) {
+                listener.focusLost(element);
+            }
+        });
     }
 
     protected List<JavascriptFunction> getEventCatchBrowserFunctions() {
         return Arrays.asList(new JavascriptFunction("__mouseenter") {
                                  public Object function(Object[] arguments) {
-                                     if (arguments.length == 1 && arguments[0] instanceof String) {
-                                         fireAnchorHover((String) arguments[0], true);
+                                     if (arguments.length == 1 && isElementPayload(arguments[0])) {
+                                         fireAnchorHover(arguments[0], true);
                                      }
                                      return null;
                                  }
@@ -172,8 +436,8 @@ public class EventCatchBrowser extends ExtendedBrowser implements IEventCatchBro
                 new JavascriptFunction("__mouseleave") {
                     @Override
                     public Object function(Object[] arguments) {
-                        if (arguments.length == 1 && arguments[0] instanceof String) {
-                            fireAnchorHover((String) arguments[0], false);
+                        if (arguments.length == 1 && isElementPayload(arguments[0])) {
+                            fireAnchorHover(arguments[0], false);
                         }
                         return null;
                     }
@@ -197,10 +461,10 @@ public class EventCatchBrowser extends ExtendedBrowser implements IEventCatchBro
                         if (arguments.length == 3 && (arguments[0] == null
                                 || arguments[0] instanceof Double) && (arguments[1] == null
                                 || arguments[1] instanceof Double) && (arguments[2] == null
-                                || arguments[2] instanceof String)) {
+                                || isElementPayload(arguments[2]))) {
 
                             fireMouseDown((Double) arguments[0],
-                                    (Double) arguments[1], (String) arguments[2]);
+                                    (Double) arguments[1], arguments[2]);
                         }
                         return null;
                     }
@@ -211,10 +475,20 @@ public class EventCatchBrowser extends ExtendedBrowser implements IEventCatchBro
                         if (arguments.length == 3 && (arguments[0] == null
                                 || arguments[0] instanceof Double) && (arguments[1] == null
                                 || arguments[1] instanceof Double) && (arguments[2] == null
-                                || arguments[2] instanceof String)) {
+                                || isElementPayload(arguments[2]))) {
 
                             fireMouseUp((Double) arguments[0],
-                                    (Double) arguments[1], (String) arguments[2]);
+                                    (Double) arguments[1], arguments[2]);
+                        }
+                        return null;
+                    }
+                },
+                new JavascriptFunction("__events") {
+                    @Override
+                    public Object function(Object[] arguments) {
+                        if (arguments.length == 2 && arguments[0] instanceof Object[]
+                                && arguments[1] instanceof Object[]) {
+                            fireEvents((Object[]) arguments[0], (Object[]) arguments[1]);
                         }
                         return null;
                     }
@@ -225,10 +499,10 @@ public class EventCatchBrowser extends ExtendedBrowser implements IEventCatchBro
                         if (arguments.length == 3 && (arguments[0] == null
                                 || arguments[0] instanceof Double) && (arguments[1] == null
                                 || arguments[1] instanceof Double) && (arguments[2] == null
-                                || arguments[2] instanceof String)) {
+                                || isElementPayload(arguments[2]))) {
 
                             fireClicked((Double) arguments[0],
-                                    (Double) arguments[1], (String) arguments[2]);
+                                    (Double) arguments[1], arguments[2]);
                         }
                         return null;
                     }
@@ -260,17 +534,15 @@ public class EventCatchBrowser extends ExtendedBrowser implements IEventCatchBro
                     public Object function(Object[] arguments) {
                         if (arguments.length == 5 && arguments[0] instanceof Double
                                 && arguments[1] instanceof Double
-                                && arguments[2] instanceof String
+                                && isElementPayload(arguments[2])
                                 && arguments[3] instanceof String
                                 && arguments[4] instanceof String) {
                             long offsetX = Math.round((Double) arguments[0]);
                             long offsetY = Math.round((Double) arguments[1]);
-                            IElement element = BrowserUtils
-                                    .extractElement((String) arguments[2]);
                             String mimeType = (String) arguments[3];
                             String data = (String) arguments[4];
 
-                            fireDragStart(offsetX, offsetY, element, mimeType,
+                            fireDragStart(offsetX, offsetY, arguments[2], mimeType,
                                     data);
                         }
                         return null;
@@ -281,17 +553,15 @@ public class EventCatchBrowser extends ExtendedBrowser implements IEventCatchBro
                     public Object function(Object[] arguments) {
                         if (arguments.length == 5 && arguments[0] instanceof Double
                                 && arguments[1] instanceof Double
-                                && arguments[2] instanceof String
+                                && isElementPayload(arguments[2])
                                 && arguments[3] instanceof String
                                 && arguments[4] instanceof String) {
                             long offsetX = Math.round((Double) arguments[0]);
                             long offsetY = Math.round((Double) arguments[1]);
-                            IElement element = BrowserUtils
-                                    .extractElement((String) arguments[2]);
                             String mimeType = (String) arguments[3];
                             String data = (String) arguments[4];
 
-                            fireDrop(offsetX, offsetY, element, mimeType, data);
+                            fireDrop(offsetX, offsetY, arguments[2], mimeType, data);
                         }
                         return null;
                     }
@@ -1,18 +1,36 @@
 package de.fu_berlin.inf.ag_se.browser.extensions;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import de.fu_berlin.inf.ag_se.browser.Browser;
 import de.fu_berlin.inf.ag_se.browser.IBrowser;
 import de.fu_berlin.inf.ag_se.browser.InternalBrowserWrapper;
-import de.fu_berlin.inf.ag_se.browser.JavascriptString;
+import de.fu_berlin.inf.ag_se.browser.exception.ScriptDiscardedException;
+import de.fu_berlin.inf.ag_se.browser.metrics.PageLoadPhase;
 import de.fu_berlin.inf.ag_se.browser.utils.IConverter;
 import org.apache.log4j.Logger;
 
-import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * This {@link IBrowser} behaves like the {@link Browser} but allows {@link IBrowserExtension}s
  * to be automatically loaded when the requested {@link java.net.URI} was loaded.
+ * <p/>
+ * Extensions can also be {@link #requireExtension(IBrowserExtension) required} later on, e.g. once
+ * a listener that depends on them is added. They are then injected into the current page and
+ * every page loaded afterwards. Extensions registered with the {@link ExtensionRegistry} are only loaded
+ * if they are passed to the constructor, e.g. using {@link ExtensionRegistry#getExtensions(String...)}.
  *
  * @author bkahlert
  */
@@ -21,11 +39,17 @@ public class ExtendedBrowser extends Browser {
     private static final Logger LOGGER = Logger
             .getLogger(ExtendedBrowser.class);
 
-    private final Iterable<BrowserExtension> extensions;
+    private final Set<IBrowserExtension> extensions = new CopyOnWriteArraySet<IBrowserExtension>();
+
+    /**
+     * The extensions passed to the constructor, which are kept by {@link #resetConfiguration()}.
+     */
+    private final Set<IBrowserExtension> initialExtensions;
 
-    public ExtendedBrowser(InternalBrowserWrapper internalWrapper, Iterable<BrowserExtension> extensions) {
+    public ExtendedBrowser(InternalBrowserWrapper internalWrapper, Iterable<? extends IBrowserExtension> extensions) {
         super(internalWrapper);
-        this.extensions = extensions;
+        Iterables.addAll(this.extensions, extensions);
+        this.initialExtensions = ImmutableSet.copyOf(this.extensions);
 
         /*
          * TODO FIX BUG: afterCompletion is called after the DOMReady scripts.
@@ -34,62 +58,107 @@ public class ExtendedBrowser extends Browser {
         executeAfterCompletion(new Runnable() {
             @Override
             public void run() {
-                for (BrowserExtension extension : ExtendedBrowser.this.extensions) {
-                    if (!hasExtension(extension)) {
-                        if (!addExtension(extension)) {
-                            LOGGER.error("Error loading " + extension);
+                loadExtensions();
+            }
+        }, PageLoadPhase.EXTENSIONS);
+    }
+
+    /**
+     * Makes sure the given extension is loaded in the current page, if it is already loaded,
+     * and all pages loaded afterwards.
+     * May be called from whatever thread.
+     */
+    protected void requireExtension(IBrowserExtension extension) {
+        checkNotNull(extension);
+        if (!extensions.add(extension)) {
+            return;
+        }
+        /*
+         * The extension is injected even if the page is still loading, as loadExtensions() may already
+         * have read the extensions. Scripts run during loading are queued until the completion
+         * runnables have finished, so the check script skips the injection if loadExtensions()
+         * picked up the extension nevertheless.
+         */
+        final ExtensionBundle bundle;
+        try {
+            bundle = ExtensionBundle.get(Collections.singletonList(extension));
+        } catch (IOException e) {
+            LOGGER.error("Could not read the extension " + extension, e);
+            return;
+        }
+        ListenableFuture<List<String>> failed = Futures.transformAsync(run(bundle.getCheckScript(), IConverter.CONVERTER_STRING),
+                new AsyncFunction<String, List<String>>() {
+                    @Override
+                    public ListenableFuture<List<String>> apply(String checkResult) {
+                        if (ExtensionBundle.isComplete(checkResult)) {
+                            return Futures.immediateFuture(Collections.<String>emptyList());
                         }
+                        return run(bundle.getInjectionScript(checkResult), IConverter.CONVERTER_STRINGLIST);
                     }
+                }, MoreExecutors.directExecutor());
+        Futures.addCallback(failed, new FutureCallback<List<String>>() {
+            @Override
+            public void onSuccess(List<String> failed) {
+                logResult(bundle, failed);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                if (t instanceof ScriptDiscardedException) {
+                    // the extension is loaded together with the others once the next page is loaded
+                    LOGGER.debug("Postponed loading the extensions " + bundle.getExtensions() + " to the next page");
+                    return;
                 }
+                LOGGER.error("Could not load the extensions " + bundle.getExtensions(), t);
             }
-        });
+        }, MoreExecutors.directExecutor());
     }
 
-    private Boolean hasExtension(BrowserExtension extension) {
-        return runImmediately(extension.getVerificationScript(), IConverter.CONVERTER_BOOLEAN);
+    /**
+     * Also forgets the extensions that were required after construction.
+     * They are no longer loaded into the pages loaded afterwards.
+     */
+    @Override
+    public void resetConfiguration() {
+        super.resetConfiguration();
+        extensions.retainAll(initialExtensions);
     }
 
-    private Boolean addExtension(BrowserExtension extension) {
-        for (BrowserExtension dependency : extension.getDependencies()) {
-            if (!this.addExtension(dependency)) {
-                LOGGER.error("Dependency "
-                        + dependency.getName()
-                        + " could not be loaded.");
-                return false;
-            }
+    /**
+     * Loads all extensions that are not yet loaded. One evaluation checks which extensions are missing,
+     * another one injects them if necessary.
+     */
+    private void loadExtensions() {
+        ExtensionBundle bundle;
+        try {
+            bundle = ExtensionBundle.get(extensions);
+        } catch (IOException e) {
+            LOGGER.error("Could not read the extensions " + extensions, e);
+            return;
         }
-
-        for (File jsExtension : extension.getJsExtensions()) {
-            // by running the extension directly we execute it synchronously
-            // otherwise a loader library would be necessary to satisfy the
-            // loading dependencies
-            try {
-                if (!runImmediately(JavascriptString.embedContentsIntoScriptTag(jsExtension), IConverter.CONVERTER_BOOLEAN)) {
-                    LOGGER.error("Could not load the JS extension \"" + extension.getName() + "\".");
-                    return false;
-                }
-            } catch (RuntimeException e) {
-                LOGGER.error("Could not load the JS extension \"" + extension.getName() + "\".", e);
-                return false;
-            } catch (IOException e) {
-                LOGGER.error("Could not load the JS extension \"" + extension.getName() + "\".", e);
-            }
-            LOGGER.info("Loaded \"" + jsExtension + " successfully.");
+        if (bundle.getExtensions().isEmpty()) {
+            return;
         }
 
-        for (File cssExtension : extension.getCssExtensions()) {
-            try {
-                runImmediately(JavascriptString.createCssFileInjectionScript(cssExtension), IConverter.CONVERTER_BOOLEAN);
-            } catch (RuntimeException e) {
-                LOGGER.error("Could not load the JS extension \"" + extension.getName() + "\".", e.getCause());
-                return false;
-            } catch (IOException e) {
-                LOGGER.error("Could not load the JS extension \"" + extension.getName() + "\".", e.getCause());
-                return false;
+        List<String> failed;
+        try {
+            String checkResult = runImmediately(bundle.getCheckScript(), IConverter.CONVERTER_STRING);
+            if (ExtensionBundle.isComplete(checkResult)) {
+                return;
             }
-            LOGGER.info("Loaded \"" + cssExtension + " successfully.");
+            failed = runImmediately(bundle.getInjectionScript(checkResult), IConverter.CONVERTER_STRINGLIST);
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not load the extensions " + bundle.getExtensions(), e);
+            return;
         }
+        logResult(bundle, failed);
+    }
 
-        return true;
+    private static void logResult(ExtensionBundle bundle, List<String> failed) {
+        if (failed == null || !failed.isEmpty()) {
+            LOGGER.error("Error loading " + (failed != null ? failed : bundle.getExtensions()));
+        } else {
+            LOGGER.info("Loaded " + bundle.getExtensions() + " successfully.");
+        }
     }
 }
@@ -0,0 +1,196 @@
+package de.fu_berlin.inf.ag_se.browser.extensions;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The scripts and stylesheets of a combination of {@link IBrowserExtension}s and their dependencies,
+ * sorted so that each extension follows its dependencies.
+ * <p/>
+ * Loading a bundle takes two evaluations: the {@link #getCheckScript() check script} runs all
+ * verification scripts at once and the {@link #getInjectionScript(String) injection script}
+ * then loads the missing extensions, each dependency only once. The check script also reports whether
+ * the page may load the extensions from the {@link de.fu_berlin.inf.ag_se.browser.server.ResourceServer},
+ * i.e. whether it is no <code>https</code> page and supports cross-origin requests; otherwise they are inlined.
+ * Bundles are built from the cached {@link ExtensionPayload}s on first use and shared
+ * by all browsers using the same combination, just like the injection scripts
+ * for each combination of missing extensions.
+ */
+final class ExtensionBundle {
+
+    static final char LOADED = '1';
+    static final char MISSING = '0';
+    static final char SERVED = 's';
+    static final char INLINED = 'i';
+
+    // keyed by the extension ids, as extensions need not implement equals
+    private static final ConcurrentMap<List<String>, List<IBrowserExtension>> PLANS
+            = new ConcurrentHashMap<List<String>, List<IBrowserExtension>>();
+    private static final ConcurrentMap<List<String>, ExtensionBundle> BUNDLES
+            = new ConcurrentHashMap<List<String>, ExtensionBundle>();
+
+    private final List<IBrowserExtension> extensions;
+    private final List<ExtensionPayload> payloads;
+    private final String checkScript;
+    private final ConcurrentMap<String, String> injectionScripts = new ConcurrentHashMap<String, String>();
+
+    private ExtensionBundle(List<IBrowserExtension> extensions) throws IOException {
+        this.extensions = extensions;
+        this.payloads = new ArrayList<ExtensionPayload>(extensions.size());
+        for (IBrowserExtension extension : extensions) {
+            payloads.add(ExtensionPayload.get(extension));
+        }
+        this.checkScript = createCheckScript(extensions);
+    }
+
+    /**
+     * Returns the bundle containing the given extensions and their dependencies.
+     *
+     * @throws IOException if one of the files cannot be read
+     */
+    static ExtensionBundle get(Iterable<? extends IBrowserExtension> extensions) throws IOException {
+        List<String> requested = getIds(extensions);
+        List<IBrowserExtension> resolved = PLANS.get(requested);
+        if (resolved == null) {
+            resolved = resolve(extensions);
+            PLANS.putIfAbsent(requested, resolved);
+        }
+        List<String> key = getIds(resolved);
+        ExtensionBundle bundle = BUNDLES.get(key);
+        if (bundle == null || (ExtensionPayload.isDevMode() && !bundle.isUpToDate())) {
+            bundle = new ExtensionBundle(resolved);
+            BUNDLES.put(key, bundle);
+        }
+        return bundle;
+    }
+
+    private static List<String> getIds(Iterable<? extends IBrowserExtension> extensions) {
+        List<String> ids = new ArrayList<String>();
+        for (IBrowserExtension extension : extensions) {
+            ids.add(ExtensionRegistry.getId(extension));
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the given extensions and their dependencies, each exactly once and after its dependencies.
+     *
+     * @throws IllegalArgumentException if the dependencies contain a cycle
+     */
+    static List<IBrowserExtension> resolve(Iterable<? extends IBrowserExtension> extensions) {
+        Map<String, IBrowserExtension> resolved = new LinkedHashMap<String, IBrowserExtension>();
+        for (IBrowserExtension extension : extensions) {
+            resolve(extension, resolved, new LinkedHashSet<String>());
+        }
+        return Collections.unmodifiableList(new ArrayList<IBrowserExtension>(resolved.values()));
+    }
+
+    private static void resolve(IBrowserExtension extension, Map<String, IBrowserExtension> resolved, Set<String> path) {
+        String id = ExtensionRegistry.getId(extension);
+        if (resolved.containsKey(id)) {
+            return;
+        }
+        if (!path.add(id)) {
+            throw new IllegalArgumentException("Cyclic dependency " + path + " -> " + id);
+        }
+        for (IBrowserExtension dependency : extension.getDependencies()) {
+            resolve(dependency, resolved, path);
+        }
+        path.remove(id);
+        resolved.put(id, extension);
+    }
+
+    /**
+     * Returns the extensions in the order they are loaded.
+     */
+    List<IBrowserExtension> getExtensions() {
+        return extensions;
+    }
+
+    /**
+     * Returns a script that runs the verification scripts of all extensions and returns a string
+     * with one character per extension, {@value #LOADED} if it is loaded and {@value #MISSING} if not,
+     * followed by {@value #SERVED} if the page may load resources from the resource server
+     * and {@value #INLINED} if not.
+     */
+    String getCheckScript() {
+        return checkScript;
+    }
+
+    /**
+     * Returns a script that loads the extensions marked as {@value #MISSING} in the given result
+     * of the {@link #getCheckScript() check script} and returns the names of those whose verification
+     * script fails afterwards.
+     *
+     * @throws IllegalArgumentException if the result does not match the extensions
+     */
+    String getInjectionScript(String checkResult) {
+        if (checkResult == null || checkResult.length() != extensions.size() + 1
+                || (checkResult.charAt(extensions.size()) != SERVED && checkResult.charAt(extensions.size()) != INLINED)) {
+            throw new IllegalArgumentException("Invalid check result " + checkResult + " for " + extensions);
+        }
+        String injectionScript = injectionScripts.get(checkResult);
+        if (injectionScript == null) {
+            injectionScript = createInjectionScript(checkResult);
+            injectionScripts.putIfAbsent(checkResult, injectionScript);
+        }
+        return injectionScript;
+    }
+
+    /**
+     * Returns whether the given result of the {@link #getCheckScript() check script} reports all extensions as loaded.
+     */
+    static boolean isComplete(String checkResult) {
+        return checkResult != null && checkResult.indexOf(MISSING) == -1;
+    }
+
+    private boolean isUpToDate() throws IOException {
+        for (int i = 0; i < extensions.size(); i++) {
+            if (ExtensionPayload.get(extensions.get(i)) != payloads.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String createCheckScript(List<IBrowserExtension> extensions) {
+        StringBuilder script = new StringBuilder("return \"\"");
+        for (IBrowserExtension extension : extensions) {
+            script.append(" + (").append(ExtensionPayload.createVerificationCall(extension))
+                    .append(" ? \"").append(LOADED).append("\" : \"").append(MISSING).append("\")");
+        }
+        return script.append(" + (location.protocol != \"https:\" && typeof XMLHttpRequest != \"undefined\"")
+                .append(" && \"withCredentials\" in new XMLHttpRequest() ? \"").append(SERVED)
+                .append("\" : \"").append(INLINED).append("\");").toString();
+    }
+
+    private String createInjectionScript(String checkResult) {
+        // by running the bundle as a script element it is executed synchronously and in the global scope
+        StringBuilder script = new StringBuilder("var script=document.createElement(\"script\"); script.type=\"text/javascript\"; script.text=\"");
+        boolean served = checkResult.charAt(extensions.size()) == SERVED;
+        for (int i = 0; i < payloads.size(); i++) {
+            if (checkResult.charAt(i) != LOADED) {
+                script.append(payloads.get(i).getEscapedScript(served));
+            }
+        }
+        script.append("\"; document.getElementsByTagName(\"head\")[0].appendChild(script); var failed=[];");
+        for (int i = 0; i < extensions.size(); i++) {
+            if (checkResult.charAt(i) != LOADED) {
+                IBrowserExtension extension = extensions.get(i);
+                script.append("if (!").append(ExtensionPayload.createVerificationCall(extension)).append(") failed.push(\"")
+                        .append(StringEscapeUtils.escapeJavaScript(extension.getName())).append("\");");
+            }
+        }
+        return script.append("return failed;").toString();
+    }
+}
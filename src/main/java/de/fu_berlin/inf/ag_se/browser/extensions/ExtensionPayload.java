@@ -0,0 +1,173 @@
+package de.fu_berlin.inf.ag_se.browser.extensions;
+
+import de.fu_berlin.inf.ag_se.browser.JavascriptString;
+import de.fu_berlin.inf.ag_se.browser.server.ResourceServer;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The already escaped part of an {@link ExtensionBundle} that loads one {@link IBrowserExtension}.
+ * <p/>
+ * Payloads are read and escaped once per process and {@link ExtensionRegistry#getId(IBrowserExtension) extension id}.
+ * If the system property <code>{@value #DEV_MODE_PROPERTY}</code> is <code>true</code>, a payload is rebuilt
+ * as soon as one of its files has been modified, so that changed scripts are picked up
+ * on the next page load without restarting the application.
+ * <p/>
+ * The scripts and stylesheets of the {@link BrowserExtension}s can also be loaded from the {@link ResourceServer},
+ * so that the engine can cache them and relative URLs like Bootstrap's fonts resolve. The scripts are fetched
+ * by synchronous requests and run as inline script elements, so that they are still loaded once the payload
+ * has run. As links to the server are mixed content on <code>https</code> pages, each payload also comes
+ * with everything inlined, which is used there and for all other extensions and in dev mode.
+ */
+final class ExtensionPayload {
+
+    private static final Logger LOGGER = Logger.getLogger(ExtensionPayload.class);
+
+    static final String DEV_MODE_PROPERTY = "de.fu_berlin.inf.ag_se.browser.devMode";
+
+    private static final ConcurrentMap<String, ExtensionPayload> PAYLOADS
+            = new ConcurrentHashMap<String, ExtensionPayload>();
+
+    private final String script;
+    private final String servedScript;
+    private final String contentHash;
+    private final long lastModified;
+
+    private ExtensionPayload(IBrowserExtension extension) throws IOException {
+        this.lastModified = getLastModified(extension);
+        String inlinedScript = createScript(extension);
+        this.script = StringEscapeUtils.escapeJavaScript(inlinedScript);
+        String servedScript = createServedScript(extension);
+        this.servedScript = servedScript != null ? StringEscapeUtils.escapeJavaScript(servedScript) : script;
+        // the served resources' URIs change with every process, their contents do not
+        this.contentHash = createHash(inlinedScript);
+    }
+
+    /**
+     * Returns the payload of the given extension.
+     *
+     * @throws IOException if one of the extension's files cannot be read
+     */
+    static ExtensionPayload get(IBrowserExtension extension) throws IOException {
+        String id = ExtensionRegistry.getId(extension);
+        ExtensionPayload payload = PAYLOADS.get(id);
+        if (payload == null || (isDevMode() && payload.lastModified != getLastModified(extension))) {
+            // concurrent rebuilds yield the same payload, so the last one may win
+            payload = new ExtensionPayload(extension);
+            PAYLOADS.put(id, payload);
+        }
+        return payload;
+    }
+
+    static boolean isDevMode() {
+        return Boolean.getBoolean(DEV_MODE_PROPERTY);
+    }
+
+    /**
+     * Returns the script that loads the extension unless its verification script succeeds,
+     * escaped to be embedded in a JavaScript string literal.
+     *
+     * @param served whether the page may load resources from the {@link ResourceServer}
+     */
+    String getEscapedScript(boolean served) {
+        return served ? servedScript : script;
+    }
+
+    /**
+     * Returns the SHA-1 hash of the unescaped script with all resources inlined as a hexadecimal string.
+     */
+    String getContentHash() {
+        return contentHash;
+    }
+
+    private static String createScript(IBrowserExtension extension) throws IOException {
+        StringBuilder script = createScriptStart(extension);
+        for (File jsExtension : extension.getJsExtensions()) {
+            script.append(FileUtils.readFileToString(jsExtension, "UTF-8")).append("\n;\n");
+        }
+        for (File cssExtension : extension.getCssExtensions()) {
+            script.append(JavascriptString.createCssFileInjectionScript(cssExtension)).append(";\n");
+        }
+        return script.append("}\n").toString();
+    }
+
+    /**
+     * Returns the script that loads the extension's scripts and stylesheets from the {@link ResourceServer}.
+     *
+     * @return the script or null if the extension has to be inlined
+     */
+    private static String createServedScript(IBrowserExtension extension) {
+        if (!(extension instanceof BrowserExtension) || isDevMode()) {
+            return null;
+        }
+        BrowserExtension browserExtension = (BrowserExtension) extension;
+        ResourceServer server;
+        try {
+            server = ResourceServer.getInstance();
+        } catch (IOException e) {
+            LOGGER.warn("Could not start the resource server, inlining " + extension.getName(), e);
+            return null;
+        }
+        StringBuilder script = createScriptStart(extension);
+        for (String jsResource : browserExtension.getJsResources()) {
+            script.append(createServedJsInjectionScript(server.getClasspathUri(jsResource))).append(";\n");
+        }
+        for (String cssResource : browserExtension.getCssResources()) {
+            script.append(JavascriptString.createCssFileInjectionScript(server.getClasspathUri(cssResource))).append(";\n");
+        }
+        return script.append("}\n").toString();
+    }
+
+    private static StringBuilder createScriptStart(IBrowserExtension extension) {
+        return new StringBuilder("/* ").append(extension.getName()).append(" */\n")
+                .append("if (!").append(createVerificationCall(extension)).append(") {\n");
+    }
+
+    /**
+     * Returns a script that fetches the given script and runs it before it returns.
+     * A script element with a <code>src</code> would only run once the page's current script has finished.
+     */
+    private static String createServedJsInjectionScript(URI uri) {
+        return "(function(){var request=new XMLHttpRequest(); request.open(\"GET\", \"" + uri + "\", false); request.send(null);"
+                + " var script=document.createElement(\"script\"); script.type=\"text/javascript\"; script.text=request.responseText;"
+                + " document.getElementsByTagName(\"head\")[0].appendChild(script); })()";
+    }
+
+    static String createVerificationCall(IBrowserExtension extension) {
+        return "(function(){" + extension.getVerificationScript() + "})()";
+    }
+
+    private static long getLastModified(IBrowserExtension extension) {
+        long lastModified = 0;
+        for (File file : extension.getJsExtensions()) {
+            lastModified = Math.max(lastModified, file.lastModified());
+        }
+        for (File file : extension.getCssExtensions()) {
+            lastModified = Math.max(lastModified, file.lastModified());
+        }
+        return lastModified;
+    }
+
+    private static String createHash(String script) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(script.getBytes(Charset.forName("UTF-8")));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package de.fu_berlin.inf.ag_se.browser.extensions;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Knows the built-in {@link BrowserExtension}s and the {@link IBrowserExtension}s registered as
+ * services. An {@link ExtendedBrowser} only loads the registered extensions it was created with,
+ * which can be looked up by name using {@link #getExtensions(String...)}.
+ * <p/>
+ * Registered extensions take the same path as the built-in ones: their dependencies are resolved,
+ * each extension is injected only once and its payload is read once per process.
+ * <p/>
+ * May be used from whatever thread.
+ */
+public class ExtensionRegistry {
+
+    private static final Logger LOGGER = Logger.getLogger(ExtensionRegistry.class);
+
+    private static ExtensionRegistry instance;
+
+    private final List<IBrowserExtension> registeredExtensions;
+    private final Map<String, IBrowserExtension> extensionsByName = new LinkedHashMap<String, IBrowserExtension>();
+
+    ExtensionRegistry(Iterator<IBrowserExtension> services) {
+        for (BrowserExtension extension : BrowserExtension.values()) {
+            extensionsByName.put(extension.getName(), extension);
+        }
+        List<IBrowserExtension> registeredExtensions = new ArrayList<IBrowserExtension>();
+        while (true) {
+            IBrowserExtension extension;
+            try {
+                if (!services.hasNext()) {
+                    break;
+                }
+                extension = services.next();
+            } catch (ServiceConfigurationError e) {
+                LOGGER.error("Error loading a browser extension", e);
+                continue;
+            }
+            IBrowserExtension existing = extensionsByName.get(extension.getName());
+            if (existing != null) {
+                LOGGER.warn("Ignoring " + getId(extension) + " as " + getId(existing) + " is already registered");
+                continue;
+            }
+            extensionsByName.put(extension.getName(), extension);
+            registeredExtensions.add(extension);
+            LOGGER.info("Registered browser extension " + getId(extension));
+        }
+        this.registeredExtensions = Collections.unmodifiableList(registeredExtensions);
+    }
+
+    /**
+     * Returns the registry containing the extensions registered with the context class loader.
+     * The services are looked up on the first call only.
+     */
+    public static synchronized ExtensionRegistry getDefault() {
+        if (instance == null) {
+            instance = new ExtensionRegistry(ServiceLoader.load(IBrowserExtension.class).iterator());
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the extensions registered as services.
+     *
+     * @return immutable list that is never <code>null</code>
+     */
+    public List<IBrowserExtension> getRegisteredExtensions() {
+        return registeredExtensions;
+    }
+
+    /**
+     * Returns the built-in or registered extension with the given name.
+     *
+     * @return the extension or <code>null</code> if there is none
+     */
+    public IBrowserExtension getExtension(String name) {
+        return extensionsByName.get(name);
+    }
+
+    /**
+     * Returns the SHA-1 hash of everything the given extension injects. It changes
+     * whenever one of its scripts or stylesheets is changed.
+     *
+     * @throws IOException if one of the extension's files cannot be read
+     */
+    public String getContentHash(IBrowserExtension extension) throws IOException {
+        return ExtensionPayload.get(extension).getContentHash();
+    }
+
+    /**
+     * Returns the string that identifies the given extension, consisting of its name and version.
+     */
+    static String getId(IBrowserExtension extension) {
+        return extension.getName() + "@" + extension.getVersion();
+    }
+
+    /**
+     * Returns the built-in or registered extensions with the given names, e.g. to create an {@link ExtendedBrowser} with.
+     *
+     * @return the extensions in the order of the given names
+     * @throws IllegalArgumentException if there is no extension with one of the given names
+     */
+    public List<IBrowserExtension> getExtensions(String... names) {
+        List<IBrowserExtension> extensions = new ArrayList<IBrowserExtension>(names.length);
+        for (String name : names) {
+            IBrowserExtension extension = getExtension(name);
+            if (extension == null) {
+                throw new IllegalArgumentException("There is no browser extension named " + name);
+            }
+            extensions.add(extension);
+        }
+        return extensions;
+    }
+}
@@ -3,53 +3,67 @@ package de.fu_berlin.inf.ag_se.browser.extensions;
 import de.fu_berlin.inf.ag_se.browser.IBrowser;
 
 import java.io.File;
-import java.net.URI;
 import java.util.List;
 
 /**
  * Interface for extension that can be used with {@link ExtendedBrowser}s.
  * <p>
  * Examples are jQuery and Bootstrap.
- * 
+ * <p>
+ * Besides the built-in {@link BrowserExtension}s, implementations can be registered as
+ * services in <code>META-INF/services/de.fu_berlin.inf.ag_se.browser.extensions.IBrowserExtension</code>.
+ * The {@link ExtensionRegistry} finds them using a {@link java.util.ServiceLoader}, and an
+ * {@link ExtendedBrowser} loads those it was created with. Extensions are identified by their
+ * name and version, so implementations do not need to override <code>equals</code>.
+ *
  * @author bkahlert
- * 
+ *
  */
 public interface IBrowserExtension {
 
 	/**
 	 * Returns this extension's name.
-	 * 
+	 *
 	 * @return
 	 */
 	public String getName();
 
+	/**
+	 * Returns this extension's version.
+	 * <p>
+	 * The scripts of an extension are read once per name and version and process.
+	 *
+	 * @return
+	 */
+	public String getVersion();
+
 	/**
 	 * Returns the script that must return a boolean which tells if the
 	 * {@link IBrowser} had loaded the extensions successfully.
-	 * 
+	 *
 	 * @return
 	 */
 	public String getVerificationScript();
 
 	/**
 	 * Returns the paths to the JS files that make up this extension.
-	 * 
+	 *
 	 * @return immutable list that is never <code>null</code>
 	 */
 	public List<File> getJsExtensions();
 
 	/**
 	 * Returns the paths to the CSS files that make up this extension.
-	 * 
+	 *
 	 * @return immutable list that is never <code>null</code>
 	 */
-	public List<URI> getCssExtensions();
+	public List<File> getCssExtensions();
 
 	/**
 	 * Returns the {@link IBrowserExtension}s this extension requires.
-	 * 
+	 *
 	 * @return immutable list that is never <code>null</code>
 	 */
-	public List<Class<? extends IBrowserExtension>> getDependencies();
+	public List<? extends IBrowserExtension> getDependencies();
 
-}
\ No newline at end of file
+}
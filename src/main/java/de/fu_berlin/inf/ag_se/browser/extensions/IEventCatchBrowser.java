@@ -1,14 +1,81 @@
 package de.fu_berlin.inf.ag_se.browser.extensions;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import de.fu_berlin.inf.ag_se.browser.IBrowser;
+import de.fu_berlin.inf.ag_se.browser.html.IElement;
 import de.fu_berlin.inf.ag_se.browser.listener.IAnchorListener;
 import de.fu_berlin.inf.ag_se.browser.listener.IDNDListener;
 import de.fu_berlin.inf.ag_se.browser.listener.IFocusListener;
 import de.fu_berlin.inf.ag_se.browser.listener.IMouseListener;
 
+/**
+ * A browser that forwards the events of the loaded page to listeners.
+ * <p>
+ * The page only handles the events of a category, e.g. mouse events, while at least
+ * one listener of the corresponding type is registered.
+ */
 @SuppressWarnings("UnusedDeclaration")
 public interface IEventCatchBrowser extends IBrowser {
 
+    /**
+     * Event channel rate that forwards mouse events in batches once per animation frame.
+     *
+     * @see #setEventChannelRate(int)
+     */
+    int EVENT_CHANNEL_PER_FRAME = 0;
+
+    /**
+     * Event channel rate that forwards every single mouse event as soon as it occurs.
+     *
+     * @see #setEventChannelRate(int)
+     */
+    int EVENT_CHANNEL_EXACT = -1;
+
+    /**
+     * Sets how often mouse events are forwarded to the {@link IMouseListener}s.
+     * <p>
+     * By default the page collects the events and forwards them in batches once per
+     * animation frame ({@link #EVENT_CHANNEL_PER_FRAME}), which keeps the number of calls into Java
+     * independent of the number of events. Consecutive mouse moves within a batch are
+     * coalesced to the last one. {@link #EVENT_CHANNEL_EXACT} forwards every event on its own.
+     *
+     * May be called from whatever thread.
+     *
+     * @param batchesPerSecond the number of batches per second, {@link #EVENT_CHANNEL_PER_FRAME}
+     *                         or {@link #EVENT_CHANNEL_EXACT}
+     */
+    void setEventChannelRate(int batchesPerSecond);
+
+    /**
+     * Sets whether the page describes the elements passed to the listeners by a
+     * bounded descriptor instead of their complete markup.
+     * <p>
+     * By default each event carries a deep copy of the element's markup, which is costly for
+     * elements with many children. Descriptors only contain the element's tag name, attributes
+     * and the beginning of its text, so {@link IElement#toHtml()} does not contain the children.
+     * The complete markup can be fetched using {@link #fetchHtml(IElement)}.
+     *
+     * May be called from whatever thread.
+     *
+     * @param enabled <code>true</code> to send descriptors, <code>false</code> to send the markup
+     */
+    void setElementDescriptors(boolean enabled);
+
+    /**
+     * Returns the complete markup of an element passed to a listener.
+     * <p>
+     * If the element has been sent as a descriptor, the markup is fetched from the page
+     * as long as the element is among the most recently described ones of the still loaded page;
+     * otherwise the result is <code>null</code>.
+     *
+     * May be called from whatever thread.
+     *
+     * @param element the element passed to a listener
+     * @return the element's markup
+     * @throws NullPointerException if element is null
+     */
+    ListenableFuture<String> fetchHtml(IElement element);
+
     /**
      * Adds an {@link IAnchorListener}
      * to the browser.
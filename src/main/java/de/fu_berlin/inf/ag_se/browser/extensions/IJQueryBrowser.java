@@ -1,5 +1,6 @@
 package de.fu_berlin.inf.ag_se.browser.extensions;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import de.fu_berlin.inf.ag_se.browser.IBrowser;
 import de.fu_berlin.inf.ag_se.browser.html.IElement;
 import de.fu_berlin.inf.ag_se.browser.html.ISelector;
@@ -21,9 +22,9 @@ public interface IJQueryBrowser extends IBrowser {
 	 * @param selector the selector to look for in the website
 	 * @return a boolean future indicating the presence of the element
 	 */
-	public Future<Boolean> containsElement(ISelector selector);
+	public ListenableFuture<Boolean> containsElement(ISelector selector);
 
-	public Future<Point> getRelativePosition(ISelector selector);
+	public ListenableFuture<Point> getRelativePosition(ISelector selector);
 
 	/**
 	 * Returns the current scroll position. This method can also be called when
@@ -32,9 +33,9 @@ public interface IJQueryBrowser extends IBrowser {
 	 * 
 	 * @return
 	 */
-	public Future<Point> getScrollPosition();
+	public ListenableFuture<Point> getScrollPosition();
 
-	public Future<Point> getScrollPosition(ISelector selector);
+	public ListenableFuture<Point> getScrollPosition(ISelector selector);
 
 	/**
 	 * Scrolls to the given position.
@@ -43,7 +44,7 @@ public interface IJQueryBrowser extends IBrowser {
 	 * @param y
 	 * @return false if no scroll action was necessary
 	 */
-	public Future<Boolean> scrollTo(final int x, final int y);
+	public ListenableFuture<Boolean> scrollTo(final int x, final int y);
 
 	/**
 	 * Scrolls to the given position.
@@ -51,7 +52,7 @@ public interface IJQueryBrowser extends IBrowser {
 	 * @param pos
 	 * @return false if no scroll action was necessary
 	 */
-	public Future<Boolean> scrollTo(Point pos);
+	public ListenableFuture<Boolean> scrollTo(Point pos);
 
 	/**
 	 * Scrolls to the given element.
@@ -59,7 +60,7 @@ public interface IJQueryBrowser extends IBrowser {
 	 * @param selector
 	 * @return false if no scroll action was necessary
 	 */
-	public Future<Boolean> scrollTo(ISelector selector);
+	public ListenableFuture<Boolean> scrollTo(ISelector selector);
 
 	/**
 	 * Given the first element specified by the given selector the focus.
@@ -68,9 +69,9 @@ public interface IJQueryBrowser extends IBrowser {
 	 * 
 	 * @see <a href="http://api.jquery.com/focus/">api.jquery.com/focus/</a>
 	 */
-	public Future<Object> focus(ISelector selector);
+	public ListenableFuture<Object> focus(ISelector selector);
 
-	Future<IElement> getFocusedElement();
+	ListenableFuture<IElement> getFocusedElement();
 
 	/**
 	 * Removes the focus from the first element specified by the given selector.
@@ -79,7 +80,7 @@ public interface IJQueryBrowser extends IBrowser {
 	 * 
 	 * @see <a href="http://api.jquery.com/focus/">api.jquery.com/blur/</a>
 	 */
-	public Future<Object> blur(ISelector selector);
+	public ListenableFuture<Object> blur(ISelector selector);
 
 	/**
 	 * Triggers a key up event on the elements specified by the given selector.
@@ -89,7 +90,7 @@ public interface IJQueryBrowser extends IBrowser {
 	 * 
 	 * @see <a href="http://api.jquery.com/keyup/">api.jquery.com/keyup/</a>
 	 */
-	public Future<Object> keyUp(ISelector selector);
+	public ListenableFuture<Object> keyUp(ISelector selector);
 
 	/**
 	 * Triggers a key down event on the elements specified by the given
@@ -99,7 +100,7 @@ public interface IJQueryBrowser extends IBrowser {
 	 * 
 	 * @see <a href="http://api.jquery.com/keydown/">api.jquery.com/keydown/</a>
 	 */
-	public Future<Object> keyDown(ISelector selector);
+	public ListenableFuture<Object> keyDown(ISelector selector);
 
 	/**
 	 * Triggers a key press event on the elements specified by the given
@@ -110,7 +111,7 @@ public interface IJQueryBrowser extends IBrowser {
 	 * @see <a
 	 *      href="http://api.jquery.com/keypress/">api.jquery.com/keypress/</a>
 	 */
-	public Future<Object> keyPress(ISelector selector);
+	public ListenableFuture<Object> keyPress(ISelector selector);
 
 	/**
 	 * Triggers a key press event on the elements specified by the given
@@ -125,7 +126,7 @@ public interface IJQueryBrowser extends IBrowser {
 	 * 
 	 * @see <a href="http://api.jquery.com/val/">api.jquery.com/val/</a>
 	 */
-	public Future<Object> forceKeyPress(ISelector selector);
+	public ListenableFuture<Object> forceKeyPress(ISelector selector);
 
 	/**
 	 * Not only sets a field's content but tries to simulate an actual user
@@ -135,7 +136,7 @@ public interface IJQueryBrowser extends IBrowser {
 	 * @param text
 	 * @return
 	 */
-	public Future<Object> simulateTyping(ISelector selector, String text);
+	public ListenableFuture<Object> simulateTyping(ISelector selector, String text);
 
 	/**
 	 * Sets the given value of the elements specified by the given selector.
@@ -145,7 +146,7 @@ public interface IJQueryBrowser extends IBrowser {
 	 * 
 	 * @see <a href="http://api.jquery.com/val/">api.jquery.com/val/</a>
 	 */
-	public Future<Object> val(ISelector selector, String value);
+	public ListenableFuture<Object> val(ISelector selector, String value);
 
 	/**
 	 * Submits the form belonging to the element(s) specified by the given
@@ -154,5 +155,5 @@ public interface IJQueryBrowser extends IBrowser {
 	 * @param selector
 	 * @return
 	 */
-	public Future<Object> submit(ISelector selector);
+	public ListenableFuture<Object> submit(ISelector selector);
 }
\ No newline at end of file
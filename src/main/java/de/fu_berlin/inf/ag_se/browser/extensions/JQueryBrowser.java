@@ -1,9 +1,11 @@
 package de.fu_berlin.inf.ag_se.browser.extensions;
 
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import de.fu_berlin.inf.ag_se.browser.InternalBrowserWrapper;
-import de.fu_berlin.inf.ag_se.browser.exception.ScriptExecutionException;
 import de.fu_berlin.inf.ag_se.browser.functions.CallbackFunction;
 import de.fu_berlin.inf.ag_se.browser.html.Element;
 import de.fu_berlin.inf.ag_se.browser.html.IElement;
@@ -14,8 +16,6 @@ import org.apache.log4j.Logger;
 
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 
 public class JQueryBrowser extends EventCatchBrowser implements IJQueryBrowser {
     private static final Logger LOGGER = Logger.getLogger(JQueryBrowser.class);
@@ -23,11 +23,11 @@ public class JQueryBrowser extends EventCatchBrowser implements IJQueryBrowser {
     private Point disposedScrollPosition = null;
 
     public JQueryBrowser(InternalBrowserWrapper internalBrowserWrapper) {
-        this(internalBrowserWrapper, Collections.<BrowserExtension>emptyList());
+        this(internalBrowserWrapper, Collections.<IBrowserExtension>emptyList());
     }
 
-    public JQueryBrowser(InternalBrowserWrapper internalBrowserWrapper, Iterable<BrowserExtension> extensions) {
-        super(internalBrowserWrapper, Iterables.concat(extensions, Arrays.asList(BrowserExtension.JQUERY_EXTENSION)));
+    public JQueryBrowser(InternalBrowserWrapper internalBrowserWrapper, Iterable<? extends IBrowserExtension> extensions) {
+        super(internalBrowserWrapper, Iterables.<IBrowserExtension>concat(extensions, Arrays.asList(BrowserExtension.JQUERY_EXTENSION)));
 //TODO this is called too late as the browser is already disposed
 //        runOnDisposal(new Runnable() {
 //            @Override
@@ -95,13 +95,13 @@ public class JQueryBrowser extends EventCatchBrowser implements IJQueryBrowser {
     }
 
     @Override
-    public Future<Boolean> containsElement(ISelector selector) {
+    public ListenableFuture<Boolean> containsElement(ISelector selector) {
         return this.run("return $('" + selector.toString() + "').length > 0;",
                 IConverter.CONVERTER_BOOLEAN);
     }
 
     @Override
-    public Future<Point> getScrollPosition() {
+    public ListenableFuture<Point> getScrollPosition() {
         if (this.disposedScrollPosition != null) {
             return Futures.immediateFuture(this.disposedScrollPosition);
         }
@@ -111,7 +111,7 @@ public class JQueryBrowser extends EventCatchBrowser implements IJQueryBrowser {
     }
 
     @Override
-    public Future<Point> getScrollPosition(final ISelector selector) {
+    public ListenableFuture<Point> getScrollPosition(final ISelector selector) {
         String jQuery = "jQuery('" + selector + "')";
         if (selector instanceof ISelector.IdSelector) {
             // preferred if id contains special characters
@@ -131,7 +131,7 @@ public class JQueryBrowser extends EventCatchBrowser implements IJQueryBrowser {
     }
 
     @Override
-    public Future<Point> getRelativePosition(final ISelector selector) {
+    public ListenableFuture<Point> getRelativePosition(final ISelector selector) {
         return JQueryBrowser.this
                 .run("var offset = jQuery('"
                                 + selector
@@ -140,58 +140,38 @@ public class JQueryBrowser extends EventCatchBrowser implements IJQueryBrowser {
     }
 
     @Override
-    public Future<Boolean> scrollTo(final int x, final int y) {
+    public ListenableFuture<Boolean> scrollTo(final int x, final int y) {
         String script = String
                 .format("if(jQuery(document).scrollLeft()!=%d||jQuery(document).scrollTop()!=%d){jQuery('html, body').animate({ scrollLeft: %d, scrollTop: %d }, 0);return true;}else{return false;}",
                         x, y, x, y);
-        return JQueryBrowser.this.run(script, IConverter.CONVERTER_BOOLEAN);
+        return JQueryBrowser.this.run("__scrollTo", script, IConverter.CONVERTER_BOOLEAN);
     }
 
     @Override
-    public Future<Boolean> scrollTo(Point pos) {
+    public ListenableFuture<Boolean> scrollTo(Point pos) {
         return this.scrollTo(pos.x, pos.y);
     }
 
     @Override
-    public Future<Boolean> scrollTo(final ISelector selector) {
-        return runWithCallback(getScrollPosition(selector), new CallbackFunction<Point, Boolean>() {
+    public ListenableFuture<Boolean> scrollTo(final ISelector selector) {
+        return Futures.transformAsync(getScrollPosition(selector), new AsyncFunction<Point, Boolean>() {
             @Override
-            public Boolean apply(Point input, Exception e) {
-                try {
-                    return JQueryBrowser.this.scrollTo(input).get();
-                } catch (InterruptedException e1) {
-                    Thread.currentThread().interrupt();
-                    return false;
-                } catch (ExecutionException e1) {
-                    throw new ScriptExecutionException("Could not execute scroll to", e);
+            public ListenableFuture<Boolean> apply(Point position) {
+                if (position == null) {
+                    return Futures.immediateFuture(false);
                 }
+                return JQueryBrowser.this.scrollTo(position);
             }
-        });
-//		return UIThreadAwareScheduledThreadPoolExecutor.getInstance().nonUIAsyncExec(JQueryBrowser.class, "Scroll To",
-//                new NoCheckedExceptionCallable<Boolean>() {
-//                    @Override
-//                    public Boolean call() {
-//                        Point pos = null;
-//                        try {
-//                            pos = JQueryBrowser.this.getScrollPosition(selector).get();
-//                            return JQueryBrowser.this.scrollTo(pos).get();
-//                        } catch (InterruptedException e) {
-//                            Thread.currentThread().interrupt();
-//                        } catch (ExecutionException e) {
-//                            throw new ScriptExecutionException("Could not execute scroll to", e);
-//                        }
-//                        return false;
-//                    }
-//                });
+        }, MoreExecutors.directExecutor());
     }
 
     @Override
-    public Future<Object> focus(ISelector selector) {
+    public ListenableFuture<Object> focus(ISelector selector) {
         return this.run(this.getFocusStmt(selector));
     }
 
     @Override
-    public Future<IElement> getFocusedElement() {
+    public ListenableFuture<IElement> getFocusedElement() {
         return run("return jQuery(document.activeElement).clone().wrap(\"<p>\").parent().html();", IConverter.CONVERTER_STRING,
                 new CallbackFunction<String, IElement>() {
                     @Override
@@ -223,32 +203,32 @@ public class JQueryBrowser extends EventCatchBrowser implements IJQueryBrowser {
     }
 
     @Override
-    public Future<Object> blur(ISelector selector) {
+    public ListenableFuture<Object> blur(ISelector selector) {
         return this.run(this.getBlurStmt(selector));
     }
 
     @Override
-    public Future<Object> keyUp(ISelector selector) {
+    public ListenableFuture<Object> keyUp(ISelector selector) {
         return this.run(this.getKeyUpStmt(selector));
     }
 
     @Override
-    public Future<Object> keyDown(ISelector selector) {
+    public ListenableFuture<Object> keyDown(ISelector selector) {
         return this.run(this.getKeyDownStmt(selector));
     }
 
     @Override
-    public Future<Object> keyPress(ISelector selector) {
+    public ListenableFuture<Object> keyPress(ISelector selector) {
         return this.run(this.getKeyPressStmt(selector));
     }
 
     @Override
-    public Future<Object> forceKeyPress(ISelector selector) {
+    public ListenableFuture<Object> forceKeyPress(ISelector selector) {
         return this.run(this.getForceKeyPressStmt(selector));
     }
 
     @Override
-    public Future<Object> simulateTyping(final ISelector selector,
+    public ListenableFuture<Object> simulateTyping(final ISelector selector,
                                          final String text) {
         // return ExecutorUtil.nonUIAsyncExec(new Callable<Object>() {
         // @Override
@@ -277,12 +257,12 @@ public class JQueryBrowser extends EventCatchBrowser implements IJQueryBrowser {
     }
 
     @Override
-    public Future<Object> val(ISelector selector, String value) {
-        return this.run(this.getValStmt(selector, value));
+    public ListenableFuture<Object> val(ISelector selector, String value) {
+        return this.run("__val:" + selector, this.getValStmt(selector, value), IConverter.CONVERTER_IDENT);
     }
 
     @Override
-    public Future<Object> submit(ISelector selector) {
+    public ListenableFuture<Object> submit(ISelector selector) {
         return this.run(this.getSubmitStmt(selector));
     }
 
@@ -0,0 +1,19 @@
+package de.fu_berlin.inf.ag_se.browser.html;
+
+/**
+ * An {@link IAnchor} decoded from an element descriptor.
+ *
+ * @see DescribedElement
+ */
+public class DescribedAnchor extends DescribedElement implements IAnchor {
+
+	public DescribedAnchor(Object[] descriptor) {
+		super(descriptor);
+	}
+
+	@Override
+	public String getHref() {
+		return this.getAttribute("href");
+	}
+
+}
@@ -0,0 +1,103 @@
+package de.fu_berlin.inf.ag_se.browser.html;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An {@link IElement} decoded from the flat descriptor the browser sends instead of the
+ * element's markup if element descriptors are enabled:
+ * <code>[page id, handle, tag name, text, 1 if the text is truncated else 0, number of attributes, name 1, value 1, ...]</code>.
+ * <p>
+ * The descriptor only contains the element's own attributes and the beginning of its text,
+ * so {@link #getContent()} may be truncated and {@link #toHtml()} does not contain child elements.
+ * The complete markup can be fetched using the {@link #getHandle() handle}
+ * as long as the page with the {@link #getPageId() page id} is loaded.
+ */
+public class DescribedElement extends Element {
+
+	private final String pageId;
+	private final long handle;
+	private final boolean truncated;
+
+	/**
+	 * @param descriptor the descriptor as sent by the browser
+	 * @throws IllegalArgumentException if the descriptor is malformed
+	 */
+	public DescribedElement(Object[] descriptor) {
+		super(getName(descriptor), getAttributes(descriptor), getString(descriptor, 3));
+		this.pageId = getPageId(descriptor);
+		this.handle = getNumber(descriptor, 1).longValue();
+		this.truncated = getNumber(descriptor, 4).intValue() != 0;
+	}
+
+	/**
+	 * Returns the random id of the page the element was sent from.
+	 * Handles start over on every page, so a handle is only meaningful together with its page id.
+	 *
+	 * @return
+	 */
+	public String getPageId() {
+		return this.pageId;
+	}
+
+	/**
+	 * Returns the number that identifies the element in the page it was sent from.
+	 *
+	 * @return
+	 */
+	public long getHandle() {
+		return this.handle;
+	}
+
+	/**
+	 * Returns whether the {@link #getContent() content} has been truncated.
+	 *
+	 * @return
+	 */
+	public boolean isTruncated() {
+		return this.truncated;
+	}
+
+	private static String getPageId(Object[] descriptor) {
+		String pageId = getString(descriptor, 0);
+		if (pageId == null) {
+			throw new IllegalArgumentException("The descriptor contains no page id");
+		}
+		return pageId;
+	}
+
+	private static String getName(Object[] descriptor) {
+		String name = getString(descriptor, 2);
+		if (name == null) {
+			throw new IllegalArgumentException("The descriptor contains no tag name");
+		}
+		return name;
+	}
+
+	private static Map<String, String> getAttributes(Object[] descriptor) {
+		int count = getNumber(descriptor, 5).intValue();
+		if (count < 0 || descriptor.length < 6 + 2 * count) {
+			throw new IllegalArgumentException("The descriptor contains less than " + count + " attributes");
+		}
+		Map<String, String> attributes = new HashMap<String, String>();
+		for (int i = 0; i < count; i++) {
+			String name = getString(descriptor, 6 + 2 * i);
+			if (name != null) {
+				attributes.put(name, getString(descriptor, 7 + 2 * i));
+			}
+		}
+		return attributes;
+	}
+
+	private static Number getNumber(Object[] descriptor, int index) {
+		if (descriptor.length <= index || !(descriptor[index] instanceof Number)) {
+			throw new IllegalArgumentException("The descriptor contains no number at index " + index);
+		}
+		return (Number) descriptor[index];
+	}
+
+	private static String getString(Object[] descriptor, int index) {
+		return descriptor.length > index && descriptor[index] instanceof String ? (String) descriptor[index] : null;
+	}
+
+}
@@ -0,0 +1,162 @@
+package de.fu_berlin.inf.ag_se.browser.html;
+
+import org.jsoup.nodes.Attribute;
+import org.jsoup.nodes.DataNode;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the node operations that turn one jsoup tree into another.
+ * <p/>
+ * Each operation is a map that can be converted to a Javascript literal. It contains
+ * <ul>
+ * <li><code>op</code>: one of <code>text</code>, <code>attrs</code>, <code>replace</code>, <code>insert</code>, <code>append</code> and <code>remove</code></li>
+ * <li><code>path</code>: the child node indices leading from the root to the affected node</li>
+ * <li><code>node</code>: the lower case node name the affected node had in the old tree</li>
+ * </ul>
+ * and the operation specific values <code>text</code>, <code>set</code>, <code>remove</code> and <code>html</code>.
+ * <code>insert</code> inserts the HTML before the affected node, <code>append</code> appends it to the affected node.
+ * <p/>
+ * Children are first matched from both ends, so that inserting or removing a node in the middle
+ * only affects that node. Children match if they are equal or if they are elements with the same name and id.
+ * The remaining children in between are compared by their position.
+ * <p/>
+ * All paths refer to the old tree. Operations on the children of a node are ordered
+ * such that they can be applied one after another without invalidating the remaining paths.
+ * The HTML is rendered using the output settings of the new tree's document,
+ * so pretty printing should be disabled there.
+ */
+public class DomDiff {
+
+    private DomDiff() {
+    }
+
+    /**
+     * Returns the operations that turn the children of <code>previous</code> into the children of <code>next</code>.
+     * The roots themselves are only compared by their attributes.
+     */
+    public static List<Map<String, Object>> diff(org.jsoup.nodes.Element previous, org.jsoup.nodes.Element next) {
+        List<Map<String, Object>> operations = new ArrayList<Map<String, Object>>();
+        diffElements(previous, next, Collections.<Integer>emptyList(), operations);
+        return operations;
+    }
+
+    private static void diffNodes(Node previous, Node next, List<Integer> path, List<Map<String, Object>> operations) {
+        if (previous instanceof TextNode && next instanceof TextNode) {
+            String text = ((TextNode) next).getWholeText();
+            if (!((TextNode) previous).getWholeText().equals(text)) {
+                Map<String, Object> operation = createOperation("text", path, previous);
+                operation.put("text", text);
+                operations.add(operation);
+            }
+        } else if (previous instanceof org.jsoup.nodes.Element && next instanceof org.jsoup.nodes.Element
+                && previous.nodeName().equals(next.nodeName())) {
+            diffElements((org.jsoup.nodes.Element) previous, (org.jsoup.nodes.Element) next, path, operations);
+        } else if (!previous.outerHtml().equals(next.outerHtml())) {
+            Map<String, Object> operation = createOperation("replace", path, previous);
+            operation.put("html", next.outerHtml());
+            operations.add(operation);
+        }
+    }
+
+    private static void diffElements(org.jsoup.nodes.Element previous, org.jsoup.nodes.Element next,
+                                     List<Integer> path, List<Map<String, Object>> operations) {
+        Map<String, String> set = new LinkedHashMap<String, String>();
+        for (Attribute attribute : next.attributes()) {
+            if (!previous.hasAttr(attribute.getKey()) || !attribute.getValue().equals(previous.attr(attribute.getKey()))) {
+                set.put(attribute.getKey(), attribute.getValue());
+            }
+        }
+        List<String> remove = new ArrayList<String>();
+        for (Attribute attribute : previous.attributes()) {
+            if (!next.hasAttr(attribute.getKey())) {
+                remove.add(attribute.getKey());
+            }
+        }
+        if (!set.isEmpty() || !remove.isEmpty()) {
+            Map<String, Object> operation = createOperation("attrs", path, previous);
+            operation.put("set", set);
+            operation.put("remove", remove);
+            operations.add(operation);
+        }
+
+        List<Node> previousChildren = previous.childNodes();
+        List<Node> nextChildren = next.childNodes();
+        int previousSize = previousChildren.size();
+        int nextSize = nextChildren.size();
+
+        int prefix = 0;
+        while (prefix < previousSize && prefix < nextSize
+                && matches(previousChildren.get(prefix), nextChildren.get(prefix))) {
+            diffNodes(previousChildren.get(prefix), nextChildren.get(prefix), append(path, prefix), operations);
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < previousSize - prefix && suffix < nextSize - prefix
+                && matches(previousChildren.get(previousSize - 1 - suffix), nextChildren.get(nextSize - 1 - suffix))) {
+            int index = previousSize - 1 - suffix;
+            diffNodes(previousChildren.get(index), nextChildren.get(nextSize - 1 - suffix), append(path, index), operations);
+            suffix++;
+        }
+
+        int previousEnd = previousSize - suffix;
+        int nextEnd = nextSize - suffix;
+        int common = Math.min(previousEnd, nextEnd);
+        for (int i = prefix; i < common; i++) {
+            diffNodes(previousChildren.get(i), nextChildren.get(i), append(path, i), operations);
+        }
+        if (nextEnd > common) {
+            StringBuilder html = new StringBuilder();
+            for (Node child : nextChildren.subList(common, nextEnd)) {
+                html.append(child.outerHtml());
+            }
+            Map<String, Object> operation = suffix > 0
+                    ? createOperation("insert", append(path, previousEnd), previousChildren.get(previousEnd))
+                    : createOperation("append", path, previous);
+            operation.put("html", html.toString());
+            operations.add(operation);
+        }
+        for (int i = previousEnd - 1; i >= common; i--) {
+            operations.add(createOperation("remove", append(path, i), previousChildren.get(i)));
+        }
+    }
+
+    /**
+     * Tells whether the given children correspond to each other, so that they can be compared
+     * although their positions differ.
+     */
+    private static boolean matches(Node previous, Node next) {
+        if (!previous.nodeName().equals(next.nodeName())) {
+            return false;
+        }
+        if (previous instanceof org.jsoup.nodes.Element) {
+            String id = previous.attr("id");
+            if (!id.isEmpty() && id.equals(next.attr("id"))) {
+                return true;
+            }
+        }
+        return previous.outerHtml().equals(next.outerHtml());
+    }
+
+    private static Map<String, Object> createOperation(String type, List<Integer> path, Node node) {
+        Map<String, Object> operation = new LinkedHashMap<String, Object>();
+        operation.put("op", type);
+        operation.put("path", path);
+        // browsers expose the content of script and style elements as plain text nodes
+        operation.put("node", node instanceof DataNode ? "#text" : node.nodeName().toLowerCase());
+        return operation;
+    }
+
+    private static List<Integer> append(List<Integer> path, int index) {
+        List<Integer> childPath = new ArrayList<Integer>(path.size() + 1);
+        childPath.addAll(path);
+        childPath.add(index);
+        return childPath;
+    }
+}
@@ -0,0 +1,19 @@
+package de.fu_berlin.inf.ag_se.browser.html;
+
+/**
+ * An {@link IAnchor} that parses its markup only when needed.
+ *
+ * @see LazyElement
+ */
+public class LazyAnchor extends LazyElement implements IAnchor {
+
+	public LazyAnchor(String html) {
+		super(html);
+	}
+
+	@Override
+	public String getHref() {
+		return this.getAttribute("href");
+	}
+
+}
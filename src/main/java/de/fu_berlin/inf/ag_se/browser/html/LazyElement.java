@@ -0,0 +1,107 @@
+package de.fu_berlin.inf.ag_se.browser.html;
+
+import de.fu_berlin.inf.ag_se.browser.BrowserUtils;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An {@link IElement} that keeps the markup it was created with and only parses it
+ * once one of its getters is called for the first time.
+ * <p>
+ * If the markup does not contain an element, all getters return <code>null</code>
+ * and {@link #getAttributes()} returns an empty map.
+ * <p>
+ * May be used from whatever thread.
+ */
+public class LazyElement implements IElement {
+
+	private final String html;
+	private IElement element;
+	private boolean parsed = false;
+
+	/**
+	 * @param html the element's markup as sent by the browser
+	 * @throws NullPointerException if html is null
+	 */
+	public LazyElement(String html) {
+		if (html == null) {
+			throw new NullPointerException();
+		}
+		this.html = html;
+	}
+
+	/**
+	 * Returns the markup this element was created with without parsing it.
+	 *
+	 * @return
+	 */
+	public String getHtml() {
+		return this.html;
+	}
+
+	/**
+	 * Returns whether the markup has already been parsed.
+	 *
+	 * @return
+	 */
+	public synchronized boolean isParsed() {
+		return this.parsed;
+	}
+
+	protected synchronized IElement getElement() {
+		if (!this.parsed) {
+			this.element = BrowserUtils.extractElement(this.html);
+			this.parsed = true;
+		}
+		return this.element;
+	}
+
+	@Override
+	public String getName() {
+		IElement element = getElement();
+		return element != null ? element.getName() : null;
+	}
+
+	@Override
+	public Map<String, String> getAttributes() {
+		IElement element = getElement();
+		return element != null ? element.getAttributes() : Collections.<String, String>emptyMap();
+	}
+
+	@Override
+	public String getAttribute(String name) {
+		IElement element = getElement();
+		return element != null ? element.getAttribute(name) : null;
+	}
+
+	@Override
+	public String getData(String key) {
+		IElement element = getElement();
+		return element != null ? element.getData(key) : null;
+	}
+
+	@Override
+	public String[] getClasses() {
+		IElement element = getElement();
+		return element != null ? element.getClasses() : null;
+	}
+
+	@Override
+	public String getContent() {
+		IElement element = getElement();
+		return element != null ? element.getContent() : null;
+	}
+
+	@Override
+	public String toHtml() {
+		IElement element = getElement();
+		return element != null ? element.toHtml() : null;
+	}
+
+	@Override
+	public String toString() {
+		return this.html;
+	}
+
+}
@@ -0,0 +1,18 @@
+package de.fu_berlin.inf.ag_se.browser.listener;
+
+import de.fu_berlin.inf.ag_se.browser.metrics.PageLoadTiming;
+
+/**
+ * Instances of this class are notified about the phase durations of each navigation
+ * started by {@link de.fu_berlin.inf.ag_se.browser.IBrowser#open(String, Integer)} and its variants.
+ */
+public interface IPageLoadListener {
+
+    /**
+     * This method is called once the page has completely loaded or timed out.
+     * It is called from the UI thread or the timeout thread and must not block.
+     *
+     * @param timing the durations of the passed phases
+     */
+    public void pageLoaded(PageLoadTiming timing);
+}
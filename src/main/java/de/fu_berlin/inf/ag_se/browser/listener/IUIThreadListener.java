@@ -0,0 +1,14 @@
+package de.fu_berlin.inf.ag_se.browser.listener;
+
+import de.fu_berlin.inf.ag_se.browser.IBrowser;
+
+/**
+ * Marks a listener that must be notified in the UI thread, e.g. because it updates widgets.
+ * <p>
+ * Such listeners are notified synchronously even if the {@link IBrowser} delivers
+ * events to the other listeners using a
+ * {@link IBrowser#setListenerExecutor(java.util.concurrent.Executor) listener executor}.
+ */
+public interface IUIThreadListener {
+
+}
@@ -0,0 +1,275 @@
+package de.fu_berlin.inf.ag_se.browser.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts events of a browser that are worth monitoring.
+ * Each browser has its own instance whose counts are also added to the {@link #getGlobalMetrics() global metrics}.
+ * <p/>
+ * May be used from whatever thread.
+ */
+public class BrowserMetrics {
+
+    private static final BrowserMetrics GLOBAL = new BrowserMetrics(null);
+
+    private final BrowserMetrics parent;
+
+    private final AtomicLong deadlineMisses = new AtomicLong(0);
+
+    private final AtomicLong queueDepth = new AtomicLong(0);
+
+    private final AtomicLong rejectedScripts = new AtomicLong(0);
+
+    private final AtomicLong droppedScripts = new AtomicLong(0);
+
+    private final AtomicLong coalescedScripts = new AtomicLong(0);
+
+    private final AtomicLong supersededScripts = new AtomicLong(0);
+
+    private final AtomicLong avoidedDiskBytes = new AtomicLong(0);
+
+    private final PageLoadStatistics pageLoadStatistics = new PageLoadStatistics();
+
+    /**
+     * The time from dispatching an event until the listener returned in microseconds, per listener class.
+     */
+    private final ConcurrentMap<String, Histogram> listenerLatencies = new ConcurrentHashMap<String, Histogram>();
+
+    /**
+     * The page load statistics per host, only maintained by the global metrics.
+     */
+    private final ConcurrentMap<String, PageLoadStatistics> hostPageLoadStatistics
+            = new ConcurrentHashMap<String, PageLoadStatistics>();
+
+    public BrowserMetrics() {
+        this(GLOBAL);
+    }
+
+    private BrowserMetrics(BrowserMetrics parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Returns the metrics summed up over all browsers.
+     */
+    public static BrowserMetrics getGlobalMetrics() {
+        return GLOBAL;
+    }
+
+    /**
+     * Records that a script or condition did not complete before its deadline.
+     */
+    public void deadlineMissed() {
+        deadlineMisses.incrementAndGet();
+        if (parent != null) {
+            parent.deadlineMissed();
+        }
+    }
+
+    /**
+     * Returns the number of scripts and conditions that did not complete before their deadline.
+     */
+    public long getDeadlineMisses() {
+        return deadlineMisses.get();
+    }
+
+    /**
+     * Records a change of the number of scripts waiting to be executed.
+     *
+     * @param delta the number of added scripts, negative if scripts were removed
+     */
+    public void queueDepthChanged(int delta) {
+        queueDepth.addAndGet(delta);
+        if (parent != null) {
+            parent.queueDepthChanged(delta);
+        }
+    }
+
+    /**
+     * Returns the number of scripts currently waiting to be executed.
+     */
+    public long getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * Records that a script was not queued because the queue was full.
+     */
+    public void scriptRejected() {
+        rejectedScripts.incrementAndGet();
+        if (parent != null) {
+            parent.scriptRejected();
+        }
+    }
+
+    /**
+     * Returns the number of scripts that were not queued because the queue was full.
+     */
+    public long getRejectedScripts() {
+        return rejectedScripts.get();
+    }
+
+    /**
+     * Records that a queued script was dropped to make room for a newer one.
+     */
+    public void scriptDropped() {
+        droppedScripts.incrementAndGet();
+        if (parent != null) {
+            parent.scriptDropped();
+        }
+    }
+
+    /**
+     * Returns the number of queued scripts that were dropped to make room for newer ones.
+     */
+    public long getDroppedScripts() {
+        return droppedScripts.get();
+    }
+
+    /**
+     * Records that a script was not queued because an identical one was already waiting.
+     */
+    public void scriptCoalesced() {
+        coalescedScripts.incrementAndGet();
+        if (parent != null) {
+            parent.scriptCoalesced();
+        }
+    }
+
+    /**
+     * Returns the number of scripts that were not queued because an identical one was already waiting.
+     */
+    public long getCoalescedScripts() {
+        return coalescedScripts.get();
+    }
+
+    /**
+     * Records that a queued script was replaced by a newer script with the same key.
+     */
+    public void scriptSuperseded() {
+        supersededScripts.incrementAndGet();
+        if (parent != null) {
+            parent.scriptSuperseded();
+        }
+    }
+
+    /**
+     * Returns the number of queued scripts that were replaced by newer scripts with the same key.
+     */
+    public long getSupersededScripts() {
+        return supersededScripts.get();
+    }
+
+    /**
+     * Records that data was passed in memory that former versions wrote to a temporary file.
+     *
+     * @param bytes the (approximate) number of bytes that are no longer written
+     */
+    public void diskWriteAvoided(long bytes) {
+        avoidedDiskBytes.addAndGet(bytes);
+        if (parent != null) {
+            parent.diskWriteAvoided(bytes);
+        }
+    }
+
+    /**
+     * Returns the (approximate) number of bytes passed in memory that former versions wrote to temporary files.
+     */
+    public long getAvoidedDiskBytes() {
+        return avoidedDiskBytes.get();
+    }
+
+    /**
+     * Records that a listener has been notified.
+     *
+     * @param listenerClass the name of the listener's class
+     * @param micros        the time from dispatching the event until the listener returned in microseconds
+     */
+    public void listenerNotified(String listenerClass, long micros) {
+        Histogram histogram = listenerLatencies.get(listenerClass);
+        if (histogram == null) {
+            Histogram newHistogram = new Histogram();
+            histogram = listenerLatencies.putIfAbsent(listenerClass, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        histogram.record(micros);
+        if (parent != null) {
+            parent.listenerNotified(listenerClass, micros);
+        }
+    }
+
+    /**
+     * Returns the time from dispatching an event until a listener of the given class returned in microseconds.
+     *
+     * @return the latencies or null if no listener of the given class has been notified
+     */
+    public Histogram getListenerLatency(String listenerClass) {
+        return listenerLatencies.get(listenerClass);
+    }
+
+    /**
+     * Returns the time from dispatching an event until the listener returned in microseconds, per listener class.
+     */
+    public Map<String, Histogram> getListenerLatencies() {
+        return Collections.unmodifiableMap(listenerLatencies);
+    }
+
+    /**
+     * Records the timing of a completed or timed out navigation.
+     */
+    public void pageLoaded(PageLoadTiming timing) {
+        pageLoadStatistics.record(timing);
+        if (parent != null) {
+            parent.pageLoaded(timing);
+        } else {
+            String host = timing.getHost();
+            PageLoadStatistics statistics = hostPageLoadStatistics.get(host);
+            if (statistics == null) {
+                PageLoadStatistics newStatistics = new PageLoadStatistics();
+                statistics = hostPageLoadStatistics.putIfAbsent(host, newStatistics);
+                if (statistics == null) {
+                    statistics = newStatistics;
+                }
+            }
+            statistics.record(timing);
+        }
+    }
+
+    /**
+     * Returns the aggregated page load times.
+     */
+    public PageLoadStatistics getPageLoadStatistics() {
+        return pageLoadStatistics;
+    }
+
+    /**
+     * Returns the page load times aggregated over all browsers for the given host.
+     * The empty host covers URIs without host, e.g. files.
+     *
+     * @return the statistics or null if no page of the given host has been loaded
+     */
+    public static PageLoadStatistics getHostPageLoadStatistics(String host) {
+        return GLOBAL.hostPageLoadStatistics.get(host);
+    }
+
+    /**
+     * Returns the page load times aggregated over all browsers per host.
+     */
+    public static Map<String, PageLoadStatistics> getHostPageLoadStatistics() {
+        return Collections.unmodifiableMap(GLOBAL.hostPageLoadStatistics);
+    }
+
+    @Override
+    public String toString() {
+        return "deadline misses: " + getDeadlineMisses() + ", queue depth: " + getQueueDepth()
+                + ", rejected: " + getRejectedScripts() + ", dropped: " + getDroppedScripts()
+                + ", coalesced: " + getCoalescedScripts() + ", superseded: " + getSupersededScripts()
+                + ", avoided disk bytes: " + getAvoidedDiskBytes() + ", page loads: {" + getPageLoadStatistics() + "}";
+    }
+}
@@ -0,0 +1,86 @@
+package de.fu_berlin.inf.ag_se.browser.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts non-negative values in buckets whose bounds grow by powers of two,
+ * which keeps the relative error of the reported percentiles below a factor of two.
+ * <p/>
+ * May be used from whatever thread.
+ */
+public class Histogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong sum = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+
+    /**
+     * Records the given value. Negative values are recorded as 0.
+     */
+    public void record(long value) {
+        value = Math.max(value, 0);
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    // bucket i holds the values below 2^i that are not in a lower bucket
+    private static int bucket(long value) {
+        return BUCKETS - Long.numberOfLeadingZeros(value);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the average of all recorded values or 0 if none were recorded.
+     */
+    public long getMean() {
+        long count = this.count.get();
+        return count == 0 ? 0 : sum.get() / count;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile or 0 if no values were recorded.
+     *
+     * @param percentile a value between 0 and 100
+     * @throws IllegalArgumentException if the percentile is out of range
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("The percentile must be between 0 and 100");
+        }
+        long count = this.count.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank && seen > 0) {
+                return Math.min(i == 0 ? 0 : (1L << i) - 1, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    @Override
+    public String toString() {
+        return "count: " + getCount() + ", mean: " + getMean() + ", p50: " + getPercentile(50)
+                + ", p90: " + getPercentile(90) + ", p99: " + getPercentile(99) + ", max: " + getMax();
+    }
+}
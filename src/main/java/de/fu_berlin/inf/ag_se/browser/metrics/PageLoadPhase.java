@@ -0,0 +1,44 @@
+package de.fu_berlin.inf.ag_se.browser.metrics;
+
+/**
+ * The phases a navigation passes through until the page is completely loaded.
+ * <p/>
+ * The phases are listed in the order they start in. {@link #AFTER_LOADING} runs
+ * concurrently to {@link #PROGRESS}, all other phases follow one another.
+ */
+public enum PageLoadPhase {
+    /**
+     * Running the runnables registered to be executed before loading.
+     */
+    BEFORE_LOADING,
+
+    /**
+     * Setting the URL of the underlying browser.
+     */
+    SET_URL,
+
+    /**
+     * Running the runnables registered to be executed after loading.
+     */
+    AFTER_LOADING,
+
+    /**
+     * Waiting for the underlying browser to report the page as loaded.
+     */
+    PROGRESS,
+
+    /**
+     * Waiting for the document to be ready and the custom page load check to be met.
+     */
+    READY_STATE,
+
+    /**
+     * Injecting the browser extensions.
+     */
+    EXTENSIONS,
+
+    /**
+     * Running the runnables registered to be executed after completion.
+     */
+    AFTER_COMPLETION
+}
@@ -0,0 +1,74 @@
+package de.fu_berlin.inf.ag_se.browser.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregates {@link PageLoadTiming}s in one {@link Histogram} per {@link PageLoadPhase}
+ * and one for the total page load times, all in milliseconds.
+ * <p/>
+ * May be used from whatever thread.
+ */
+public class PageLoadStatistics {
+
+    private final Histogram total = new Histogram();
+    private final Map<PageLoadPhase, Histogram> phases = new EnumMap<PageLoadPhase, Histogram>(PageLoadPhase.class);
+    private final AtomicLong timeouts = new AtomicLong(0);
+    private final AtomicLong lastMillis = new AtomicLong(0);
+
+    public PageLoadStatistics() {
+        for (PageLoadPhase phase : PageLoadPhase.values()) {
+            phases.put(phase, new Histogram());
+        }
+    }
+
+    public void record(PageLoadTiming timing) {
+        if (timing.isSuccessful()) {
+            total.record(timing.getTotalMillis());
+            lastMillis.set(timing.getTotalMillis());
+        } else {
+            timeouts.incrementAndGet();
+        }
+        for (Map.Entry<PageLoadPhase, Long> phase : timing.getPhaseMillis().entrySet()) {
+            phases.get(phase.getKey()).record(phase.getValue());
+        }
+    }
+
+    /**
+     * Returns the total times of the successfully loaded pages.
+     */
+    public Histogram getTotal() {
+        return total;
+    }
+
+    public Histogram getPhase(PageLoadPhase phase) {
+        return phases.get(phase);
+    }
+
+    /**
+     * Returns the number of pages that did not load before their timeout.
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * Returns the total time of the last successfully loaded page.
+     */
+    public long getLastMillis() {
+        return lastMillis.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder string = new StringBuilder("total: {").append(total).append("}, timeouts: ").append(getTimeouts());
+        for (PageLoadPhase phase : PageLoadPhase.values()) {
+            Histogram histogram = phases.get(phase);
+            if (histogram.getCount() > 0) {
+                string.append(", ").append(phase).append(": {").append(histogram).append("}");
+            }
+        }
+        return string.toString();
+    }
+}
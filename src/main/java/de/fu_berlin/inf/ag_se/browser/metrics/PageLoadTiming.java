@@ -0,0 +1,80 @@
+package de.fu_berlin.inf.ag_se.browser.metrics;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The durations of the {@link PageLoadPhase}s of a single navigation.
+ */
+public class PageLoadTiming {
+
+    private final String uri;
+    private final boolean successful;
+    private final long totalMillis;
+    private final Map<PageLoadPhase, Long> phaseMillis;
+
+    /**
+     * @param uri         the opened URI
+     * @param successful  false if the page did not load before the timeout
+     * @param totalMillis the time from starting the navigation until it was completed or timed out
+     * @param phaseMillis the durations of the phases that were passed
+     */
+    public PageLoadTiming(String uri, boolean successful, long totalMillis, Map<PageLoadPhase, Long> phaseMillis) {
+        this.uri = uri;
+        this.successful = successful;
+        this.totalMillis = totalMillis;
+        this.phaseMillis = phaseMillis.isEmpty()
+                ? Collections.<PageLoadPhase, Long>emptyMap()
+                : Collections.unmodifiableMap(new EnumMap<PageLoadPhase, Long>(phaseMillis));
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    /**
+     * Returns the host of the opened URI or an empty string if it has none, e.g. in case of a file.
+     */
+    public String getHost() {
+        try {
+            String host = new URI(uri).getHost();
+            return host != null ? host : "";
+        } catch (URISyntaxException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Returns false if the page did not load before the timeout.
+     */
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    /**
+     * Returns the duration of the given phase or -1 if the phase was not passed.
+     */
+    public long getMillis(PageLoadPhase phase) {
+        Long millis = phaseMillis.get(phase);
+        return millis != null ? millis : -1;
+    }
+
+    /**
+     * Returns the durations of all passed phases.
+     */
+    public Map<PageLoadPhase, Long> getPhaseMillis() {
+        return phaseMillis;
+    }
+
+    @Override
+    public String toString() {
+        return uri + (successful ? "" : " (timed out)") + ": " + totalMillis + "ms " + phaseMillis;
+    }
+}
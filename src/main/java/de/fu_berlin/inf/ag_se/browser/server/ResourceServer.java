@@ -0,0 +1,313 @@
+package de.fu_berlin.inf.ag_se.browser.server;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An HTTP server bound to the loopback interface that serves classpath resources and
+ * content generated in Java directly from memory.
+ * <p/>
+ * In contrast to <code>file://</code> URIs of temporary copies or scripts inlined into the page,
+ * resources served over HTTP can be cached by the browser engine, which then reuses the parsed
+ * scripts and stylesheets across navigations and browsers. Each response carries an ETag;
+ * classpath resources are additionally marked as cacheable for a year as they cannot change
+ * while the application runs, whereas published content is revalidated on each use.
+ * The scripts and stylesheets of the built-in {@link de.fu_berlin.inf.ag_se.browser.extensions.BrowserExtension}s
+ * are served this way. As the scripts are fetched by requests from the pages' origins, classpath resources
+ * may be read from any origin; published content may not.
+ * <p/>
+ * The server listens on a random port and all URIs contain a random token, so that other
+ * local users cannot guess them. Only classpath resources below the registered roots are served.
+ * <p/>
+ * The server is started on first use of {@link #getInstance()}. May be used from whatever thread.
+ */
+public class ResourceServer {
+
+    private static final Logger LOGGER = Logger.getLogger(ResourceServer.class);
+
+    private static final String CLASSPATH = "classpath";
+    private static final String PUBLISHED = "published";
+
+    private static final Map<String, String> CONTENT_TYPES = new HashMap<String, String>();
+
+    static {
+        CONTENT_TYPES.put("js", "application/javascript; charset=UTF-8");
+        CONTENT_TYPES.put("css", "text/css; charset=UTF-8");
+        CONTENT_TYPES.put("html", "text/html; charset=UTF-8");
+        CONTENT_TYPES.put("json", "application/json; charset=UTF-8");
+        CONTENT_TYPES.put("svg", "image/svg+xml");
+        CONTENT_TYPES.put("png", "image/png");
+        CONTENT_TYPES.put("gif", "image/gif");
+        CONTENT_TYPES.put("jpg", "image/jpeg");
+        CONTENT_TYPES.put("eot", "application/vnd.ms-fontobject");
+        CONTENT_TYPES.put("ttf", "application/x-font-ttf");
+        CONTENT_TYPES.put("woff", "application/font-woff");
+    }
+
+    private static ResourceServer instance;
+
+    /**
+     * A resource held in memory.
+     */
+    private static final class Resource {
+        private final byte[] content;
+        private final String contentType;
+        private final String etag;
+
+        private Resource(byte[] content, String contentType) {
+            this.content = content;
+            this.contentType = contentType;
+            this.etag = createETag(content);
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String token;
+    private final List<String> classpathRoots = new CopyOnWriteArrayList<String>(
+            Arrays.asList("/jquery/", "/bootstrap/", "/events-base.js", "/events.js", "/dnd.js", "/dnd.css", "/resizing.js"));
+    private final ConcurrentMap<String, Resource> classpathResources = new ConcurrentHashMap<String, Resource>();
+    private final ConcurrentMap<String, Resource> publishedResources = new ConcurrentHashMap<String, Resource>();
+
+    private ResourceServer() throws IOException {
+        byte[] random = new byte[16];
+        new SecureRandom().nextBytes(random);
+        token = toHex(random);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+        final AtomicInteger threadNumber = new AtomicInteger(0);
+        executor = Executors.newFixedThreadPool(2, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, ResourceServer.class.getSimpleName() + "-" + threadNumber.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        server.setExecutor(executor);
+        server.createContext("/" + token + "/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    ResourceServer.this.handle(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+
+        // the dispatcher thread inherits the daemon flag and must not keep the application alive
+        Thread starter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                server.start();
+            }
+        }, ResourceServer.class.getSimpleName() + " starter");
+        starter.setDaemon(true);
+        starter.start();
+        try {
+            starter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.info("Serving resources on port " + server.getAddress().getPort());
+    }
+
+    /**
+     * Returns the server and starts it if necessary.
+     *
+     * @throws IOException if the server cannot be started
+     */
+    public static synchronized ResourceServer getInstance() throws IOException {
+        if (instance == null) {
+            instance = new ResourceServer();
+        }
+        return instance;
+    }
+
+    /**
+     * Allows the classpath resources below the given absolute path to be served.
+     *
+     * @param root a path like <code>/my/bundle/</code> or a single resource like <code>/my/script.js</code>
+     * @throws IllegalArgumentException if the path is not absolute
+     */
+    public void addClasspathRoot(String root) {
+        if (root == null || !root.startsWith("/")) {
+            throw new IllegalArgumentException("The classpath root must be an absolute path");
+        }
+        classpathRoots.add(root);
+    }
+
+    /**
+     * Returns the URI the given classpath resource is served under.
+     *
+     * @param path the absolute path of the resource, e.g. <code>/jquery/jquery-1.9.0.js</code>
+     * @throws IllegalArgumentException if the path is not below one of the classpath roots
+     */
+    public URI getClasspathUri(String path) {
+        if (!isServable(path)) {
+            throw new IllegalArgumentException(path + " is not below a classpath root");
+        }
+        return createUri(CLASSPATH + path);
+    }
+
+    /**
+     * Serves the given content under the returned URI until it is replaced or {@link #unpublish(String) unpublished}.
+     *
+     * @param path        the path relative to the published content, e.g. <code>reports/style.css</code>
+     * @param contentType the content type or null to derive it from the path's extension
+     * @param content     the content
+     */
+    public URI publish(String path, String contentType, byte[] content) {
+        String normalizedPath = normalize(path);
+        publishedResources.put(normalizedPath, new Resource(content.clone(),
+                contentType != null ? contentType : getContentType(normalizedPath)));
+        return createUri(PUBLISHED + "/" + normalizedPath);
+    }
+
+    /**
+     * Serves the given text encoded as UTF-8.
+     *
+     * @see #publish(String, String, byte[])
+     */
+    public URI publish(String path, String contentType, String content) {
+        return publish(path, contentType, content.getBytes(Charset.forName("UTF-8")));
+    }
+
+    public void unpublish(String path) {
+        publishedResources.remove(normalize(path));
+    }
+
+    private URI createUri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/" + token + "/" + path);
+    }
+
+    private static String normalize(String path) {
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        return path;
+    }
+
+    private boolean isServable(String path) {
+        if (path == null || !path.startsWith("/") || path.contains("..") || path.contains("\\")) {
+            return false;
+        }
+        for (String root : classpathRoots) {
+            if (root.endsWith("/") ? path.startsWith(root) : path.equals(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            exchange.sendResponseHeaders(405, -1);
+            return;
+        }
+
+        String path = exchange.getRequestURI().getPath().substring(token.length() + 2);
+        Resource resource = null;
+        boolean immutable = false;
+        if (path.startsWith(CLASSPATH + "/")) {
+            resource = getClasspathResource(path.substring(CLASSPATH.length()));
+            immutable = true;
+        } else if (path.startsWith(PUBLISHED + "/")) {
+            resource = publishedResources.get(path.substring(PUBLISHED.length() + 1));
+        }
+        if (resource == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("ETag", resource.etag);
+        headers.set("Cache-Control", immutable ? "public, max-age=31536000" : "no-cache");
+        if (immutable) {
+            headers.set("Access-Control-Allow-Origin", "*");
+        }
+        if (resource.etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        headers.set("Content-Type", resource.contentType);
+        if ("HEAD".equals(method)) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(200, resource.content.length);
+        OutputStream body = exchange.getResponseBody();
+        body.write(resource.content);
+        body.close();
+    }
+
+    private Resource getClasspathResource(String path) throws IOException {
+        if (!isServable(path)) {
+            return null;
+        }
+        Resource resource = classpathResources.get(path);
+        if (resource == null) {
+            InputStream in = ResourceServer.class.getResourceAsStream(path);
+            if (in == null) {
+                return null;
+            }
+            try {
+                resource = new Resource(IOUtils.toByteArray(in), getContentType(path));
+            } finally {
+                in.close();
+            }
+            classpathResources.putIfAbsent(path, resource);
+        }
+        return resource;
+    }
+
+    private static String getContentType(String path) {
+        String contentType = CONTENT_TYPES.get(path.substring(path.lastIndexOf('.') + 1).toLowerCase(Locale.ENGLISH));
+        return contentType != null ? contentType : "application/octet-stream";
+    }
+
+    private static String createETag(byte[] content) {
+        try {
+            return "\"" + toHex(MessageDigest.getInstance("SHA-1").digest(content)) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
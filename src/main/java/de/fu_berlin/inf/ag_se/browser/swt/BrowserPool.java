@@ -0,0 +1,224 @@
+package de.fu_berlin.inf.ag_se.browser.swt;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.apache.log4j.Logger;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a number of browsers that have completely loaded a blank page, including all their extensions,
+ * parked in an invisible shell, so that views can show a ready browser without waiting for it to load.
+ * <p/>
+ * {@link #lease(Composite)} moves a ready browser to the given parent. {@link #release(SWTBrowser)} takes it back,
+ * removes its listeners, restores its configuration (see {@link de.fu_berlin.inf.ag_se.browser.Browser#resetConfiguration()})
+ * and loads a blank page again, which resets the body, the injected CSS and all other page state.
+ * Leased browsers are replaced in the background.
+ * <p/>
+ * Listeners added to the widget itself and runnables registered to be executed after completion are
+ * not removed on release and must therefore be cleaned up by the lessee.
+ * <p/>
+ * Except for {@link #getIdleCount()}, {@link #getHits()} and {@link #getMisses()} all methods must be called from the UI thread.
+ *
+ * @param <B> the type of the pooled browsers
+ */
+public class BrowserPool<B extends SWTBrowser<?>> {
+
+    private static final Logger LOGGER = Logger.getLogger(BrowserPool.class);
+
+    /**
+     * Creates the browsers of a {@link BrowserPool}, e.g. using
+     * {@link SWTJQueryBrowser#createSWTBrowser(Composite, int, Iterable)}.
+     */
+    public interface Factory<B> {
+        B create(Composite parent);
+    }
+
+    private final Display display;
+    private final int size;
+    private final Factory<B> factory;
+    private final Shell parkingShell;
+
+    private final LinkedBlockingDeque<B> idle = new LinkedBlockingDeque<B>();
+    private final AtomicInteger loading = new AtomicInteger(0);
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private volatile boolean disposed = false;
+
+    /**
+     * Creates the pool and starts loading its browsers in the background.
+     *
+     * @param size    the number of browsers to keep ready
+     * @param factory creates the browsers
+     *
+     * @throws IllegalArgumentException if size is negative
+     * @throws NullPointerException     if display or factory is null
+     */
+    public BrowserPool(Display display, int size, Factory<B> factory) {
+        if (size < 0) {
+            throw new IllegalArgumentException("The pool size must not be negative");
+        }
+        if (display == null || factory == null) {
+            throw new NullPointerException();
+        }
+        this.display = display;
+        this.size = size;
+        this.factory = factory;
+        this.parkingShell = new Shell(display);
+        refill();
+    }
+
+    /**
+     * Returns a browser that has been moved to the given parent.
+     * If no browser is ready, a new one is created that is still loading the blank page.
+     * The caller is responsible for laying out the parent.
+     *
+     * @throws IllegalStateException if the pool has been disposed
+     */
+    public B lease(Composite parent) {
+        if (disposed) {
+            throw new IllegalStateException("The pool has been disposed");
+        }
+        B browser;
+        while ((browser = idle.poll()) != null) {
+            if (!browser.isDisposed() && browser.setParent(parent)) {
+                break;
+            }
+            if (!browser.isDisposed()) {
+                browser.dispose();
+            }
+        }
+        refill();
+        if (browser != null) {
+            hits.incrementAndGet();
+            return browser;
+        }
+        misses.incrementAndGet();
+        browser = factory.create(parent);
+        browser.openBlank();
+        return browser;
+    }
+
+    /**
+     * Takes the given browser back. It is disposed if the pool is full, disposed or
+     * the browser cannot be reparented on this platform.
+     */
+    public void release(B browser) {
+        if (browser.isDisposed()) {
+            return;
+        }
+        if (disposed || idle.size() + loading.get() >= size || !browser.setParent(parkingShell)) {
+            browser.dispose();
+            return;
+        }
+        browser.browser.removeAllListeners();
+        browser.browser.resetConfiguration();
+        load(browser);
+    }
+
+    /**
+     * Disposes the pool and all browsers that are not leased.
+     */
+    public void dispose() {
+        disposed = true;
+        B browser;
+        while ((browser = idle.poll()) != null) {
+            browser.dispose();
+        }
+        // browsers still loading are disposed with their parent
+        parkingShell.dispose();
+    }
+
+    /**
+     * Returns the number of browsers that are ready to be leased.
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Returns the number of leases that were served by a ready browser.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of leases that had to create a new browser.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Creates the missing browsers, each in its own turn of the event loop so that the UI stays responsive.
+     */
+    private void refill() {
+        if (disposed || idle.size() + loading.get() >= size) {
+            return;
+        }
+        loading.incrementAndGet();
+        display.asyncExec(new Runnable() {
+            @Override
+            public void run() {
+                loading.decrementAndGet();
+                if (disposed || parkingShell.isDisposed()) {
+                    return;
+                }
+                try {
+                    load(factory.create(parkingShell));
+                } catch (RuntimeException e) {
+                    LOGGER.error("Error creating a pooled browser", e);
+                    return;
+                }
+                refill();
+            }
+        });
+    }
+
+    private void load(final B browser) {
+        loading.incrementAndGet();
+        final ListenableFuture<Boolean> loaded = browser.openBlank();
+        loaded.addListener(new Runnable() {
+            @Override
+            public void run() {
+                loading.decrementAndGet();
+                boolean successful;
+                try {
+                    successful = Boolean.TRUE.equals(loaded.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    successful = false;
+                } catch (ExecutionException e) {
+                    LOGGER.error("Error loading a pooled browser", e.getCause());
+                    successful = false;
+                }
+                if (successful && !disposed) {
+                    idle.add(browser);
+                } else {
+                    disposeLater(browser);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private void disposeLater(final B browser) {
+        if (!display.isDisposed()) {
+            display.asyncExec(new Runnable() {
+                @Override
+                public void run() {
+                    if (!browser.isDisposed()) {
+                        browser.dispose();
+                    }
+                    refill();
+                }
+            });
+        }
+    }
+}
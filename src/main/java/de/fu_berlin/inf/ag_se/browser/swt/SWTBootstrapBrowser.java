@@ -1,8 +1,10 @@
 package de.fu_berlin.inf.ag_se.browser.swt;
 
+import de.fu_berlin.inf.ag_se.browser.JavascriptString;
 import de.fu_berlin.inf.ag_se.browser.extensions.BootstrapBrowser;
-import de.fu_berlin.inf.ag_se.browser.extensions.BrowserExtension;
+import de.fu_berlin.inf.ag_se.browser.extensions.IBrowserExtension;
 import de.fu_berlin.inf.ag_se.browser.extensions.IBootstrapBrowser;
+import de.fu_berlin.inf.ag_se.browser.utils.IConverter;
 import de.fu_berlin.inf.ag_se.browser.utils.colors.RGB;
 import org.apache.log4j.Logger;
 import org.eclipse.swt.graphics.Color;
@@ -18,10 +20,10 @@ public class SWTBootstrapBrowser<T extends BootstrapBrowser> extends SWTJQueryBr
     }
 
     public static SWTBootstrapBrowser createSWTBrowser(Composite parent, int style) {
-        return createSWTBrowser(parent, style, Collections.<BrowserExtension>emptyList());
+        return createSWTBrowser(parent, style, Collections.<IBrowserExtension>emptyList());
     }
 
-    public static SWTBootstrapBrowser createSWTBrowser(Composite parent, int style, Iterable<BrowserExtension> extensions) {
+    public static SWTBootstrapBrowser createSWTBrowser(Composite parent, int style, Iterable<? extends IBrowserExtension> extensions) {
         SWTBootstrapBrowser<BootstrapBrowser> swtBootstrapBrowser = new SWTBootstrapBrowser<BootstrapBrowser>(parent,
                 style);
         SWTInternalBrowserWrapper internalSWTBrowserWrapper = new SWTInternalBrowserWrapper(swtBootstrapBrowser);
@@ -37,7 +39,8 @@ public class SWTBootstrapBrowser<T extends BootstrapBrowser> extends SWTJQueryBr
         String hex = color != null ? new RGB(color.getRGB()).toDecString()
                                    : "transparent";
         try {
-            injectCss("body { background-color: " + hex + " !important; }");
+            run("__background", JavascriptString.createCssInjectionScript("body { background-color: " + hex + " !important; }"),
+                    IConverter.CONVERTER_BOOLEAN);
         } catch (RuntimeException e) {
             LOGGER.error("Error setting background color to " + color, e);
         }
@@ -1,14 +1,19 @@
 package de.fu_berlin.inf.ag_se.browser.swt;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import com.sun.istack.internal.Nullable;
 import de.fu_berlin.inf.ag_se.browser.Browser;
 import de.fu_berlin.inf.ag_se.browser.functions.IBrowserFunction;
 import de.fu_berlin.inf.ag_se.browser.IBrowser;
+import de.fu_berlin.inf.ag_se.browser.PreparedScript;
 import de.fu_berlin.inf.ag_se.browser.functions.JavascriptFunction;
 import de.fu_berlin.inf.ag_se.browser.functions.CallbackFunction;
 import de.fu_berlin.inf.ag_se.browser.functions.Function;
+import de.fu_berlin.inf.ag_se.browser.listener.IPageLoadListener;
 import de.fu_berlin.inf.ag_se.browser.listener.JavaScriptExceptionListener;
+import de.fu_berlin.inf.ag_se.browser.metrics.BrowserMetrics;
 import de.fu_berlin.inf.ag_se.browser.utils.Assert;
+import de.fu_berlin.inf.ag_se.browser.utils.DelayedScriptRunner.OverflowPolicy;
 import de.fu_berlin.inf.ag_se.browser.utils.IConverter;
 import de.fu_berlin.inf.ag_se.browser.utils.SWTUtils;
 import de.fu_berlin.inf.ag_se.browser.utils.colors.RGB;
@@ -25,8 +30,14 @@ import org.eclipse.swt.widgets.Listener;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -73,7 +84,7 @@ public class SWTBrowser<T extends Browser> extends AbstractSWTBrowser<T> impleme
      *
      * @return a future to check whether the delayed execution has happened
      */
-    public Future<Void> addFocusBorder() {
+    public ListenableFuture<Void> addFocusBorder() {
         return browser.run("window.__addFocusBorder();", IConverter.CONVERTER_VOID);
     }
 
@@ -85,7 +96,7 @@ public class SWTBrowser<T extends Browser> extends AbstractSWTBrowser<T> impleme
      *
      * @return a future to check whether the delayed execution has happened
      */
-    public Future<Void> removeFocusBorder() {
+    public ListenableFuture<Void> removeFocusBorder() {
         return browser.run("window.__removeFocusBorder();", IConverter.CONVERTER_VOID);
     }
 
@@ -135,17 +146,17 @@ public class SWTBrowser<T extends Browser> extends AbstractSWTBrowser<T> impleme
     }
 
     @Override
-    public Future<Boolean> open(String uri, int timeout) {
+    public ListenableFuture<Boolean> open(String uri, int timeout) {
         return browser.open(uri, timeout);
     }
 
     @Override
-    public Future<Boolean> open(String uri, int timeout, @Nullable String pageLoadCheckScript) {
+    public ListenableFuture<Boolean> open(String uri, int timeout, @Nullable String pageLoadCheckScript) {
         return browser.open(uri, timeout, pageLoadCheckScript);
     }
 
     @Override
-    public Future<Boolean> open(URI uri, int timeout) {
+    public ListenableFuture<Boolean> open(URI uri, int timeout) {
         return browser.open(uri, timeout);
     }
 
@@ -155,12 +166,12 @@ public class SWTBrowser<T extends Browser> extends AbstractSWTBrowser<T> impleme
     }
 
     @Override
-    public Future<Boolean> open(URI uri, int timeout, CallbackFunction<Boolean, Boolean> callback) {
+    public ListenableFuture<Boolean> open(URI uri, int timeout, CallbackFunction<Boolean, Boolean> callback) {
         return browser.open(uri, timeout, callback);
     }
 
     @Override
-    public Future<Boolean> open(URI uri, int timeout, @Nullable String pageLoadCheckScript) {
+    public ListenableFuture<Boolean> open(URI uri, int timeout, @Nullable String pageLoadCheckScript) {
         return browser.open(uri, timeout, pageLoadCheckScript);
     }
 
@@ -170,13 +181,13 @@ public class SWTBrowser<T extends Browser> extends AbstractSWTBrowser<T> impleme
     }
 
     @Override
-    public Future<Boolean> openWithCallback(URI uri, int timeout, @Nullable String pageLoadCheckScript,
+    public ListenableFuture<Boolean> openWithCallback(URI uri, int timeout, @Nullable String pageLoadCheckScript,
                                             CallbackFunction<Boolean, Boolean> callback) {
         return browser.openWithCallback(uri, timeout, pageLoadCheckScript, callback);
     }
 
     @Override
-    public Future<Boolean> openBlank() {
+    public ListenableFuture<Boolean> openBlank() {
         return browser.openBlank();
     }
 
@@ -196,12 +207,12 @@ public class SWTBrowser<T extends Browser> extends AbstractSWTBrowser<T> impleme
     }
 
     @Override
-    public Future<Void> checkCondition(String javaScriptExpression) {
+    public ListenableFuture<Void> checkCondition(String javaScriptExpression) {
         return browser.checkCondition(javaScriptExpression);
     }
 
     @Override
-    public <DEST> Future<DEST> executeWhenConditionIsMet(String javaScriptExpression, CallbackFunction<Void, DEST> callback) {
+    public <DEST> ListenableFuture<DEST> executeWhenConditionIsMet(String javaScriptExpression, CallbackFunction<Void, DEST> callback) {
         return browser.executeWhenConditionIsMet(javaScriptExpression, callback);
     }
 
@@ -211,12 +222,12 @@ public class SWTBrowser<T extends Browser> extends AbstractSWTBrowser<T> impleme
     }
 
     @Override
-    public Future<Boolean> injectJavascript(File javascriptFile) {
+    public ListenableFuture<Boolean> injectJavascript(File javascriptFile) {
         return browser.injectJavascript(javascriptFile);
     }
 
     @Override
-    public Future<Boolean> injectJavascript(URI scriptURI) {
+    public ListenableFuture<Boolean> injectJavascript(URI scriptURI) {
         return browser.injectJavascript(scriptURI);
     }
 
@@ -226,7 +237,7 @@ public class SWTBrowser<T extends Browser> extends AbstractSWTBrowser<T> impleme
     }
 
     @Override
-    public Future<Boolean> injectCssURI(URI cssURI) {
+    public ListenableFuture<Boolean> injectCssURI(URI cssURI) {
         return browser.injectCssURI(cssURI);
     }
 
@@ -236,7 +247,7 @@ public class SWTBrowser<T extends Browser> extends AbstractSWTBrowser<T> impleme
     }
 
     @Override
-    public Future<Boolean> injectCss(String css) {
+    public ListenableFuture<Boolean> injectCss(String css) {
         return browser.injectCss(css);
     }
 
@@ -246,27 +257,27 @@ public class SWTBrowser<T extends Browser> extends AbstractSWTBrowser<T> impleme
     }
 
     @Override
-    public <DEST> Future<DEST> injectCss(String css, CallbackFunction<Boolean, DEST> callback) {
+    public <DEST> ListenableFuture<DEST> injectCss(String css, CallbackFunction<Boolean, DEST> callback) {
         return browser.injectCss(css, callback);
     }
 
     @Override
-    public Future<Boolean> run(File scriptFile) {
+    public ListenableFuture<Boolean> run(File scriptFile) {
         return browser.run(scriptFile);
     }
 
     @Override
-    public Future<Boolean> runContentAsScriptTag(File scriptFile) throws IOException {
+    public ListenableFuture<Boolean> runContentAsScriptTag(File scriptFile) throws IOException {
         return browser.runContentAsScriptTag(scriptFile);
     }
 
     @Override
-    public Future<Boolean> run(URI scriptURI) {
+    public ListenableFuture<Boolean> run(URI scriptURI) {
         return browser.run(scriptURI);
     }
 
     @Override
-    public Future<Object> run(String script) {
+    public ListenableFuture<Object> run(String script) {
         return browser.run(script);
     }
 
@@ -276,22 +287,52 @@ public class SWTBrowser<T extends Browser> extends AbstractSWTBrowser<T> impleme
     }
 
     @Override
-    public <DEST> Future<DEST> run(String script, CallbackFunction<Object, DEST> callback) {
+    public <DEST> ListenableFuture<DEST> run(String script, CallbackFunction<Object, DEST> callback) {
         return browser.run(script, callback);
     }
 
     @Override
-    public <DEST> Future<DEST> run(String script, IConverter<Object, DEST> converter) {
+    public <DEST> ListenableFuture<DEST> run(String script, IConverter<Object, DEST> converter) {
         return browser.run(script, converter);
     }
 
+    @Override
+    public <DEST> ListenableFuture<DEST> run(String script, IConverter<Object, DEST> converter, long timeout, TimeUnit unit) {
+        return browser.run(script, converter, timeout, unit);
+    }
+
+    @Override
+    public <DEST> ListenableFuture<DEST> run(String script, IConverter<Object, DEST> converter, Duration timeout) {
+        return browser.run(script, converter, timeout);
+    }
+
+    @Override
+    public <DEST> ListenableFuture<DEST> run(String key, String script, IConverter<Object, DEST> converter) {
+        return browser.run(key, script, converter);
+    }
+
+    @Override
+    public PreparedScript prepareScript(String functionBody, String... parameterNames) {
+        return browser.prepareScript(functionBody, parameterNames);
+    }
+
+    @Override
+    public <DEST> ListenableFuture<DEST> run(PreparedScript preparedScript, IConverter<Object, DEST> converter, Object... arguments) {
+        return browser.run(preparedScript, converter, arguments);
+    }
+
+    @Override
+    public void releasePreparedScript(PreparedScript preparedScript) {
+        browser.releasePreparedScript(preparedScript);
+    }
+
     @Override
     public <DEST> DEST syncRun(String script, IConverter<Object, DEST> converter) {
         return browser.syncRun(script, converter);
     }
 
     @Override
-    public <T, DEST> Future<T> run(String script, IConverter<Object, DEST> converter, CallbackFunction<DEST, T> callback) {
+    public <T, DEST> ListenableFuture<T> run(String script, IConverter<Object, DEST> converter, CallbackFunction<DEST, T> callback) {
         return browser.run(script, converter, callback);
     }
 
@@ -306,37 +347,67 @@ public class SWTBrowser<T extends Browser> extends AbstractSWTBrowser<T> impleme
     }
 
     @Override
-    public Future<Boolean> containsElementWithID(String id) {
+    public ListenableFuture<Boolean> containsElementWithID(String id) {
         return browser.containsElementWithID(id);
     }
 
     @Override
-    public Future<Boolean> containsElementsWithName(String name) {
+    public ListenableFuture<Boolean> containsElementsWithName(String name) {
         return browser.containsElementsWithName(name);
     }
 
     @Override
-    public Future<Boolean> setBodyHtml(String html) {
+    public ListenableFuture<Boolean> setBodyHtml(String html) {
         return browser.setBodyHtml(html);
     }
 
     @Override
-    public Future<String> getBodyHtml() {
+    public ListenableFuture<Boolean> patchBodyHtml(String html) {
+        return browser.patchBodyHtml(html);
+    }
+
+    @Override
+    public ListenableFuture<String> getBodyHtml() {
         return browser.getBodyHtml();
     }
 
     @Override
-    public Future<String> getHtml() {
+    public ListenableFuture<String> getHtml() {
         return browser.getHtml();
     }
 
     @Override
-    public <T> Future<T> getHtml(CallbackFunction<String, T> callback) {
+    public <T> ListenableFuture<T> getHtml(CallbackFunction<String, T> callback) {
         return browser.getHtml(callback);
     }
 
     @Override
-    public Future<Boolean> pasteHtmlAtCaret(String html) {
+    public ListenableFuture<Long> getHtml(Writer writer) {
+        return browser.getHtml(writer);
+    }
+
+    @Override
+    public ListenableFuture<Long> getHtml(File file) {
+        return browser.getHtml(file);
+    }
+
+    @Override
+    public ListenableFuture<Long> getHtml(Path path) {
+        return browser.getHtml(path);
+    }
+
+    @Override
+    public ListenableFuture<Long> getBodyHtml(Writer writer) {
+        return browser.getBodyHtml(writer);
+    }
+
+    @Override
+    public Reader stream(String javaScriptExpression) {
+        return browser.stream(javaScriptExpression);
+    }
+
+    @Override
+    public ListenableFuture<Boolean> pasteHtmlAtCaret(String html) {
         return browser.pasteHtmlAtCaret(html);
     }
 
@@ -345,6 +416,36 @@ public class SWTBrowser<T extends Browser> extends AbstractSWTBrowser<T> impleme
         browser.setAllowLocationChange(allowed);
     }
 
+    @Override
+    public void setScriptBatchingEnabled(boolean enabled) {
+        browser.setScriptBatchingEnabled(enabled);
+    }
+
+    @Override
+    public void setDefaultScriptTimeout(long timeout, TimeUnit unit) {
+        browser.setDefaultScriptTimeout(timeout, unit);
+    }
+
+    @Override
+    public void setDefaultScriptTimeout(Duration timeout) {
+        browser.setDefaultScriptTimeout(timeout);
+    }
+
+    @Override
+    public void setScriptQueueLimit(int capacity, OverflowPolicy overflowPolicy) {
+        browser.setScriptQueueLimit(capacity, overflowPolicy);
+    }
+
+    @Override
+    public void setListenerExecutor(Executor executor) {
+        browser.setListenerExecutor(executor);
+    }
+
+    @Override
+    public BrowserMetrics getMetrics() {
+        return browser.getMetrics();
+    }
+
     @Override
     public void deactivateTextSelections() {
         browser.deactivateTextSelections();
@@ -365,6 +466,16 @@ public class SWTBrowser<T extends Browser> extends AbstractSWTBrowser<T> impleme
         browser.removeJavaScriptExceptionListener(exceptionListener);
     }
 
+    @Override
+    public void addPageLoadListener(IPageLoadListener pageLoadListener) {
+        browser.addPageLoadListener(pageLoadListener);
+    }
+
+    @Override
+    public void removePageLoadListener(IPageLoadListener pageLoadListener) {
+        browser.removePageLoadListener(pageLoadListener);
+    }
+
     @Override
     public void runOnDisposal(Runnable runnable) {
         browser.runOnDisposal(runnable);
@@ -1,9 +1,11 @@
 package de.fu_berlin.inf.ag_se.browser.swt;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import de.fu_berlin.inf.ag_se.browser.functions.JavascriptFunction;
-import de.fu_berlin.inf.ag_se.browser.extensions.BrowserExtension;
+import de.fu_berlin.inf.ag_se.browser.extensions.IBrowserExtension;
 import de.fu_berlin.inf.ag_se.browser.extensions.EventCatchBrowser;
 import de.fu_berlin.inf.ag_se.browser.extensions.IEventCatchBrowser;
+import de.fu_berlin.inf.ag_se.browser.html.IElement;
 import de.fu_berlin.inf.ag_se.browser.listener.IAnchorListener;
 import de.fu_berlin.inf.ag_se.browser.listener.IDNDListener;
 import de.fu_berlin.inf.ag_se.browser.listener.IFocusListener;
@@ -30,10 +32,10 @@ public class SWTEventCatchBrowser<T extends EventCatchBrowser> extends SWTExtend
     }
 
     public static SWTEventCatchBrowser createSWTBrowser(Composite parent, int style) {
-        return createSWTBrowser(parent, style, Collections.<BrowserExtension>emptyList());
+        return createSWTBrowser(parent, style, Collections.<IBrowserExtension>emptyList());
     }
 
-    public static SWTEventCatchBrowser createSWTBrowser(Composite parent, int style, Iterable<BrowserExtension> extensions) {
+    public static SWTEventCatchBrowser createSWTBrowser(Composite parent, int style, Iterable<? extends IBrowserExtension> extensions) {
         final SWTEventCatchBrowser swtEventCatchBrowser = new SWTEventCatchBrowser(parent, style);
         SWTInternalBrowserWrapper internalSWTBrowserWrapper = new SWTInternalBrowserWrapper(swtEventCatchBrowser);
         swtEventCatchBrowser.setInternalBrowser(internalSWTBrowserWrapper);
@@ -66,6 +68,30 @@ public class SWTEventCatchBrowser<T extends EventCatchBrowser> extends SWTExtend
         return swtEventCatchBrowser;
     }
 
+    /**
+     * Makes {@link #computeSize(int, int, boolean)} return the size of the loaded page's content
+     * and lays out the parents whenever it changes.
+     * Until this method is called and the content's bounds are reported the default size is returned.
+     */
+    public void trackContentBounds() {
+        browser.trackContentBounds();
+    }
+
+    @Override
+    public void setEventChannelRate(int batchesPerSecond) {
+        browser.setEventChannelRate(batchesPerSecond);
+    }
+
+    @Override
+    public void setElementDescriptors(boolean enabled) {
+        browser.setElementDescriptors(enabled);
+    }
+
+    @Override
+    public ListenableFuture<String> fetchHtml(IElement element) {
+        return browser.fetchHtml(element);
+    }
+
     @Override
     public void addAnchorListener(IAnchorListener anchorListener) {
         browser.addAnchorListener(anchorListener);
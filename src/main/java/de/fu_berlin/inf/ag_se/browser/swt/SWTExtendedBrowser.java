@@ -1,6 +1,6 @@
 package de.fu_berlin.inf.ag_se.browser.swt;
 
-import de.fu_berlin.inf.ag_se.browser.extensions.BrowserExtension;
+import de.fu_berlin.inf.ag_se.browser.extensions.IBrowserExtension;
 import de.fu_berlin.inf.ag_se.browser.extensions.ExtendedBrowser;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.Composite;
@@ -20,10 +20,10 @@ public class SWTExtendedBrowser<T extends ExtendedBrowser> extends SWTBrowser<T>
     }
 
     public static SWTExtendedBrowser createSWTBrowser(Composite parent, int style) {
-           return createSWTBrowser(parent, style, Collections.<BrowserExtension>emptyList());
+           return createSWTBrowser(parent, style, Collections.<IBrowserExtension>emptyList());
     }
 
-    public static SWTExtendedBrowser createSWTBrowser(Composite parent, int style, Iterable<BrowserExtension> extensions) {
+    public static SWTExtendedBrowser createSWTBrowser(Composite parent, int style, Iterable<? extends IBrowserExtension> extensions) {
         SWTExtendedBrowser swtExtendedBrowser = new SWTExtendedBrowser(parent, style);
         SWTInternalBrowserWrapper internalSWTBrowserWrapper = new SWTInternalBrowserWrapper(swtExtendedBrowser);
         swtExtendedBrowser.setInternalBrowser(internalSWTBrowserWrapper);
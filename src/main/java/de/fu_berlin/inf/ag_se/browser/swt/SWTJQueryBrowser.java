@@ -1,6 +1,7 @@
 package de.fu_berlin.inf.ag_se.browser.swt;
 
-import de.fu_berlin.inf.ag_se.browser.extensions.BrowserExtension;
+import com.google.common.util.concurrent.ListenableFuture;
+import de.fu_berlin.inf.ag_se.browser.extensions.IBrowserExtension;
 import de.fu_berlin.inf.ag_se.browser.extensions.IJQueryBrowser;
 import de.fu_berlin.inf.ag_se.browser.extensions.JQueryBrowser;
 import de.fu_berlin.inf.ag_se.browser.html.IElement;
@@ -10,7 +11,6 @@ import org.eclipse.swt.SWT;
 import org.eclipse.swt.widgets.Composite;
 
 import java.util.Collections;
-import java.util.concurrent.Future;
 
 public class SWTJQueryBrowser<T extends JQueryBrowser> extends SWTEventCatchBrowser<T> implements IJQueryBrowser {
 
@@ -25,10 +25,10 @@ public class SWTJQueryBrowser<T extends JQueryBrowser> extends SWTEventCatchBrow
     }
 
     public static SWTJQueryBrowser createSWTBrowser(Composite parent, int style) {
-        return createSWTBrowser(parent, style, Collections.<BrowserExtension>emptyList());
+        return createSWTBrowser(parent, style, Collections.<IBrowserExtension>emptyList());
     }
 
-    public static SWTJQueryBrowser createSWTBrowser(Composite parent, int style, Iterable<BrowserExtension> extensions) {
+    public static SWTJQueryBrowser createSWTBrowser(Composite parent, int style, Iterable<? extends IBrowserExtension> extensions) {
         SWTJQueryBrowser<JQueryBrowser> swtJQueryBrowser = new SWTJQueryBrowser<JQueryBrowser>(parent, style);
         SWTInternalBrowserWrapper internalSWTBrowserWrapper = new SWTInternalBrowserWrapper(swtJQueryBrowser);
         swtJQueryBrowser.setInternalBrowser(internalSWTBrowserWrapper);
@@ -37,87 +37,87 @@ public class SWTJQueryBrowser<T extends JQueryBrowser> extends SWTEventCatchBrow
     }
 
     @Override
-    public Future<Boolean> containsElement(ISelector selector) {
+    public ListenableFuture<Boolean> containsElement(ISelector selector) {
         return browser.containsElement(selector);
     }
 
     @Override
-    public Future<Point> getRelativePosition(ISelector selector) {
+    public ListenableFuture<Point> getRelativePosition(ISelector selector) {
         return browser.getRelativePosition(selector);
     }
 
     @Override
-    public Future<Point> getScrollPosition() {
+    public ListenableFuture<Point> getScrollPosition() {
         return browser.getScrollPosition();
     }
 
     @Override
-    public Future<Point> getScrollPosition(ISelector selector) {
+    public ListenableFuture<Point> getScrollPosition(ISelector selector) {
         return browser.getScrollPosition(selector);
     }
 
     @Override
-    public Future<Boolean> scrollTo(int x, int y) {
+    public ListenableFuture<Boolean> scrollTo(int x, int y) {
         return browser.scrollTo(x, y);
     }
 
     @Override
-    public Future<Boolean> scrollTo(Point pos) {
+    public ListenableFuture<Boolean> scrollTo(Point pos) {
         return browser.scrollTo(pos);
     }
 
     @Override
-    public Future<Boolean> scrollTo(ISelector selector) {
+    public ListenableFuture<Boolean> scrollTo(ISelector selector) {
         return browser.scrollTo(selector);
     }
 
     @Override
-    public Future<Object> focus(ISelector selector) {
+    public ListenableFuture<Object> focus(ISelector selector) {
         return browser.focus(selector);
     }
 
     @Override
-    public Future<IElement> getFocusedElement() {
+    public ListenableFuture<IElement> getFocusedElement() {
         return browser.getFocusedElement();
     }
 
     @Override
-    public Future<Object> blur(ISelector selector) {
+    public ListenableFuture<Object> blur(ISelector selector) {
         return browser.blur(selector);
     }
 
     @Override
-    public Future<Object> keyUp(ISelector selector) {
+    public ListenableFuture<Object> keyUp(ISelector selector) {
         return browser.keyUp(selector);
     }
 
     @Override
-    public Future<Object> keyDown(ISelector selector) {
+    public ListenableFuture<Object> keyDown(ISelector selector) {
         return browser.keyDown(selector);
     }
 
     @Override
-    public Future<Object> keyPress(ISelector selector) {
+    public ListenableFuture<Object> keyPress(ISelector selector) {
         return browser.keyPress(selector);
     }
 
     @Override
-    public Future<Object> forceKeyPress(ISelector selector) {
+    public ListenableFuture<Object> forceKeyPress(ISelector selector) {
         return browser.forceKeyPress(selector);
     }
 
     @Override
-    public Future<Object> simulateTyping(ISelector selector, String text) {
+    public ListenableFuture<Object> simulateTyping(ISelector selector, String text) {
         return browser.simulateTyping(selector, text);
     }
 
     @Override
-    public Future<Object> val(ISelector selector, String value) {
+    public ListenableFuture<Object> val(ISelector selector, String value) {
         return browser.val(selector, value);
     }
 
     @Override
-    public Future<Object> submit(ISelector selector) {
+    public ListenableFuture<Object> submit(ISelector selector) {
         return browser.submit(selector);
     }
 }
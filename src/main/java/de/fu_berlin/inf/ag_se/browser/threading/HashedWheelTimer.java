@@ -0,0 +1,286 @@
+package de.fu_berlin.inf.ag_se.browser.threading;
+
+import org.apache.log4j.Logger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A timer for large numbers of timeouts that are usually cancelled before they expire.
+ * <p/>
+ * The timeouts are kept in a wheel of buckets, each covering one tick. Scheduling and
+ * cancelling take constant time as they only enqueue the timeout; the single worker thread
+ * moves it into its bucket or out of it on the next tick. Timeouts therefore expire up to
+ * one tick late. While no timeout is pending the worker thread sleeps without ticking.
+ * <p/>
+ * The actions are run by the worker thread and must not block.
+ */
+public class HashedWheelTimer {
+
+    private static final Logger LOGGER = Logger.getLogger(HashedWheelTimer.class);
+
+    /**
+     * A scheduled action.
+     */
+    public interface Timeout {
+
+        /**
+         * Prevents the action from being run.
+         *
+         * @return false if the action has already been run or cancelled
+         */
+        boolean cancel();
+
+        boolean isCancelled();
+
+        boolean isExpired();
+    }
+
+    private static final int INITIAL = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final class Entry implements Timeout {
+        private final Runnable action;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(INITIAL);
+        private long remainingRounds;
+        private Bucket bucket;
+        private Entry previous;
+        private Entry next;
+
+        private Entry(Runnable action, long deadline) {
+            this.action = action;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!state.compareAndSet(INITIAL, CANCELLED)) {
+                return false;
+            }
+            pendingTimeouts.decrementAndGet();
+            cancelledEntries.add(this);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(INITIAL, EXPIRED)) {
+                return;
+            }
+            pendingTimeouts.decrementAndGet();
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                LOGGER.error("Error running timeout action " + action, e);
+            }
+        }
+    }
+
+    /**
+     * A doubly linked list of entries that is only accessed by the worker thread.
+     */
+    private static final class Bucket {
+        private Entry head;
+        private Entry tail;
+
+        private void add(Entry entry) {
+            entry.bucket = this;
+            if (head == null) {
+                head = tail = entry;
+            } else {
+                tail.next = entry;
+                entry.previous = tail;
+                tail = entry;
+            }
+        }
+
+        private Entry remove(Entry entry) {
+            Entry next = entry.next;
+            if (entry.previous != null) {
+                entry.previous.next = next;
+            } else {
+                head = next;
+            }
+            if (next != null) {
+                next.previous = entry.previous;
+            } else {
+                tail = entry.previous;
+            }
+            entry.previous = entry.next = null;
+            entry.bucket = null;
+            return next;
+        }
+    }
+
+    private final String name;
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+
+    private final Queue<Entry> newEntries = new ConcurrentLinkedQueue<Entry>();
+    private final Queue<Entry> cancelledEntries = new ConcurrentLinkedQueue<Entry>();
+    private final AtomicInteger pendingTimeouts = new AtomicInteger(0);
+
+    private final Object lock = new Object();
+    private volatile boolean idle = false;
+    private volatile Thread worker;
+
+    /**
+     * @param name          the name of the worker thread
+     * @param tickDuration  the time covered by one bucket
+     * @param unit          the unit of the tick duration
+     * @param ticksPerWheel the number of buckets, rounded up to a power of two
+     *
+     * @throws IllegalArgumentException if the tick duration or the number of buckets is not positive
+     */
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if (tickDuration <= 0 || ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("The tick duration and the number of buckets must be positive");
+        }
+        int size = Integer.highestOneBit(ticksPerWheel);
+        if (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.name = name;
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Runs the given action once the given delay has elapsed.
+     *
+     * @return a handle that can be used to cancel the action
+     */
+    public Timeout schedule(Runnable action, long delay, TimeUnit unit) {
+        if (action == null) {
+            throw new NullPointerException();
+        }
+        Entry entry = new Entry(action, System.nanoTime() + unit.toNanos(Math.max(delay, 0)));
+        pendingTimeouts.incrementAndGet();
+        newEntries.add(entry);
+        startOrWakeWorker();
+        return entry;
+    }
+
+    /**
+     * Returns the number of scheduled actions that have neither been run nor cancelled.
+     */
+    public int getPendingTimeouts() {
+        return pendingTimeouts.get();
+    }
+
+    private void startOrWakeWorker() {
+        // the worker rechecks the pending timeouts after becoming idle, so this check needs no lock
+        if (worker != null && !idle) {
+            return;
+        }
+        synchronized (lock) {
+            if (worker == null) {
+                worker = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        work();
+                    }
+                }, name);
+                worker.setDaemon(true);
+                worker.start();
+            } else if (idle) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void work() {
+        long startTime = System.nanoTime();
+        long tick = 0;
+        while (true) {
+            removeCancelledEntries();
+            if (pendingTimeouts.get() == 0) {
+                // all buckets are empty, so the wheel can be restarted later on
+                synchronized (lock) {
+                    idle = true;
+                    while (pendingTimeouts.get() == 0) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            // the worker thread is never interrupted on purpose
+                        }
+                    }
+                    idle = false;
+                }
+                startTime = System.nanoTime();
+                tick = 0;
+            }
+
+            long sleepNanos = startTime + tickNanos * (tick + 1) - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    // the worker thread is never interrupted on purpose
+                }
+            }
+
+            removeCancelledEntries();
+            transferNewEntries(startTime, tick);
+            expireEntries(wheel[(int) (tick & mask)], System.nanoTime());
+            tick++;
+        }
+    }
+
+    private void removeCancelledEntries() {
+        Entry entry;
+        while ((entry = cancelledEntries.poll()) != null) {
+            if (entry.bucket != null) {
+                entry.bucket.remove(entry);
+            }
+        }
+    }
+
+    private void transferNewEntries(long startTime, long currentTick) {
+        Entry entry;
+        while ((entry = newEntries.poll()) != null) {
+            if (entry.state.get() != INITIAL) {
+                continue;
+            }
+            long ticks = Math.max((entry.deadline - startTime) / tickNanos, currentTick);
+            entry.remainingRounds = (ticks - currentTick) / wheel.length;
+            wheel[(int) (ticks & mask)].add(entry);
+        }
+    }
+
+    private void expireEntries(Bucket bucket, long now) {
+        Entry entry = bucket.head;
+        while (entry != null) {
+            if (entry.state.get() != INITIAL) {
+                entry = bucket.remove(entry);
+            } else if (entry.remainingRounds <= 0 && entry.deadline <= now) {
+                Entry next = bucket.remove(entry);
+                entry.expire();
+                entry = next;
+            } else {
+                if (entry.remainingRounds > 0) {
+                    entry.remainingRounds--;
+                }
+                entry = entry.next;
+            }
+        }
+    }
+}
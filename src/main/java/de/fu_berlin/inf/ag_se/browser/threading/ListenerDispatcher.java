@@ -0,0 +1,130 @@
+package de.fu_berlin.inf.ag_se.browser.threading;
+
+import de.fu_berlin.inf.ag_se.browser.listener.IUIThreadListener;
+import de.fu_berlin.inf.ag_se.browser.metrics.BrowserMetrics;
+import org.apache.log4j.Logger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Notifies the listeners of a browser.
+ * <p/>
+ * By default listeners are notified synchronously in the calling thread, which is the UI thread
+ * for events sent by the page. Once an {@link #setExecutor(Executor) executor} is set, notifications
+ * are delivered on a background lane instead that runs them one after another in the order they
+ * were dispatched, so that every listener receives the events in order and a slow listener
+ * no longer blocks the page. {@link IUIThreadListener}s are always notified synchronously.
+ * <p/>
+ * The time from dispatching an event until a listener returns is recorded per listener class
+ * in the browser's {@link BrowserMetrics}.
+ * <p/>
+ * May be used from whatever thread.
+ */
+public class ListenerDispatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(ListenerDispatcher.class);
+
+    /**
+     * The call of a listener method.
+     *
+     * @param <L> the type of the listener
+     */
+    public interface Notification<L> {
+        void call(L listener);
+    }
+
+    private final BrowserMetrics metrics;
+
+    private final Queue<Runnable> lane = new ConcurrentLinkedQueue<Runnable>();
+
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    private volatile Executor executor;
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                Runnable notification;
+                while ((notification = lane.poll()) != null) {
+                    notification.run();
+                }
+            } finally {
+                draining.set(false);
+                // a notification may have been added after polling the last one but before resetting the flag,
+                // or a listener threw an error that leaves the remaining notifications on the lane
+                schedule();
+            }
+        }
+    };
+
+    public ListenerDispatcher(BrowserMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the executor that runs the background lane.
+     * Notifications already waiting on the lane are still delivered.
+     *
+     * @param executor the executor or <code>null</code> to notify the listeners in the calling thread
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Notifies the given listeners in their order.
+     */
+    public <L> void dispatch(Iterable<L> listeners, final Notification<L> notification) {
+        final long dispatched = System.nanoTime();
+        for (final L listener : listeners) {
+            Runnable runnable = new Runnable() {
+                @Override
+                public void run() {
+                    deliver(listener, notification, dispatched);
+                }
+            };
+            if (executor == null || listener instanceof IUIThreadListener) {
+                runnable.run();
+            } else {
+                lane.add(runnable);
+            }
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        Executor executor = this.executor;
+        if (lane.isEmpty() || !draining.compareAndSet(false, true)) {
+            return;
+        }
+        if (executor == null) {
+            // the executor has been removed meanwhile
+            drain.run();
+            return;
+        }
+        try {
+            executor.execute(drain);
+        } catch (RejectedExecutionException e) {
+            drain.run();
+        }
+    }
+
+    private <L> void deliver(L listener, Notification<L> notification, long dispatched) {
+        try {
+            notification.call(listener);
+        } catch (RuntimeException e) {
+            LOGGER.error("Error notifying " + listener, e);
+        } finally {
+            metrics.listenerNotified(listener.getClass().getName(), (System.nanoTime() - dispatched) / 1000);
+        }
+    }
+}
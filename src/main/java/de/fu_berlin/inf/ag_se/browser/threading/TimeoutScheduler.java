@@ -0,0 +1,27 @@
+package de.fu_berlin.inf.ag_se.browser.threading;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs timeout actions of all browsers, e.g. load timeouts, condition timeouts and script deadlines,
+ * using a single daemon thread.
+ * The scheduled actions must not block.
+ */
+public final class TimeoutScheduler {
+
+    private static final HashedWheelTimer TIMER = new HashedWheelTimer(TimeoutScheduler.class.getSimpleName(),
+            10, TimeUnit.MILLISECONDS, 512);
+
+    private TimeoutScheduler() {
+    }
+
+    /**
+     * Runs the given action once the given delay has elapsed.
+     * The action may be run up to 10ms late.
+     *
+     * @return a handle that can be used to cancel the action
+     */
+    public static HashedWheelTimer.Timeout schedule(Runnable action, long delay, TimeUnit unit) {
+        return TIMER.schedule(action, delay, unit);
+    }
+}
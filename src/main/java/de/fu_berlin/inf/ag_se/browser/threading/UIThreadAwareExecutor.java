@@ -1,5 +1,7 @@
 package de.fu_berlin.inf.ag_se.browser.threading;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
 import de.fu_berlin.inf.ag_se.browser.threading.labeling.ThreadLabelingCallable;
 import de.fu_berlin.inf.ag_se.browser.threading.labeling.ThreadLabelingRunnable;
 import de.fu_berlin.inf.ag_se.browser.threading.labeling.ThreadLabelingUtils;
@@ -20,12 +22,12 @@ public class UIThreadAwareExecutor extends ThreadPoolExecutor {
         this.uiThreadExecutor = uiThreadExecutor;
     }
 
-    static class ThreadSafeUITask<V> implements RunnableFuture<V> {
+    static class ThreadSafeUITask<V> implements RunnableFuture<V>, ListenableFuture<V> {
 
-        private final RunnableFuture<V> task;
+        private final ListenableFutureTask<V> task;
         private final UIThreadExecutor uiThreadExecutor;
 
-        public ThreadSafeUITask(RunnableFuture<V> task, UIThreadExecutor uiThreadExecutor) {
+        public ThreadSafeUITask(ListenableFutureTask<V> task, UIThreadExecutor uiThreadExecutor) {
             this.task = task;
             this.uiThreadExecutor = uiThreadExecutor;
         }
@@ -35,6 +37,11 @@ public class UIThreadAwareExecutor extends ThreadPoolExecutor {
             task.run();
         }
 
+        @Override
+        public void addListener(Runnable listener, Executor executor) {
+            task.addListener(listener, executor);
+        }
+
         @Override
         public boolean cancel(boolean mayInterruptIfRunning) {
             return task.cancel(mayInterruptIfRunning);
@@ -73,12 +80,27 @@ public class UIThreadAwareExecutor extends ThreadPoolExecutor {
 
     @Override
     protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
-        return new ThreadSafeUITask<T>(super.newTaskFor(runnable, value), uiThreadExecutor);
+        return new ThreadSafeUITask<T>(ListenableFutureTask.create(runnable, value), uiThreadExecutor);
     }
 
     @Override
     protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
-        return new ThreadSafeUITask<T>(super.newTaskFor(callable), uiThreadExecutor);
+        return new ThreadSafeUITask<T>(ListenableFutureTask.create(callable), uiThreadExecutor);
+    }
+
+    @Override
+    public ListenableFuture<?> submit(Runnable task) {
+        return (ListenableFuture<?>) super.submit(task);
+    }
+
+    @Override
+    public <T> ListenableFuture<T> submit(Runnable task, T result) {
+        return (ListenableFuture<T>) super.submit(task, result);
+    }
+
+    @Override
+    public <T> ListenableFuture<T> submit(Callable<T> task) {
+        return (ListenableFuture<T>) super.submit(task);
     }
 
     private static ThreadFactory createThreadFactory(Class<?> clazz, String purpose) {
@@ -97,12 +119,12 @@ public class UIThreadAwareExecutor extends ThreadPoolExecutor {
         };
     }
 
-    public Future<?> nonUIAsyncExec(final Class<?> clazz,
+    public ListenableFuture<?> nonUIAsyncExec(final Class<?> clazz,
                                         final String purpose, final Runnable runnable) {
         return submit(new ThreadLabelingRunnable(clazz, purpose, runnable), 0);
     }
 
-    public <V> Future<V> nonUIAsyncExec(final Class<?> clazz, final String purpose, final NoCheckedExceptionCallable<V> callable) {
+    public <V> ListenableFuture<V> nonUIAsyncExec(final Class<?> clazz, final String purpose, final NoCheckedExceptionCallable<V> callable) {
         return submit(new ThreadLabelingCallable<V>(clazz, purpose, callable));
     }
 
@@ -116,7 +138,7 @@ public class UIThreadAwareExecutor extends ThreadPoolExecutor {
         * @UIThread <b>Warning: {@link java.util.concurrent.Future#get()} must not be called from the UI thread</b>
         * @NonUIThread
         */
-       public <V> Future<V> asyncUIExec(final NoCheckedExceptionCallable<V> callable) {
+       public <V> ListenableFuture<V> asyncUIExec(final NoCheckedExceptionCallable<V> callable) {
            return submit(new NoCheckedExceptionCallable<V>() {
                @Override
                public V call() {
@@ -134,7 +156,7 @@ public class UIThreadAwareExecutor extends ThreadPoolExecutor {
         * @UIThread <b>Warning: {@link java.util.concurrent.Future#get()} must not be called from the UI thread</b>
         * @NonUIThread
         */
-       public Future<?> asyncUIExec(final Runnable runnable) {
+       public ListenableFuture<?> asyncUIExec(final Runnable runnable) {
            return submit(new Runnable() {
                @Override
                public void run() {
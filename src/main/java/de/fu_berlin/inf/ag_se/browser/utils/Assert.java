@@ -8,6 +8,12 @@ public class Assert {
         }
     }
 
+    public static void isLegal(boolean b, String message) {
+        if (!b) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
     public static void isNotNull(Object o) {
         if (o == null) {
             throw new IllegalStateException("Assertion failed: null argument");
@@ -1,54 +1,583 @@
 package de.fu_berlin.inf.ag_se.browser.utils;
 
+import com.google.common.util.concurrent.ExecutionList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
+import de.fu_berlin.inf.ag_se.browser.exception.ScriptDiscardedException;
+import de.fu_berlin.inf.ag_se.browser.exception.ScriptRejectedException;
+import de.fu_berlin.inf.ag_se.browser.exception.ScriptSupersededException;
+import de.fu_berlin.inf.ag_se.browser.exception.ScriptTimeoutException;
+import de.fu_berlin.inf.ag_se.browser.metrics.BrowserMetrics;
+import de.fu_berlin.inf.ag_se.browser.threading.HashedWheelTimer;
+import de.fu_berlin.inf.ag_se.browser.threading.TimeoutScheduler;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
 import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DelayedScriptRunner {
 
-    private final LinkedBlockingQueue<FutureTask<?>> queue;
-    private final Thread runner;
+    private static final Logger LOGGER = Logger.getLogger(DelayedScriptRunner.class);
 
-    public DelayedScriptRunner() {
-        this.queue = new LinkedBlockingQueue<FutureTask<?>>();
-        this.runner = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                while (true) {
-                    try {
-                        FutureTask<?> task = queue.take();
-                        task.run();
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
+    /**
+     * The maximum number of queued jobs that are handed over to the {@link BatchExecutor} at once.
+     */
+    private static final int MAX_BATCH_SIZE = 64;
+
+    /**
+     * The number of jobs that may be queued unless configured otherwise, i.e. no limit.
+     */
+    public static final int DEFAULT_CAPACITY = Integer.MAX_VALUE;
+
+    /**
+     * Defines what happens if a job is submitted while the queue is full.
+     */
+    public static enum OverflowPolicy {
+        /**
+         * The submitting thread waits until there is room in the queue or the job's deadline has passed.
+         * Jobs submitted by the UI thread are rejected instead as the queue can only shrink if the UI thread is free.
+         */
+        BLOCK,
+
+        /**
+         * The job is rejected.
+         */
+        FAIL,
+
+        /**
+         * The oldest queued job is removed and fails to make room for the new one.
+         */
+        DROP_OLDEST,
+
+        /**
+         * A job equal to an already queued one is not queued but shares the queued job's future.
+         * Other jobs are rejected if the queue is full.
+         */
+        COALESCE
+    }
+
+    /**
+     * Executes multiple queued jobs at once, e.g. by combining several scripts into a single browser round trip.
+     */
+    public interface BatchExecutor {
+
+        /**
+         * Tells whether the given callable may be executed as part of a batch.
+         *
+         * @param callable the callable to be checked
+         * @return true if the callable can be batched, false if it has to be run on its own
+         */
+        boolean isBatchable(Callable<?> callable);
+
+        /**
+         * Executes the given tasks in the given order.
+         * Implementations must complete each task by calling either {@link DelayedTask#set(Object)}
+         * or {@link DelayedTask#setException(Throwable)}.
+         *
+         * @param tasks the tasks to be executed, all of them batchable
+         */
+        void executeBatch(List<DelayedTask<?>> tasks);
+    }
+
+    /**
+     * A job that may pass its result on to a queued job with the same key it replaces.
+     */
+    public interface ResultSharing {
+
+        /**
+         * Tells whether the result of this job can stand for the result of the given replaced job.
+         *
+         * @param replaced the job that is replaced by this one
+         * @return true if the replaced job's future may be completed with this job's result
+         */
+        boolean canShareResultWith(Callable<?> replaced);
+    }
+
+    /**
+     * A queued job whose result can also be set from outside, which is needed for batch execution.
+     * Listeners are notified as soon as the job completes, so nobody needs to block on it.
+     * <p/>
+     * A job may have a deadline. If it is not completed by then it fails with a {@link ScriptTimeoutException}
+     * and is removed from the queue. The same applies to cancelled jobs.
+     * <p/>
+     * A job may have a key. Submitting a job with the key of a queued job replaces the queued one in place.
+     */
+    public static class DelayedTask<V> extends FutureTask<V> implements ListenableFuture<V> {
+
+        private final Callable<V> callable;
+        private final DelayedScriptRunner runner;
+        private final Object key;
+        private final ExecutionList executionList = new ExecutionList();
+        private volatile long deadline;
+        private volatile long timeoutMillis = 0;
+        private volatile HashedWheelTimer.Timeout expiration;
+
+        DelayedTask(Callable<V> callable, DelayedScriptRunner runner, Object key) {
+            super(callable);
+            this.callable = callable;
+            this.runner = runner;
+            this.key = key;
+        }
+
+        public Callable<V> getCallable() {
+            return callable;
+        }
+
+        @Override
+        public void set(V v) {
+            super.set(v);
+        }
+
+        @Override
+        public void setException(Throwable t) {
+            super.setException(t);
+        }
+
+        @Override
+        public void addListener(Runnable listener, Executor executor) {
+            executionList.add(listener, executor);
+        }
+
+        private void expireAfter(long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+            this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            this.expiration = TimeoutScheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    expire();
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        private void cancelExpiration() {
+            HashedWheelTimer.Timeout expiration = this.expiration;
+            if (expiration != null) {
+                expiration.cancel();
+            }
+        }
+
+        private boolean isExpired() {
+            return timeoutMillis > 0 && System.nanoTime() - deadline >= 0;
+        }
+
+        private void expire() {
+            if (!isDone()) {
+                setException(new ScriptTimeoutException(String.valueOf(callable), timeoutMillis));
+                runner.metrics.deadlineMissed();
+            }
+        }
+
+        @Override
+        protected void done() {
+            cancelExpiration();
+            if (isCancelled() || isExpired()) {
+                runner.remove(this);
+            }
+            executionList.execute();
+        }
+    }
+
+    /**
+     * The threads shared by all runners. Each runner only occupies one of them while it has queued jobs,
+     * so the number of threads depends on the number of cores instead of the number of browsers.
+     */
+    private static final ExecutorService SCHEDULER = createScheduler();
+
+    private final LinkedList<DelayedTask<?>> queue;
+    private final BrowserMetrics metrics;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private volatile boolean started = false;
+    private volatile boolean stopped = false;
+    private volatile BatchExecutor batchExecutor;
+    private int capacity = DEFAULT_CAPACITY;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.FAIL;
+    private int flushCount = 0;
+
+    /**
+     * Executes one batch of queued jobs and reschedules this runner if further jobs are queued.
+     * Rescheduling instead of looping lets the runners of other browsers take their turn.
+     */
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                List<DelayedTask<?>> tasks = new ArrayList<DelayedTask<?>>();
+                synchronized (DelayedScriptRunner.this) {
+                    while (!queue.isEmpty() && tasks.size() < MAX_BATCH_SIZE) {
+                        tasks.add(queue.removeFirst());
                     }
+                    dequeued(tasks.size());
                 }
+                execute(tasks);
+            } finally {
+                scheduled.set(false);
+                schedule();
             }
-        }, "DelayedScriptRunner");
+        }
+    };
+
+    public DelayedScriptRunner(BrowserMetrics metrics) {
+        this.queue = new LinkedList<DelayedTask<?>>();
+        this.metrics = metrics;
     }
 
+    private static ExecutorService createScheduler() {
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        ThreadPoolExecutor scheduler = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger i = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, DelayedScriptRunner.class.getSimpleName() + " #" + i.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        scheduler.allowCoreThreadTimeOut(true);
+        return scheduler;
+    }
+
+    /**
+     * Sets the {@link BatchExecutor} used to execute all jobs that are queued at the same time at once.
+     *
+     * @param batchExecutor the executor to be used, or null to run each job on its own
+     */
+    public void setBatchExecutor(BatchExecutor batchExecutor) {
+        this.batchExecutor = batchExecutor;
+    }
+
+    /**
+     * Starts executing the queued jobs. May be called again after the runner has been flushed.
+     */
     public void start() {
-        runner.start();
+        started = true;
+        schedule();
     }
 
+    /**
+     * Stops executing jobs. The currently executed batch is still finished.
+     */
     public void stop() {
-        runner.interrupt();
+        stopped = true;
+    }
+
+    /**
+     * Sets the maximum number of queued jobs and what happens if it is exceeded.
+     *
+     * @param capacity       the maximum number of queued jobs
+     * @param overflowPolicy the policy applied to jobs submitted while the queue is full
+     */
+    public synchronized void setCapacity(int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+        if (overflowPolicy == null) {
+            throw new NullPointerException("overflowPolicy must not be null");
+        }
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        notifyAll();
+    }
+
+    public <V> ListenableFuture<V> submit(final Callable<V> callable) {
+        return submit(callable, null, 0, false);
+    }
+
+    public <V> ListenableFuture<V> submit(final Callable<V> callable, Object key, long timeoutMillis,
+                                          boolean mayBlock) {
+        return submit(callable, key, timeoutMillis, mayBlock, -1);
     }
 
-    public synchronized <V> Future<V> submit(final Callable<V> callable) {
-        FutureTask<V> task = new FutureTask<V>(callable);
-        if (!queue.add(task)) {
-            throw new RuntimeException("Capacity (" + queue.size()
-                    + ") of " + this.getClass().getSimpleName() + " exceeded!");
+    /**
+     * Returns the number of times the queue has been flushed, see {@link #flush()}.
+     */
+    public synchronized int getFlushCount() {
+        return flushCount;
+    }
+
+    /**
+     * Queues the given job.
+     *
+     * @param callable      the job to be executed
+     * @param key           the key of the job, or null; a queued job with the same key is replaced in place
+     *                      and its future is completed with the new job's result if the new job is
+     *                      {@link ResultSharing} or fails with a {@link ScriptSupersededException} otherwise
+     * @param timeoutMillis the time the job may take including the time it is queued, or 0 for no deadline
+     * @param mayBlock      whether the calling thread may wait for room in the queue if the policy is
+     *                      {@link OverflowPolicy#BLOCK}; if false the job is rejected instead
+     * @param flushCount    the {@link #getFlushCount() flush count} the job was created for, or -1;
+     *                      if the queue has been flushed since, the job is discarded like a flushed one
+     * @return the job's future, failing with a {@link ScriptRejectedException} if the job could not be queued
+     * or with a {@link ScriptDiscardedException} if the queue has been flushed since the given flush count
+     */
+    public <V> ListenableFuture<V> submit(final Callable<V> callable, Object key, long timeoutMillis,
+                                          boolean mayBlock, int flushCount) {
+        DelayedTask<V> task = new DelayedTask<V>(callable, this, key);
+        if (timeoutMillis > 0) {
+            task.expireAfter(timeoutMillis);
+        }
+
+        DelayedTask<?> dropped = null;
+        DelayedTask<?> superseded = null;
+        synchronized (this) {
+            if (isFlushedSince(flushCount)) {
+                return discard(task);
+            }
+            if (key != null) {
+                superseded = replace(task);
+            }
+            if (overflowPolicy == OverflowPolicy.COALESCE) {
+                DelayedTask<V> pending = findEqual(task);
+                if (pending != null) {
+                    task.cancelExpiration();
+                    metrics.scriptCoalesced();
+                    return pending;
+                }
+            }
+            if (superseded != null) {
+                // the new job took the place of the superseded one
+            } else if (queue.size() >= capacity) {
+                if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                    dropped = queue.poll();
+                    dequeued(1);
+                } else if (overflowPolicy != OverflowPolicy.BLOCK || !mayBlock || !awaitRoom(task)) {
+                    task.cancelExpiration();
+                    metrics.scriptRejected();
+                    return Futures.immediateFailedFuture(new ScriptRejectedException(String.valueOf(callable),
+                            "the queue reached its capacity of " + capacity));
+                }
+                if (isFlushedSince(flushCount)) {
+                    // flushed while waiting for room
+                    return discard(task);
+                }
+            }
+            if (superseded == null) {
+                queue.add(task);
+                metrics.queueDepthChanged(1);
+            }
         }
+
+        if (superseded != null) {
+            metrics.scriptSuperseded();
+            supersede(superseded, task);
+        }
+        if (dropped != null) {
+            metrics.scriptDropped();
+            dropped.setException(new ScriptRejectedException(String.valueOf(dropped.getCallable()),
+                    "it was dropped in favor of a newer script"));
+        }
+        schedule();
         return task;
     }
 
     /**
-     * Removes all jobs from the queue. The currently job is still finished but the other jobs will never be executed.
+     * Must be called while holding this runner's lock.
+     */
+    private boolean isFlushedSince(int flushCount) {
+        return flushCount >= 0 && flushCount != this.flushCount;
+    }
+
+    private static <V> ListenableFuture<V> discard(DelayedTask<V> task) {
+        task.cancelExpiration();
+        return Futures.immediateFailedFuture(new ScriptDiscardedException(String.valueOf(task.getCallable())));
+    }
+
+    /**
+     * Replaces the queued job with the same key as the given one.
+     * Must be called while holding this runner's lock.
+     *
+     * @return the replaced job, or null if there was none
+     */
+    private DelayedTask<?> replace(DelayedTask<?> task) {
+        ListIterator<DelayedTask<?>> iterator = queue.listIterator();
+        while (iterator.hasNext()) {
+            DelayedTask<?> pending = iterator.next();
+            if (task.key.equals(pending.key) && !pending.isDone()) {
+                iterator.set(task);
+                return pending;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Completes the future of the replaced job with the result of the job that replaced it
+     * or with a {@link ScriptSupersededException} if the result cannot be shared.
+     */
+    private static <V> void supersede(final DelayedTask<V> superseded, final DelayedTask<?> survivor) {
+        if (!(survivor.getCallable() instanceof ResultSharing)
+                || !((ResultSharing) survivor.getCallable()).canShareResultWith(superseded.getCallable())) {
+            superseded.setException(new ScriptSupersededException(String.valueOf(superseded.getCallable())));
+            return;
+        }
+        survivor.addListener(new Runnable() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void run() {
+                try {
+                    // the survivor is able to share its result, so it is of the same type
+                    superseded.set((V) Uninterruptibles.getUninterruptibly(survivor));
+                } catch (ExecutionException e) {
+                    superseded.setException(e.getCause());
+                } catch (CancellationException e) {
+                    superseded.cancel(false);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Returns a queued job that is equal to the given one.
+     */
+    @SuppressWarnings("unchecked")
+    private <V> DelayedTask<V> findEqual(DelayedTask<V> task) {
+        for (DelayedTask<?> pending : queue) {
+            if (pending.getCallable().equals(task.getCallable()) && !pending.isDone()) {
+                // equal callables return the same type
+                return (DelayedTask<V>) pending;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Waits until the queue has room for the given task.
+     * Must be called while holding this runner's lock.
+     *
+     * @return false if the task expired or the thread was interrupted while waiting
+     */
+    private boolean awaitRoom(DelayedTask<?> task) {
+        try {
+            while (queue.size() >= capacity) {
+                if (task.timeoutMillis > 0) {
+                    long remainingMillis = TimeUnit.NANOSECONDS.toMillis(task.deadline - System.nanoTime());
+                    if (remainingMillis <= 0) {
+                        return false;
+                    }
+                    wait(remainingMillis);
+                } else {
+                    wait();
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private synchronized void remove(DelayedTask<?> task) {
+        if (queue.remove(task)) {
+            dequeued(1);
+        }
+    }
+
+    /**
+     * Must be called while holding this runner's lock after jobs have been removed from the queue.
+     */
+    private void dequeued(int count) {
+        if (count > 0) {
+            metrics.queueDepthChanged(-count);
+            notifyAll();
+        }
+    }
+
+    /**
+     * Hands this runner over to the shared scheduler unless it is already scheduled.
+     */
+    private synchronized void schedule() {
+        if (started && !stopped && !queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+            try {
+                SCHEDULER.execute(drain);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                LOGGER.error("Could not schedule the execution of " + queue.size() + " jobs", e);
+            }
+        }
+    }
+
+    /**
+     * Removes all jobs from the queue. The currently executed batch is still finished
+     * but the other jobs will never be executed. Their futures fail with a {@link ScriptDiscardedException}.
      */
     public void flush() {
-        queue.clear();
+        List<DelayedTask<?>> flushed;
+        synchronized (this) {
+            flushed = new ArrayList<DelayedTask<?>>(queue);
+            queue.clear();
+            flushCount++;
+            dequeued(flushed.size());
+        }
+        for (DelayedTask<?> task : flushed) {
+            task.setException(new ScriptDiscardedException(String.valueOf(task.getCallable())));
+        }
+    }
+
+    /**
+     * Executes the given tasks in order.
+     * Consecutive batchable tasks are passed to the {@link BatchExecutor} together.
+     */
+    private void execute(List<DelayedTask<?>> tasks) {
+        BatchExecutor batchExecutor = this.batchExecutor;
+        if (batchExecutor == null) {
+            for (DelayedTask<?> task : tasks) {
+                if (task.isExpired()) {
+                    task.expire();
+                }
+                task.run();
+            }
+            return;
+        }
+
+        List<DelayedTask<?>> batch = new ArrayList<DelayedTask<?>>();
+        for (DelayedTask<?> task : tasks) {
+            if (task.isExpired()) {
+                task.expire();
+            }
+            if (task.isDone()) {
+                continue;
+            }
+            if (batchExecutor.isBatchable(task.getCallable())) {
+                batch.add(task);
+            } else {
+                executeBatch(batchExecutor, batch);
+                task.run();
+            }
+        }
+        executeBatch(batchExecutor, batch);
+    }
+
+    private void executeBatch(BatchExecutor batchExecutor, List<DelayedTask<?>> batch) {
+        if (batch.size() == 1) {
+            batch.get(0).run();
+        } else if (batch.size() > 1) {
+            try {
+                batchExecutor.executeBatch(new ArrayList<DelayedTask<?>>(batch));
+            } catch (RuntimeException e) {
+                LOGGER.error("Error executing a batch of " + batch.size() + " jobs", e);
+                for (DelayedTask<?> task : batch) {
+                    task.setException(e);
+                }
+            }
+        }
+        batch.clear();
     }
 }
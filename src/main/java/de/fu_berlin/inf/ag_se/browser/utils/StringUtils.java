@@ -265,6 +265,35 @@ public class StringUtils {
 		return shorten(script, 100);
 	}
 
+	/**
+	 * Returns the number of bytes the given characters take when encoded as
+	 * UTF-8 without encoding them.
+	 *
+	 * @param chars
+	 * @return
+	 */
+	public static long getUtf8Length(CharSequence chars) {
+		long length = 0;
+		for (int i = 0, m = chars.length(); i < m; i++) {
+			char c = chars.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < m
+					&& Character.isLowSurrogate(chars.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				// unpaired surrogates are replaced by '?'
+				length++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
 	public static int findClosingParenthese(String string, int openPos) {
 		int closePos = openPos;
 		int counter = 1;
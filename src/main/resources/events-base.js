@@ -0,0 +1,163 @@
+(function(){
+
+/*
+ * Provides the parts of the event catch functionality that are needed by every page
+ * and do not depend on jQuery:
+ * - console forwarding
+ * - focus border
+ */
+
+if(window["__eventsBaseInjected"]) return true;
+else window["__eventsBaseInjected"] = true;
+
+/**
+ * Console forwarding
+ *
+ * Since the SWT Browser only supports a limited set of types to be forwarded to Java,
+ * we convert unsupported types to a JSON string.
+ */
+
+// http://stackoverflow.com/questions/384286/javascript-isdom-how-do-you-check-if-a-javascript-object-is-a-dom-object
+function isElement(obj) {
+	try {
+		//Using W3 DOM2 (works for FF, Opera and Chrome)
+		return obj instanceof HTMLElement;
+	} catch(e){
+		//Browsers not supporting W3 DOM2 don't have HTMLElement and
+		//an exception is thrown and we end up here. Testing some
+		//properties that all elements have. (works on IE7)
+		return (typeof obj==="object")
+			&& (obj.nodeType===1)
+			&& (typeof obj.style === "object")
+			&& (typeof obj.ownerDocument ==="object");
+	}
+}
+
+function serialize(obj) {
+    var doNotConvert = [ "undefined", "boolean", "number", "string" ];
+    var jsons = [];
+    for(var i=0; i<obj.length; i++) {
+        if(obj[i] == null || doNotConvert.indexOf(typeof obj[i]) != -1) {
+            jsons.push(obj[i]);
+        } else {
+            var json = JSON.parse(JSON.stringify(obj[i], null, "\t"));
+            if(isElement(obj[i])) {
+	            try {
+	                var html = clone(obj[i]);
+	                json['.html()'] = html;
+	            } catch(e) {
+	                json['.html(error)'] = e;
+	            }
+            }
+        	jsons.push(JSON.stringify(json, null, "\t"));
+        }
+    }
+    return jsons;
+}
+
+if (!window.console) console = {log: function() {}};
+
+console.log = function() {
+    window.__consoleLog.apply(this, serialize(arguments));
+};
+
+console.error = function() {
+	window.__consoleError.apply(this, serialize(arguments));
+};
+
+navigator.sayswho= (function(){
+    var ua= navigator.userAgent, tem,
+    M= ua.match(/(opera|chrome|safari|firefox|msie|trident(?=\/))\/?\s*(\d+)/i) || [];
+    if(/trident/i.test(M[1])){
+        tem=  /\brv[ :]+(\d+)/g.exec(ua) || [];
+        return 'IE '+(tem[1] || '');
+    }
+    if(M[1]=== 'Chrome'){
+        tem= ua.match(/\bOPR\/(\d+)/)
+        if(tem!= null) return 'Opera '+tem[1];
+    }
+    M= M[2]? [M[1], M[2]]: [navigator.appName, navigator.appVersion, '-?'];
+    if((tem= ua.match(/version\/(\d+)/i))!= null) M.splice(1, 1, tem[1]);
+    return M.join(' ');
+})();
+
+// returns the HTML markup of e
+function clone(e) {
+    var t = document.createElement("div");
+    t.appendChild(e.cloneNode(true));
+    return t.innerHTML
+}
+
+/*
+ * Element payloads
+ *
+ * Elements are sent to Java as their markup or, if window.__elementDescriptors is set, as a flat descriptor
+ * [page id, handle, tag name, text, 1 if the text is truncated else 0, number of attributes, name 1, value 1, ...]
+ * with at most MAX_DESCRIPTOR_ATTRIBUTES attributes and MAX_DESCRIPTOR_TEXT characters of text.
+ * The markup of one of the last MAX_DESCRIBED_ELEMENTS described elements can be fetched with window.__elementHtml(page id, handle).
+ * As handles start over on every page, the random page id keeps a handle from resolving to an element of a later page.
+ */
+var MAX_DESCRIPTOR_ATTRIBUTES = 32, MAX_DESCRIPTOR_TEXT = 256, MAX_DESCRIBED_ELEMENTS = 256;
+var describedElements = [], nextHandle = 0;
+var pageId = Math.random().toString(36).substring(2) + new Date().getTime().toString(36);
+
+// returns [the first MAX_DESCRIPTOR_TEXT characters of e's text, 1 if there is more else 0]
+// without serializing the whole subtree like textContent does
+function describeText(e) {
+	var text = "", node = e.firstChild;
+	while(node) {
+		if(node.nodeType === 3 || node.nodeType === 4) {
+			text += node.nodeValue;
+			if(text.length > MAX_DESCRIPTOR_TEXT) return [text.substring(0, MAX_DESCRIPTOR_TEXT), 1];
+		}
+		if(node.firstChild) {
+			node = node.firstChild;
+			continue;
+		}
+		while(node !== e && !node.nextSibling) node = node.parentNode;
+		node = node === e ? null : node.nextSibling;
+	}
+	return [text, 0];
+}
+
+function describe(e) {
+	var handle = nextHandle++;
+	describedElements[handle % MAX_DESCRIBED_ELEMENTS] = { handle: handle, element: e };
+	var text = describeText(e);
+	var descriptor = [pageId, handle, e.nodeName.toLowerCase(), text[0], text[1]];
+	var attributes = e.attributes || [], count = Math.min(attributes.length, MAX_DESCRIPTOR_ATTRIBUTES);
+	descriptor.push(count);
+	for(var i=0; i<count; i++) {
+		descriptor.push(attributes[i].name, attributes[i].value);
+	}
+	return descriptor;
+}
+
+window.__elementPayload = function(e) {
+	if(!e) return null;
+	return window["__elementDescriptors"] ? describe(e) : clone(e);
+};
+
+window.__elementHtml = function(id, handle) {
+	if(id !== pageId) return null;
+	var described = describedElements[handle % MAX_DESCRIBED_ELEMENTS];
+	return described && described.handle === handle ? clone(described.element) : null;
+};
+
+window.__addFocusBorder = function() {
+	if(document.querySelector('.nebulaBrowserFocusBorder')) return;
+	var border = document.createElement('div');
+	border.className = 'nebulaBrowserFocusBorder';
+	border.setAttribute('style', 'position: fixed; top: 0; left: 0; width: 100vw; height: 100vh; box-sizing: border-box; border-color: #66afe9; outline: 0; -webkit-box-shadow: inset 0 0 8px rgba(102,175,233,.6); box-shadow: inset 0 0 8px rgba(102,175,233,.6);');
+	document.body.insertBefore(border, document.body.firstChild);
+};
+
+window.__removeFocusBorder = function() {
+	var border;
+	while((border = document.querySelector('.nebulaBrowserFocusBorder'))) {
+		border.parentNode.removeChild(border);
+	}
+};
+
+return true;
+})();
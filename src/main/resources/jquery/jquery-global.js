@@ -0,0 +1,4 @@
+/*
+ * Exposes the shared jQuery instance as $ and jQuery.
+ */
+window.jQuery = window.$ = window["__jQuery"];
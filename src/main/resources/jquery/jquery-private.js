@@ -0,0 +1,6 @@
+/*
+ * Moves the just loaded jQuery to window.__jQuery and restores whatever $ and jQuery
+ * the page defined before, so that all extensions share one instance without
+ * interfering with the page's own scripts.
+ */
+window["__jQuery"] = jQuery.noConflict(true);
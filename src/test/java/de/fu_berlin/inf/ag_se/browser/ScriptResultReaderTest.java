@@ -0,0 +1,106 @@
+package de.fu_berlin.inf.ag_se.browser;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import de.fu_berlin.inf.ag_se.browser.exception.BrowserDisposedException;
+import de.fu_berlin.inf.ag_se.browser.functions.InternalJavascriptFunction;
+import de.fu_berlin.inf.ag_se.browser.threading.NoCheckedExceptionCallable;
+import de.fu_berlin.inf.ag_se.browser.threading.UIThreadExecutor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ScriptResultReaderTest {
+
+    private static final UIThreadExecutor NO_UI_THREAD = new UIThreadExecutor() {
+        @Override
+        public <V> V syncExec(NoCheckedExceptionCallable<V> callable) {
+            return callable.call();
+        }
+
+        @Override
+        public void syncExec(Runnable runnable) {
+            runnable.run();
+        }
+
+        @Override
+        public boolean isUIThread() {
+            return false;
+        }
+
+        @Override
+        public void checkNotUIThread() {
+        }
+    };
+
+    private static String read(ScriptResultReader reader) throws IOException {
+        StringBuilder result = new StringBuilder();
+        char[] buffer = new char[4];
+        int count;
+        while ((count = reader.read(buffer, 0, buffer.length)) != -1) {
+            result.append(buffer, 0, count);
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testReadChunks() throws IOException {
+        ScriptResultReader reader = new ScriptResultReader(NO_UI_THREAD, MoreExecutors.directExecutor(), 0);
+        InternalJavascriptFunction function = reader.createFunction("test");
+        function.function(new Object[] { "Hello ", false });
+        function.function(new Object[] { "World", true });
+        assertEquals("Hello World", read(reader));
+    }
+
+    @Test
+    public void testTimeout() throws IOException {
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        ScriptResultReader reader = new ScriptResultReader(NO_UI_THREAD, MoreExecutors.directExecutor(), 50);
+        reader.setFinishListener(new Runnable() {
+            @Override
+            public void run() {
+                finished.set(true);
+            }
+        });
+        reader.createFunction("test").function(new Object[] { "Hello", false });
+        try {
+            read(reader);
+            fail("The reader did not time out");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("50ms"));
+        }
+        assertTrue(finished.get());
+    }
+
+    @Test
+    public void testFailWhileWaiting() throws Exception {
+        final ScriptResultReader reader = new ScriptResultReader(NO_UI_THREAD, MoreExecutors.directExecutor(), 0);
+        reader.createFunction("test").function(new Object[] { "Hello", false });
+        Thread disposal = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                reader.fail(new BrowserDisposedException());
+            }
+        };
+        disposal.start();
+        char[] buffer = new char[5];
+        assertEquals(5, reader.read(buffer, 0, buffer.length));
+        assertEquals("Hello", new String(buffer));
+        try {
+            reader.read(buffer, 0, buffer.length);
+            fail("The failed reader returned data");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof BrowserDisposedException);
+        }
+        disposal.join();
+    }
+}
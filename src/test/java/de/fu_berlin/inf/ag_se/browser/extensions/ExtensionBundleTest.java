@@ -0,0 +1,90 @@
+package de.fu_berlin.inf.ag_se.browser.extensions;
+
+import de.fu_berlin.inf.ag_se.browser.server.ResourceServer;
+import org.apache.commons.lang.StringEscapeUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Arrays;
+
+import static de.fu_berlin.inf.ag_se.browser.extensions.BrowserExtension.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ExtensionBundleTest {
+
+	@Test
+	public void testResolve() {
+		assertEquals(Arrays.asList(JQUERY_CORE_EXTENSION, JQUERY_EXTENSION, BOOTSTRAP_EXTENSION, EVENT_CATCH_BASE_EXTENSION, EVENT_CATCH_EXTENSION),
+				ExtensionBundle.resolve(Arrays.asList(BOOTSTRAP_EXTENSION, EVENT_CATCH_EXTENSION, JQUERY_EXTENSION)));
+	}
+
+	@Test
+	public void testSingleJQuery() throws Exception {
+		ExtensionBundle bundle = ExtensionBundle.get(Arrays.asList(EVENT_CATCH_EXTENSION, JQUERY_EXTENSION));
+		String script = bundle.getInjectionScript("0000i");
+		assertEquals(1, script.split("jQuery JavaScript Library v", -1).length - 1);
+		assertEquals(0, script.split("jQuery v1\\.11", -1).length - 1);
+		assertSame(bundle, ExtensionBundle.get(Arrays.asList(JQUERY_CORE_EXTENSION, EVENT_CATCH_EXTENSION, JQUERY_EXTENSION)));
+	}
+
+	@Test
+	public void testInjectMissingOnly() throws Exception {
+		ExtensionBundle bundle = ExtensionBundle.get(Arrays.asList(DND_EXTENSION));
+		assertEquals(Arrays.asList(JQUERY_CORE_EXTENSION, EVENT_CATCH_BASE_EXTENSION, DND_EXTENSION), bundle.getExtensions());
+		assertTrue(ExtensionBundle.isComplete("111s"));
+		assertFalse(ExtensionBundle.isComplete("110s"));
+
+		String script = bundle.getInjectionScript("110i");
+		assertFalse(script.contains("jQuery JavaScript Library"));
+		assertFalse(script.contains("__elementPayload = "));
+		assertTrue(script.contains("__dndCatchInjected"));
+		assertSame(script, bundle.getInjectionScript("110i"));
+	}
+
+	@Test
+	public void testServedResources() throws Exception {
+		String script = ExtensionBundle.get(Arrays.asList(BOOTSTRAP_EXTENSION)).getInjectionScript("000s");
+		ResourceServer server = ResourceServer.getInstance();
+		assertTrue(script.contains(StringEscapeUtils.escapeJavaScript(server.getClasspathUri("/bootstrap/css/bootstrap.min.css").toString())));
+		assertTrue(script.contains(StringEscapeUtils.escapeJavaScript(server.getClasspathUri("/jquery/jquery-1.9.0.js").toString())));
+		assertTrue(script.contains(StringEscapeUtils.escapeJavaScript(server.getClasspathUri("/bootstrap/js/bootstrap.min.js").toString())));
+		assertFalse(script.contains("article,aside,details"));
+		assertFalse(script.contains("jQuery JavaScript Library"));
+	}
+
+	@Test
+	public void testInlinedResources() throws Exception {
+		String script = ExtensionBundle.get(Arrays.asList(BOOTSTRAP_EXTENSION)).getInjectionScript("000i");
+		URI uri = ResourceServer.getInstance().getClasspathUri("/bootstrap/css/bootstrap.min.css");
+		assertFalse(script.contains(StringEscapeUtils.escapeJavaScript(uri.toString())));
+		assertTrue(script.contains("article,aside,details"));
+		assertTrue(script.contains("jQuery JavaScript Library"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidCheckResult() throws Exception {
+		ExtensionBundle.get(Arrays.asList(DND_EXTENSION)).getInjectionScript("111");
+	}
+
+	@Test
+	public void testPayloadInvalidatedInDevMode() throws Exception {
+		ExtensionPayload payload = ExtensionPayload.get(JQUERY_EXTENSION);
+		assertSame(payload, ExtensionPayload.get(JQUERY_EXTENSION));
+
+		File file = JQUERY_EXTENSION.getJsExtensions().get(0);
+		assertTrue(file.setLastModified(file.lastModified() + 2000));
+		assertSame(payload, ExtensionPayload.get(JQUERY_EXTENSION));
+
+		System.setProperty(ExtensionPayload.DEV_MODE_PROPERTY, "true");
+		try {
+			assertNotSame(payload, ExtensionPayload.get(JQUERY_EXTENSION));
+		} finally {
+			System.clearProperty(ExtensionPayload.DEV_MODE_PROPERTY);
+		}
+	}
+}
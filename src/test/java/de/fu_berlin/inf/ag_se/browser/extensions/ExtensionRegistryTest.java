@@ -0,0 +1,79 @@
+package de.fu_berlin.inf.ag_se.browser.extensions;
+
+import de.fu_berlin.inf.ag_se.browser.utils.ClasspathFileUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ExtensionRegistryTest {
+
+	public static class TestExtension implements IBrowserExtension {
+		@Override
+		public String getName() {
+			return "Test Extension";
+		}
+
+		@Override
+		public String getVersion() {
+			return "1.2";
+		}
+
+		@Override
+		public String getVerificationScript() {
+			return "return window.__testExtension === 42;";
+		}
+
+		@Override
+		public List<File> getJsExtensions() {
+			return Arrays.asList(ClasspathFileUtils.getFile("/testExtension.js"));
+		}
+
+		@Override
+		public List<File> getCssExtensions() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public List<? extends IBrowserExtension> getDependencies() {
+			return Arrays.asList(BrowserExtension.JQUERY_CORE_EXTENSION);
+		}
+	}
+
+	@Test
+	public void testServiceLoader() throws Exception {
+		ExtensionRegistry registry = ExtensionRegistry.getDefault();
+		assertEquals(1, registry.getRegisteredExtensions().size());
+		IBrowserExtension extension = registry.getExtension("Test Extension");
+		assertTrue(extension instanceof TestExtension);
+		assertSame(BrowserExtension.DND_EXTENSION, registry.getExtension(BrowserExtension.DND_EXTENSION.getName()));
+
+		List<IBrowserExtension> resolved = ExtensionBundle.get(registry.getExtensions(
+				BrowserExtension.JQUERY_EXTENSION.getName(), "Test Extension")).getExtensions();
+		assertEquals(3, resolved.size());
+		assertSame(extension, resolved.get(2));
+
+		String hash = registry.getContentHash(extension);
+		assertTrue(hash.matches("[0-9a-f]{40}"));
+		assertEquals(hash, registry.getContentHash(new TestExtension()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownExtension() {
+		ExtensionRegistry.getDefault().getExtensions("Unknown Extension");
+	}
+
+	@Test
+	public void testDuplicateNamesAndInstances() {
+		ExtensionRegistry registry = new ExtensionRegistry(Arrays.<IBrowserExtension>asList(
+				new TestExtension(), new TestExtension()).iterator());
+		assertEquals(1, registry.getRegisteredExtensions().size());
+		assertEquals(2, ExtensionBundle.resolve(Arrays.asList(new TestExtension(), new TestExtension())).size());
+	}
+}
@@ -0,0 +1,47 @@
+package de.fu_berlin.inf.ag_se.browser.html;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DescribedElementTest {
+
+	@Test
+	public void testDescriptor() {
+		DescribedAnchor anchor = new DescribedAnchor(new Object[] { "p1", 7.0, "a", "bkahlert.com", 0.0, 3.0,
+				"href", "http://bkahlert.com", "class", "x y", "data-id", "1" });
+		assertEquals("p1", anchor.getPageId());
+		assertEquals(7, anchor.getHandle());
+		assertFalse(anchor.isTruncated());
+		assertEquals("a", anchor.getName());
+		assertEquals("http://bkahlert.com", anchor.getHref());
+		assertEquals("1", anchor.getData("id"));
+		assertArrayEquals(new String[] { "x", "y" }, anchor.getClasses());
+		assertEquals("bkahlert.com", anchor.getContent());
+	}
+
+	@Test
+	public void testTruncated() {
+		DescribedElement element = new DescribedElement(new Object[] { "p1", 1.0, "div", "text", 1.0, 0.0 });
+		assertTrue(element.isTruncated());
+		assertTrue(element.getAttributes().isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingAttributes() {
+		new DescribedElement(new Object[] { "p1", 1.0, "div", "text", 0.0, 2.0, "id", "x" });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingHandle() {
+		new DescribedElement(new Object[] { "p1", "div" });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingPageId() {
+		new DescribedElement(new Object[] { 1.0, "div", "text", 0.0, 0.0 });
+	}
+}
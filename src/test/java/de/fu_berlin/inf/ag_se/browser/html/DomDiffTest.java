@@ -0,0 +1,109 @@
+package de.fu_berlin.inf.ag_se.browser.html;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class DomDiffTest {
+
+	private static org.jsoup.nodes.Element parse(String html) {
+		Document document = Jsoup.parseBodyFragment(html);
+		document.outputSettings().prettyPrint(false);
+		return document.body();
+	}
+
+	private static List<Map<String, Object>> diff(String previous, String next) {
+		return DomDiff.diff(parse(previous), parse(next));
+	}
+
+	@Test
+	public void testUnchanged() {
+		assertEquals(0, diff("<p class=\"a\">x</p><ul><li>1</li></ul>", "<p class=\"a\">x</p><ul><li>1</li></ul>").size());
+	}
+
+	@Test
+	public void testText() {
+		List<Map<String, Object>> operations = diff("<p>a</p><p>b &amp; c</p>", "<p>a</p><p>b &amp; d</p>");
+		assertEquals(1, operations.size());
+		assertEquals("text", operations.get(0).get("op"));
+		assertEquals(Arrays.asList(1, 0), operations.get(0).get("path"));
+		assertEquals("#text", operations.get(0).get("node"));
+		assertEquals("b & d", operations.get(0).get("text"));
+	}
+
+	@Test
+	public void testAttributes() {
+		List<Map<String, Object>> operations = diff("<div id=\"x\" class=\"a\"></div>", "<div class=\"b\" title=\"t\"></div>");
+		assertEquals(1, operations.size());
+		assertEquals("attrs", operations.get(0).get("op"));
+		assertEquals("div", operations.get(0).get("node"));
+		assertEquals("{class=b, title=t}", operations.get(0).get("set").toString());
+		assertEquals(Collections.singletonList("id"), operations.get(0).get("remove"));
+	}
+
+	@Test
+	public void testReplace() {
+		List<Map<String, Object>> operations = diff("<p>a</p><span>b</span>", "<p>a</p><em>b</em>");
+		assertEquals(1, operations.size());
+		assertEquals("replace", operations.get(0).get("op"));
+		assertEquals(Collections.singletonList(1), operations.get(0).get("path"));
+		assertEquals("span", operations.get(0).get("node"));
+		assertEquals("<em>b</em>", operations.get(0).get("html"));
+	}
+
+	@Test
+	public void testAppendAndRemove() {
+		List<Map<String, Object>> operations = diff("<ul><li>1</li></ul>", "<ul><li>1</li><li>2</li><li>3</li></ul>");
+		assertEquals(1, operations.size());
+		assertEquals("append", operations.get(0).get("op"));
+		assertEquals(Collections.singletonList(0), operations.get(0).get("path"));
+		assertEquals("<li>2</li><li>3</li>", operations.get(0).get("html"));
+
+		operations = diff("<ul><li>1</li><li>2</li><li>3</li></ul>", "<ul><li>1</li></ul>");
+		assertEquals(2, operations.size());
+		assertEquals("remove", operations.get(0).get("op"));
+		assertEquals(Arrays.asList(0, 2), operations.get(0).get("path"));
+		assertEquals(Arrays.asList(0, 1), operations.get(1).get("path"));
+	}
+
+	@Test
+	public void testInsertAndRemoveInTheMiddle() {
+		List<Map<String, Object>> operations = diff("<ul><li>1</li><li>3</li></ul>", "<ul><li>1</li><li>2</li><li>3</li></ul>");
+		assertEquals(1, operations.size());
+		assertEquals("insert", operations.get(0).get("op"));
+		assertEquals(Arrays.asList(0, 1), operations.get(0).get("path"));
+		assertEquals("li", operations.get(0).get("node"));
+		assertEquals("<li>2</li>", operations.get(0).get("html"));
+
+		operations = diff("<ul><li>1</li><li>2</li></ul>", "<ul><li>0</li><li>1</li><li>2</li></ul>");
+		assertEquals(1, operations.size());
+		assertEquals("insert", operations.get(0).get("op"));
+		assertEquals(Arrays.asList(0, 0), operations.get(0).get("path"));
+		assertEquals("<li>0</li>", operations.get(0).get("html"));
+
+		operations = diff("<ul><li>1</li><li>2</li><li>3</li></ul>", "<ul><li>1</li><li>3</li></ul>");
+		assertEquals(1, operations.size());
+		assertEquals("remove", operations.get(0).get("op"));
+		assertEquals(Arrays.asList(0, 1), operations.get(0).get("path"));
+	}
+
+	@Test
+	public void testMatchById() {
+		List<Map<String, Object>> operations = diff("<p id=\"a\">x</p><p id=\"b\">y</p>",
+				"<p id=\"new\">n</p><p id=\"a\">x</p><p id=\"b\">z</p>");
+		assertEquals(2, operations.size());
+		assertEquals("text", operations.get(0).get("op"));
+		assertEquals(Arrays.asList(1, 0), operations.get(0).get("path"));
+		assertEquals("z", operations.get(0).get("text"));
+		assertEquals("insert", operations.get(1).get("op"));
+		assertEquals(Collections.singletonList(0), operations.get(1).get("path"));
+		assertEquals("<p id=\"new\">n</p>", operations.get(1).get("html"));
+	}
+}
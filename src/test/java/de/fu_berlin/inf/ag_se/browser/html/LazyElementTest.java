@@ -0,0 +1,36 @@
+package de.fu_berlin.inf.ag_se.browser.html;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LazyElementTest {
+
+	@Test
+	public void testParsedOnFirstAccess() {
+		String html = "<a href=\"http://bkahlert.com\" class=\"x y\" data-id=\"1\">bkahlert.com</a>";
+		LazyAnchor anchor = new LazyAnchor(html);
+		assertFalse(anchor.isParsed());
+		assertEquals(html, anchor.getHtml());
+		assertFalse(anchor.isParsed());
+
+		assertEquals("a", anchor.getName());
+		assertTrue(anchor.isParsed());
+		assertEquals("http://bkahlert.com", anchor.getHref());
+		assertEquals("1", anchor.getData("id"));
+		assertArrayEquals(new String[] { "x", "y" }, anchor.getClasses());
+		assertEquals("bkahlert.com", anchor.getContent());
+	}
+
+	@Test
+	public void testNoElement() {
+		LazyElement element = new LazyElement("no markup");
+		assertNull(element.getName());
+		assertNull(element.getAttribute("id"));
+		assertTrue(element.getAttributes().isEmpty());
+	}
+}
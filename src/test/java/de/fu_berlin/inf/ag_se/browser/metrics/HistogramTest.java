@@ -0,0 +1,32 @@
+package de.fu_berlin.inf.ag_se.browser.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+	@Test
+	public void testEmpty() {
+		Histogram histogram = new Histogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMean());
+		assertEquals(0, histogram.getPercentile(99));
+	}
+
+	@Test
+	public void testPercentiles() {
+		Histogram histogram = new Histogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(50, histogram.getMean());
+		assertEquals(100, histogram.getMax());
+		long median = histogram.getPercentile(50);
+		assertTrue(median >= 50 && median < 100);
+		assertEquals(100, histogram.getPercentile(100));
+		assertEquals(1, histogram.getPercentile(1));
+	}
+}
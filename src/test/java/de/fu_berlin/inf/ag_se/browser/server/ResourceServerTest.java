@@ -0,0 +1,64 @@
+package de.fu_berlin.inf.ag_se.browser.server;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResourceServerTest {
+
+	private static HttpURLConnection connect(URI uri) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
+		connection.setUseCaches(false);
+		return connection;
+	}
+
+	@Test
+	public void testClasspathResource() throws IOException {
+		URI uri = ResourceServer.getInstance().getClasspathUri("/events.js");
+		assertEquals("127.0.0.1", uri.getHost());
+
+		HttpURLConnection connection = connect(uri);
+		assertEquals(200, connection.getResponseCode());
+		assertTrue(connection.getContentType().startsWith("application/javascript"));
+		assertTrue(connection.getHeaderField("Cache-Control").contains("max-age"));
+		assertEquals("*", connection.getHeaderField("Access-Control-Allow-Origin"));
+		String etag = connection.getHeaderField("ETag");
+		assertNotNull(etag);
+		assertTrue(IOUtils.toString(connection.getInputStream(), "UTF-8").length() > 0);
+
+		connection = connect(uri);
+		connection.setRequestProperty("If-None-Match", etag);
+		assertEquals(304, connection.getResponseCode());
+	}
+
+	@Test
+	public void testNotServable() throws IOException {
+		URI uri = ResourceServer.getInstance().getClasspathUri("/events.js");
+		assertEquals(404, connect(uri.resolve("log4j.xml")).getResponseCode());
+		assertEquals(404, connect(URI.create("http://127.0.0.1:" + uri.getPort() + "/classpath/events.js")).getResponseCode());
+	}
+
+	@Test
+	public void testPublish() throws IOException {
+		ResourceServer server = ResourceServer.getInstance();
+		URI uri = server.publish("test/style.css", null, "body { color: red; }");
+
+		HttpURLConnection connection = connect(uri);
+		assertEquals(200, connection.getResponseCode());
+		assertTrue(connection.getContentType().startsWith("text/css"));
+		assertEquals("no-cache", connection.getHeaderField("Cache-Control"));
+		assertNull(connection.getHeaderField("Access-Control-Allow-Origin"));
+		assertEquals("body { color: red; }", IOUtils.toString(connection.getInputStream(), "UTF-8"));
+
+		server.unpublish("test/style.css");
+		assertEquals(404, connect(uri).getResponseCode());
+	}
+}
@@ -0,0 +1,142 @@
+package de.fu_berlin.inf.ag_se.browser.swt;
+
+import de.fu_berlin.inf.ag_se.browser.functions.Function;
+import de.fu_berlin.inf.ag_se.browser.utils.DelayedScriptRunner.OverflowPolicy;
+import de.fu_berlin.inf.ag_se.browser.utils.IConverter;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BrowserPoolTest {
+
+    @BeforeClass
+    public static void beforeClass() {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Display display = Display.getDefault();
+
+                // Set up the event loop.
+                while (!display.isDisposed()) {
+                    if (!display.readAndDispatch()) {
+                        // If no more entries in event queue
+                        display.sleep();
+                    }
+                }
+            }
+        }).start();
+    }
+
+    private final AtomicReference<Shell> shellAtomicReference = new AtomicReference<Shell>();
+    private final AtomicReference<BrowserPool<SWTBrowser<?>>> poolAtomicReference = new AtomicReference<BrowserPool<SWTBrowser<?>>>();
+
+    @Before
+    public void before() {
+        Display.getDefault().syncExec(new Runnable() {
+            @Override
+            public void run() {
+                Shell shell = new Shell(Display.getCurrent());
+                shell.setLayout(new FillLayout());
+                shell.open();
+                shellAtomicReference.set(shell);
+                poolAtomicReference.set(new BrowserPool<SWTBrowser<?>>(Display.getCurrent(), 1,
+                        new BrowserPool.Factory<SWTBrowser<?>>() {
+                            @Override
+                            public SWTBrowser<?> create(Composite parent) {
+                                return SWTBrowser.createSWTBrowser(parent, SWT.NONE);
+                            }
+                        }));
+            }
+        });
+    }
+
+    @After
+    public void after() {
+        Display.getDefault().syncExec(new Runnable() {
+            @Override
+            public void run() {
+                poolAtomicReference.get().dispose();
+                shellAtomicReference.get().close();
+            }
+        });
+    }
+
+    private void awaitIdleBrowser() throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (poolAtomicReference.get().getIdleCount() == 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, poolAtomicReference.get().getIdleCount());
+    }
+
+    private SWTBrowser lease() {
+        final AtomicReference<SWTBrowser> browser = new AtomicReference<SWTBrowser>();
+        Display.getDefault().syncExec(new Runnable() {
+            @Override
+            public void run() {
+                browser.set(poolAtomicReference.get().lease(shellAtomicReference.get()));
+            }
+        });
+        return browser.get();
+    }
+
+    private void release(final SWTBrowser browser) {
+        Display.getDefault().syncExec(new Runnable() {
+            @Override
+            public void run() {
+                poolAtomicReference.get().release(browser);
+            }
+        });
+    }
+
+    @Test
+    public void testLeaseReadyBrowser() throws InterruptedException {
+        awaitIdleBrowser();
+        SWTBrowser browser = lease();
+        assertTrue(browser.isLoadingCompleted());
+        assertEquals(1, poolAtomicReference.get().getHits());
+        assertEquals(0, poolAtomicReference.get().getMisses());
+        release(browser);
+    }
+
+    @Test
+    public void testReleaseResetsConfiguration() throws Exception {
+        awaitIdleBrowser();
+        SWTBrowser browser = lease();
+
+        final AtomicInteger hookCalls = new AtomicInteger(0);
+        browser.executeAfterScript(new Function<Object>() {
+            @Override
+            public void run(Object returnValue) {
+                hookCalls.incrementAndGet();
+            }
+        });
+        browser.setScriptBatchingEnabled(false);
+        browser.setDefaultScriptTimeout(1, TimeUnit.MILLISECONDS);
+        browser.setScriptQueueLimit(1, OverflowPolicy.FAIL);
+        assertEquals(Integer.valueOf(42), browser.run("return 42;", IConverter.CONVERTER_INTEGER).get(5, TimeUnit.SECONDS));
+        assertEquals(1, hookCalls.get());
+        release(browser);
+
+        awaitIdleBrowser();
+        assertSame(browser, lease());
+        assertEquals(Integer.valueOf(42), browser.run("return 42;", IConverter.CONVERTER_INTEGER).get(5, TimeUnit.SECONDS));
+        // the previous lessee's hook is gone
+        assertEquals(1, hookCalls.get());
+        release(browser);
+    }
+}
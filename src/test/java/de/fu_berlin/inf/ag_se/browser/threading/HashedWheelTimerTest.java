@@ -0,0 +1,61 @@
+package de.fu_berlin.inf.ag_se.browser.threading;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HashedWheelTimerTest {
+
+	@Test
+	public void testExpire() throws InterruptedException {
+		HashedWheelTimer timer = new HashedWheelTimer("test", 10, TimeUnit.MILLISECONDS, 4);
+		final CountDownLatch latch = new CountDownLatch(2);
+		Runnable action = new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		};
+		long start = System.nanoTime();
+		HashedWheelTimer.Timeout first = timer.schedule(action, 20, TimeUnit.MILLISECONDS);
+		// spans several rounds of the wheel
+		HashedWheelTimer.Timeout second = timer.schedule(action, 150, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+		assertTrue(first.isExpired());
+		assertTrue(second.isExpired());
+		assertFalse(second.cancel());
+		assertEquals(0, timer.getPendingTimeouts());
+	}
+
+	@Test
+	public void testCancel() throws InterruptedException {
+		HashedWheelTimer timer = new HashedWheelTimer("test", 10, TimeUnit.MILLISECONDS, 4);
+		final AtomicBoolean expired = new AtomicBoolean(false);
+		HashedWheelTimer.Timeout timeout = timer.schedule(new Runnable() {
+			@Override
+			public void run() {
+				expired.set(true);
+			}
+		}, 30, TimeUnit.MILLISECONDS);
+		assertTrue(timeout.cancel());
+		assertEquals(0, timer.getPendingTimeouts());
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		timer.schedule(new Runnable() {
+			@Override
+			public void run() {
+				latch.countDown();
+			}
+		}, 60, TimeUnit.MILLISECONDS);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertTrue(timeout.isCancelled());
+		assertFalse(expired.get());
+	}
+}
@@ -0,0 +1,117 @@
+package de.fu_berlin.inf.ag_se.browser.threading;
+
+import de.fu_berlin.inf.ag_se.browser.listener.IUIThreadListener;
+import de.fu_berlin.inf.ag_se.browser.metrics.BrowserMetrics;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ListenerDispatcherTest {
+
+	private static class Recorder {
+		final List<Integer> events = Collections.synchronizedList(new ArrayList<Integer>());
+		final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+
+		void record(int event) {
+			events.add(event);
+			threads.add(Thread.currentThread());
+		}
+	}
+
+	private static class UIRecorder extends Recorder implements IUIThreadListener {
+	}
+
+	private static ListenerDispatcher.Notification<Recorder> notification(final int event) {
+		return new ListenerDispatcher.Notification<Recorder>() {
+			@Override
+			public void call(Recorder listener) {
+				listener.record(event);
+			}
+		};
+	}
+
+	@Test
+	public void testSynchronousByDefault() {
+		BrowserMetrics metrics = new BrowserMetrics();
+		ListenerDispatcher dispatcher = new ListenerDispatcher(metrics);
+		Recorder recorder = new Recorder();
+		dispatcher.dispatch(Arrays.asList(recorder), notification(1));
+		assertEquals(Arrays.asList(1), recorder.events);
+		assertSame(Thread.currentThread(), recorder.threads.get(0));
+		assertNotNull(metrics.getListenerLatency(Recorder.class.getName()));
+		assertEquals(1, metrics.getListenerLatency(Recorder.class.getName()).getCount());
+	}
+
+	@Test
+	public void testOrderedOnLane() throws InterruptedException {
+		ListenerDispatcher dispatcher = new ListenerDispatcher(new BrowserMetrics());
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		dispatcher.setExecutor(executor);
+		Recorder recorder = new Recorder();
+		UIRecorder uiRecorder = new UIRecorder();
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int i = 0; i < 1000; i++) {
+			dispatcher.dispatch(Arrays.<Recorder>asList(recorder, uiRecorder), notification(i));
+			expected.add(i);
+		}
+		assertEquals(expected, uiRecorder.events);
+		for (Thread thread : uiRecorder.threads) {
+			assertSame(Thread.currentThread(), thread);
+		}
+
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(expected, recorder.events);
+		for (Thread thread : recorder.threads) {
+			assertTrue(thread != Thread.currentThread());
+		}
+	}
+
+	@Test
+	public void testFailingListener() {
+		ListenerDispatcher dispatcher = new ListenerDispatcher(new BrowserMetrics());
+		final Recorder failing = new Recorder();
+		Recorder recorder = new Recorder();
+		dispatcher.dispatch(Arrays.asList(failing, recorder), new ListenerDispatcher.Notification<Recorder>() {
+			@Override
+			public void call(Recorder listener) {
+				if (listener == failing) {
+					throw new IllegalStateException("expected");
+				}
+				listener.record(1);
+			}
+		});
+		assertEquals(Arrays.asList(1), recorder.events);
+	}
+
+	@Test
+	public void testErrorOnLane() throws InterruptedException {
+		ListenerDispatcher dispatcher = new ListenerDispatcher(new BrowserMetrics());
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		dispatcher.setExecutor(executor);
+		Recorder recorder = new Recorder();
+		dispatcher.dispatch(Arrays.asList(recorder), new ListenerDispatcher.Notification<Recorder>() {
+			@Override
+			public void call(Recorder listener) {
+				throw new AssertionError("expected");
+			}
+		});
+		dispatcher.dispatch(Arrays.asList(recorder), notification(1));
+		dispatcher.dispatch(Arrays.asList(recorder), notification(2));
+
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList(1, 2), recorder.events);
+	}
+}
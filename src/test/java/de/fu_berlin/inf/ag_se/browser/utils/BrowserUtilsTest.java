@@ -2,10 +2,18 @@ package de.fu_berlin.inf.ag_se.browser.utils;
 
 import de.fu_berlin.inf.ag_se.browser.BrowserUtils;
 import de.fu_berlin.inf.ag_se.browser.html.IElement;
+import com.google.common.util.concurrent.SettableFuture;
 import org.junit.Test;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class BrowserUtilsTest {
 
@@ -72,4 +80,27 @@ public class BrowserUtilsTest {
 		assertEquals("td", selfEnclosingTd.getName());
 	}
 
+	@Test
+	public void testToCompletableFuture() throws Exception {
+		SettableFuture<String> future = SettableFuture.create();
+		CompletableFuture<String> completableFuture = BrowserUtils.toCompletableFuture(future);
+		assertFalse(completableFuture.isDone());
+		future.set("done");
+		assertEquals("done", completableFuture.get());
+
+		future = SettableFuture.create();
+		completableFuture = BrowserUtils.toCompletableFuture(future);
+		IllegalStateException exception = new IllegalStateException();
+		future.setException(exception);
+		try {
+			completableFuture.get();
+			fail("the failure was not passed on");
+		} catch (ExecutionException e) {
+			assertSame(exception, e.getCause());
+		}
+
+		future = SettableFuture.create();
+		BrowserUtils.toCompletableFuture(future).cancel(true);
+		assertTrue(future.isCancelled());
+	}
 }
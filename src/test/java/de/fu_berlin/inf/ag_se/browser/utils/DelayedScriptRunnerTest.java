@@ -0,0 +1,392 @@
+package de.fu_berlin.inf.ag_se.browser.utils;
+
+import de.fu_berlin.inf.ag_se.browser.exception.ScriptDiscardedException;
+import de.fu_berlin.inf.ag_se.browser.exception.ScriptRejectedException;
+import de.fu_berlin.inf.ag_se.browser.exception.ScriptSupersededException;
+import de.fu_berlin.inf.ag_se.browser.exception.ScriptTimeoutException;
+import de.fu_berlin.inf.ag_se.browser.metrics.BrowserMetrics;
+import de.fu_berlin.inf.ag_se.browser.utils.DelayedScriptRunner.BatchExecutor;
+import de.fu_berlin.inf.ag_se.browser.utils.DelayedScriptRunner.DelayedTask;
+import de.fu_berlin.inf.ag_se.browser.utils.DelayedScriptRunner.OverflowPolicy;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DelayedScriptRunnerTest {
+
+	private static Callable<String> job(final String result) {
+		return new Callable<String>() {
+			@Override
+			public String call() {
+				return result;
+			}
+		};
+	}
+
+	private static class BatchableJob implements Callable<String> {
+		private final String result;
+
+		BatchableJob(String result) {
+			this.result = result;
+		}
+
+		@Override
+		public String call() {
+			return result;
+		}
+	}
+
+	/**
+	 * Completes batchable jobs with their results, except for jobs returning "fail" which fail on their own.
+	 * Records each batch and each job run on its own in the given list.
+	 */
+	private static BatchExecutor recordingBatchExecutor(final List<String> executed) {
+		return new BatchExecutor() {
+			@Override
+			public boolean isBatchable(Callable<?> callable) {
+				return callable instanceof BatchableJob;
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public void executeBatch(List<DelayedTask<?>> tasks) {
+				List<String> batch = new ArrayList<String>();
+				for (DelayedTask<?> task : tasks) {
+					String result = ((BatchableJob) task.getCallable()).result;
+					batch.add(result);
+					if ("fail".equals(result)) {
+						task.setException(new IllegalStateException(result));
+					} else {
+						((DelayedTask<String>) task).set(result);
+					}
+				}
+				executed.add(batch.toString());
+			}
+		};
+	}
+
+	private static void assertRejected(Future<?> future) throws InterruptedException {
+		try {
+			future.get();
+			fail("job was executed");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ScriptRejectedException);
+		}
+	}
+
+	@Test
+	public void testFail() throws Exception {
+		BrowserMetrics metrics = new BrowserMetrics();
+		DelayedScriptRunner runner = new DelayedScriptRunner(metrics);
+		runner.setCapacity(2, OverflowPolicy.FAIL);
+
+		Future<String> first = runner.submit(job("a"));
+		Future<String> second = runner.submit(job("b"));
+		Future<String> third = runner.submit(job("c"));
+		assertRejected(third);
+		assertEquals(2, metrics.getQueueDepth());
+		assertEquals(1, metrics.getRejectedScripts());
+
+		runner.start();
+		assertEquals("a", first.get(5, TimeUnit.SECONDS));
+		assertEquals("b", second.get(5, TimeUnit.SECONDS));
+		assertEquals(0, metrics.getQueueDepth());
+		runner.stop();
+	}
+
+	@Test
+	public void testDropOldest() throws Exception {
+		BrowserMetrics metrics = new BrowserMetrics();
+		DelayedScriptRunner runner = new DelayedScriptRunner(metrics);
+		runner.setCapacity(2, OverflowPolicy.DROP_OLDEST);
+
+		Future<String> first = runner.submit(job("a"));
+		Future<String> second = runner.submit(job("b"));
+		Future<String> third = runner.submit(job("c"));
+		assertRejected(first);
+		assertEquals(1, metrics.getDroppedScripts());
+
+		runner.start();
+		assertEquals("b", second.get(5, TimeUnit.SECONDS));
+		assertEquals("c", third.get(5, TimeUnit.SECONDS));
+		runner.stop();
+	}
+
+	@Test
+	public void testCoalesce() throws Exception {
+		BrowserMetrics metrics = new BrowserMetrics();
+		DelayedScriptRunner runner = new DelayedScriptRunner(metrics);
+		runner.setCapacity(2, OverflowPolicy.COALESCE);
+
+		Callable<String> job = job("a");
+		Future<String> first = runner.submit(job);
+		assertSame(first, runner.submit(job));
+		assertEquals(1, metrics.getQueueDepth());
+		assertEquals(1, metrics.getCoalescedScripts());
+
+		runner.start();
+		assertEquals("a", first.get(5, TimeUnit.SECONDS));
+		runner.stop();
+	}
+
+	@Test
+	public void testBlock() throws Exception {
+		BrowserMetrics metrics = new BrowserMetrics();
+		final DelayedScriptRunner runner = new DelayedScriptRunner(metrics);
+		runner.setCapacity(1, OverflowPolicy.BLOCK);
+
+		Future<String> first = runner.submit(job("a"));
+		assertRejected(runner.submit(job("b"), null, 100, true));
+		assertRejected(runner.submit(job("b"), null, 0, false));
+
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				runner.start();
+			}
+		}).start();
+		Future<String> second = runner.submit(job("b"), null, 0, true);
+		assertEquals("a", first.get(5, TimeUnit.SECONDS));
+		assertEquals("b", second.get(5, TimeUnit.SECONDS));
+		runner.stop();
+	}
+
+	@Test
+	public void testReplaceByKey() throws Exception {
+		BrowserMetrics metrics = new BrowserMetrics();
+		DelayedScriptRunner runner = new DelayedScriptRunner(metrics);
+
+		Future<String> first = runner.submit(job("a"), "key", 0, false);
+		Future<String> other = runner.submit(job("b"), null, 0, false);
+		Future<String> second = runner.submit(job("c"), "key", 0, false);
+		assertEquals(2, metrics.getQueueDepth());
+		assertEquals(1, metrics.getSupersededScripts());
+		try {
+			first.get();
+			fail("superseded job was executed");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ScriptSupersededException);
+		}
+
+		runner.start();
+		assertEquals("c", second.get(5, TimeUnit.SECONDS));
+		assertEquals("b", other.get(5, TimeUnit.SECONDS));
+		runner.stop();
+	}
+
+	@Test
+	public void testBatch() throws Exception {
+		final List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+		DelayedScriptRunner runner = new DelayedScriptRunner(new BrowserMetrics());
+		runner.setBatchExecutor(recordingBatchExecutor(executed));
+
+		Future<String> a = runner.submit(new BatchableJob("a"));
+		Future<String> failing = runner.submit(new BatchableJob("fail"));
+		Future<String> b = runner.submit(new BatchableJob("b"));
+		Future<String> single = runner.submit(new Callable<String>() {
+			@Override
+			public String call() {
+				executed.add("single");
+				return "single";
+			}
+		});
+		Future<String> c = runner.submit(new BatchableJob("c"));
+		Future<String> d = runner.submit(new BatchableJob("d"));
+
+		runner.start();
+		assertEquals("a", a.get(5, TimeUnit.SECONDS));
+		try {
+			failing.get(5, TimeUnit.SECONDS);
+			fail("failing job returned a result");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		assertEquals("b", b.get(5, TimeUnit.SECONDS));
+		assertEquals("single", single.get(5, TimeUnit.SECONDS));
+		assertEquals("c", c.get(5, TimeUnit.SECONDS));
+		assertEquals("d", d.get(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("[a, fail, b]", "single", "[c, d]"), executed);
+		runner.stop();
+	}
+
+	@Test
+	public void testDeadline() throws Exception {
+		BrowserMetrics metrics = new BrowserMetrics();
+		DelayedScriptRunner runner = new DelayedScriptRunner(metrics);
+		final AtomicBoolean executed = new AtomicBoolean(false);
+
+		Future<String> expiring = runner.submit(new Callable<String>() {
+			@Override
+			public String call() {
+				executed.set(true);
+				return "a";
+			}
+		}, null, 50, false);
+		Future<String> other = runner.submit(job("b"));
+		assertEquals(2, metrics.getQueueDepth());
+		try {
+			expiring.get(5, TimeUnit.SECONDS);
+			fail("expired job returned a result");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ScriptTimeoutException);
+		}
+		// the waiting thread is woken up before the expired job is counted and removed
+		long timeout = System.currentTimeMillis() + 5000;
+		while ((metrics.getDeadlineMisses() != 1 || metrics.getQueueDepth() != 1)
+				&& System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, metrics.getDeadlineMisses());
+		assertEquals(1, metrics.getQueueDepth());
+
+		runner.start();
+		assertEquals("b", other.get(5, TimeUnit.SECONDS));
+		assertFalse(executed.get());
+		assertEquals(0, metrics.getQueueDepth());
+		runner.stop();
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		BrowserMetrics metrics = new BrowserMetrics();
+		DelayedScriptRunner runner = new DelayedScriptRunner(metrics);
+
+		Future<String> cancelled = runner.submit(job("a"), null, 5000, false);
+		Future<String> other = runner.submit(job("b"));
+		assertTrue(cancelled.cancel(false));
+		assertEquals(1, metrics.getQueueDepth());
+		assertEquals(0, metrics.getDeadlineMisses());
+
+		runner.start();
+		assertEquals("b", other.get(5, TimeUnit.SECONDS));
+		runner.stop();
+	}
+
+	@Test
+	public void testFlush() throws Exception {
+		BrowserMetrics metrics = new BrowserMetrics();
+		DelayedScriptRunner runner = new DelayedScriptRunner(metrics);
+
+		Future<String> flushed = runner.submit(job("a"));
+		runner.flush();
+		assertEquals(0, metrics.getQueueDepth());
+		try {
+			flushed.get(5, TimeUnit.SECONDS);
+			fail("flushed job returned a result");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ScriptDiscardedException);
+		}
+
+		runner.start();
+		assertEquals("b", runner.submit(job("b")).get(5, TimeUnit.SECONDS));
+		runner.stop();
+	}
+
+	@Test
+	public void testSubmitAfterFlush() throws Exception {
+		BrowserMetrics metrics = new BrowserMetrics();
+		DelayedScriptRunner runner = new DelayedScriptRunner(metrics);
+
+		int flushCount = runner.getFlushCount();
+		runner.flush();
+		try {
+			runner.submit(job("a"), null, 0, false, flushCount).get(5, TimeUnit.SECONDS);
+			fail("job submitted for a flushed queue returned a result");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ScriptDiscardedException);
+		}
+		assertEquals(0, metrics.getQueueDepth());
+
+		runner.start();
+		assertEquals("b", runner.submit(job("b"), null, 0, false, runner.getFlushCount()).get(5, TimeUnit.SECONDS));
+		runner.stop();
+	}
+
+	@Test
+	public void testUnboundedByDefault() throws Exception {
+		BrowserMetrics metrics = new BrowserMetrics();
+		DelayedScriptRunner runner = new DelayedScriptRunner(metrics);
+
+		List<Future<String>> futures = new ArrayList<Future<String>>();
+		for (int i = 0; i < 20000; i++) {
+			futures.add(runner.submit(job(String.valueOf(i))));
+		}
+		assertEquals(20000, metrics.getQueueDepth());
+		assertEquals(0, metrics.getRejectedScripts());
+
+		runner.start();
+		for (int i = 0; i < futures.size(); i++) {
+			assertEquals(String.valueOf(i), futures.get(i).get(5, TimeUnit.SECONDS));
+		}
+		runner.stop();
+	}
+
+	@Test
+	public void testSharedThreads() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		DelayedScriptRunner blocked = new DelayedScriptRunner(new BrowserMetrics());
+		blocked.start();
+		Future<String> blocking = blocked.submit(new Callable<String>() {
+			@Override
+			public String call() throws InterruptedException {
+				release.await();
+				return "blocking";
+			}
+		});
+
+		// a runner occupied by a slow job must not keep the other runners from executing theirs
+		final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+		List<DelayedScriptRunner> runners = new ArrayList<DelayedScriptRunner>();
+		List<Future<String>> futures = new ArrayList<Future<String>>();
+		for (int i = 0; i < 50; i++) {
+			DelayedScriptRunner runner = new DelayedScriptRunner(new BrowserMetrics());
+			runner.start();
+			runners.add(runner);
+			final String result = String.valueOf(i);
+			futures.add(runner.submit(new Callable<String>() {
+				@Override
+				public String call() {
+					threads.add(Thread.currentThread().getName());
+					return result;
+				}
+			}));
+		}
+		for (int i = 0; i < futures.size(); i++) {
+			assertEquals(String.valueOf(i), futures.get(i).get(5, TimeUnit.SECONDS));
+		}
+		assertFalse(blocking.isDone());
+		assertTrue(threads.size() <= Math.max(2, Runtime.getRuntime().availableProcessors()));
+		for (String thread : threads) {
+			assertTrue(thread.startsWith(DelayedScriptRunner.class.getSimpleName()));
+		}
+
+		release.countDown();
+		assertEquals("blocking", blocking.get(5, TimeUnit.SECONDS));
+		blocked.stop();
+		for (DelayedScriptRunner runner : runners) {
+			runner.stop();
+		}
+	}
+}
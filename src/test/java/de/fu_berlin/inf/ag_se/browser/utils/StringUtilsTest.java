@@ -47,6 +47,15 @@ public class StringUtilsTest {
 		StringUtils.getLongestCommonPrefix(null, "", null);
 	}
 
+	@Test
+	public void testGetUtf8Length() throws Exception {
+		for (String string : Arrays.asList("", "abc", "\u00e4\u00f6\u00fc",
+				"\u20ac 5", "\ud83d\ude00!", "\ud83d")) {
+			assertEquals(string.getBytes("UTF-8").length,
+					StringUtils.getUtf8Length(string));
+		}
+	}
+
 	@Test
 	public void testLongestCommonPrefix() {
 		assertEquals("", StringUtils.getLongestCommonPrefix(null, "", ""));
@@ -0,0 +1 @@
+window.__testExtension = 42;